@@ -26,14 +26,21 @@ public class Main {
     );
 
     List<Student> createdStudents = new ArrayList<>();
-    for (Student student : students) {
-      try {
-        Student created = studentService.create(student);
-        createdStudents.add(created);
-        System.out.println("Created student: " + created);
-      } catch (DatabaseException e) {
-        System.out.println("Error creating student " + student.getName() + ": " + e.getMessage());
-      }
+    try {
+      studentService.inBatch(() -> {
+        for (Student student : students) {
+          try {
+            Student created = studentService.create(student);
+            createdStudents.add(created);
+            System.out.println("Created student: " + created);
+          } catch (DatabaseException e) {
+            System.out.println("Error creating student " + student.getName() + ": " + e.getMessage());
+          }
+        }
+      });
+    } catch (DatabaseException e) {
+      System.out.println("Error creating students: " + e.getMessage());
+      return new ArrayList<>();
     }
 
     return createdStudents;
@@ -47,14 +54,21 @@ public class Main {
     );
 
     List<Course> createdCourses = new ArrayList<>();
-    for (Course course : courses) {
-      try {
-        Course created = courseService.create(course);
-        createdCourses.add(created);
-        System.out.println("Created course: " + created);
-      } catch (DatabaseException e) {
-        System.out.println("Error creating course " + course.getName() + ": " + e.getMessage());
-      }
+    try {
+      courseService.inBatch(() -> {
+        for (Course course : courses) {
+          try {
+            Course created = courseService.create(course);
+            createdCourses.add(created);
+            System.out.println("Created course: " + created);
+          } catch (DatabaseException e) {
+            System.out.println("Error creating course " + course.getName() + ": " + e.getMessage());
+          }
+        }
+      });
+    } catch (DatabaseException e) {
+      System.out.println("Error creating courses: " + e.getMessage());
+      return new ArrayList<>();
     }
 
     return createdCourses;
@@ -70,30 +84,37 @@ public class Main {
       System.out.println("No enrollments to create..");
       return new ArrayList<>();
     }
-    for (Student student : students) {
-      for (Course course : courses) {
-        if (random.nextDouble() < 0.3) {
-          continue;
-        }
-        // Generate random grade (A-F converted to 5-0)
-        int grade = random.nextInt(6);
-
-        CourseEnrollment enrollment = new CourseEnrollment(
-            0,
-            student.getId(),
-            course.getId(),
-            grade
-        );
-
-        try {
-          CourseEnrollment created = enrollmentService.create(enrollment);
-          enrollments.add(created);
-          System.out.println("Created enrollment: Student " + student.getName() +
-              " in " + course.getName() + " with grade " + grade);
-        } catch (DatabaseException e) {
-          System.out.println("Error creating enrollment: " + e.getMessage());
+    try {
+      enrollmentService.inBatch(() -> {
+        for (Student student : students) {
+          for (Course course : courses) {
+            if (random.nextDouble() < 0.3) {
+              continue;
+            }
+            // Generate random grade (A-F converted to 5-0)
+            int grade = random.nextInt(6);
+
+            CourseEnrollment enrollment = new CourseEnrollment(
+                0,
+                student.getId(),
+                course.getId(),
+                grade
+            );
+
+            try {
+              CourseEnrollment created = enrollmentService.create(enrollment);
+              enrollments.add(created);
+              System.out.println("Created enrollment: Student " + student.getName() +
+                  " in " + course.getName() + " with grade " + grade);
+            } catch (DatabaseException e) {
+              System.out.println("Error creating enrollment: " + e.getMessage());
+            }
+          }
         }
-      }
+      });
+    } catch (DatabaseException e) {
+      System.out.println("Error creating enrollments: " + e.getMessage());
+      return new ArrayList<>();
     }
 
     return enrollments;
@@ -189,6 +210,16 @@ public class Main {
         }
       }
 
+      // Whole-database report, computed in one parallel pass over the enrollments
+      EnrollmentReport report = analytics.getEnrollmentReport();
+      System.out.println("\nGrade distribution per course (grades 0-5):");
+      for (Course course : courseService.getAll()) {
+        long[] distribution = report.gradeDistributions().get(course.getId());
+        if (distribution != null) {
+          System.out.println("- " + course.getName() + ": " + Arrays.toString(distribution));
+        }
+      }
+
     } catch (DatabaseException e) {
       System.out.println("Error running analytics: " + e.getMessage());
     }
@@ -0,0 +1,81 @@
+package no.leo.studentmanager.commands;
+
+import java.util.Arrays;
+import no.leo.studentmanager.service.BaseService;
+import no.leo.studentmanager.service.CourseEnrollmentService;
+import no.leo.studentmanager.service.CourseService;
+import no.leo.studentmanager.service.Query;
+import no.leo.studentmanager.service.QueryPlan;
+import no.leo.studentmanager.service.StudentAnalytics;
+import no.leo.studentmanager.service.StudentService;
+
+public class ExplainCommand extends AbstractCommand {
+  public ExplainCommand(StudentService studentService,
+                        CourseService courseService,
+                        CourseEnrollmentService enrollmentService,
+                        StudentAnalytics analytics) {
+    super(studentService, courseService, enrollmentService, analytics);
+  }
+
+  @Override
+  public void execute(String[] args) throws Exception {
+    if (args.length > 0 && args[0].equals("help")) {
+      System.out.println(getUsage());
+      return;
+    }
+
+    if (args.length < 2) {
+      System.out.println("Error: " + getUsage());
+      return;
+    }
+
+    BaseService<?> service = switch (args[0]) {
+      case "students" -> studentService;
+      case "courses" -> courseService;
+      case "enrollments", "course_enrollments" -> enrollmentService;
+      default -> null;
+    };
+    if (service == null) {
+      System.out.println("Unknown table " + args[0] + ", use students, courses or enrollments");
+      return;
+    }
+
+    Query<?> query = service.query();
+    for (String predicate : Arrays.copyOfRange(args, 1, args.length)) {
+      int separator = predicate.indexOf('=');
+      if (separator <= 0) {
+        System.out.println("Error: " + getUsage());
+        return;
+      }
+      String field = predicate.substring(0, separator);
+      String value = predicate.substring(separator + 1);
+      int range = value.indexOf("..");
+      if (range >= 0) {
+        String from = value.substring(0, range);
+        String to = value.substring(range + 2);
+        query.and(field).between(from.isEmpty() ? null : from, to.isEmpty() ? null : to);
+      } else if (value.contains(",")) {
+        query.and(field).in((Object[]) value.split(","));
+      } else {
+        query.and(field).eq(value);
+      }
+    }
+
+    long start = System.nanoTime();
+    QueryPlan plan = query.explain();
+    System.out.println(plan);
+    System.out.printf("Execution time: %.3f ms%n", (System.nanoTime() - start) / 1_000_000.0);
+  }
+
+  @Override
+  public String getDescription() {
+    return "Show how a query is answered";
+  }
+
+  @Override
+  public String getUsage() {
+    return this.runtimeCommandString + " <students|courses|enrollments> <field>=<value>"
+        + " [<field>=<from>..<to>] [<field>=<a>,<b>,...] - Show the access path, estimated rows"
+        + " and actual rows of a query";
+  }
+}
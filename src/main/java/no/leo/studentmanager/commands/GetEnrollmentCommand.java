@@ -8,6 +8,8 @@ import no.leo.studentmanager.model.CourseEnrollment;
 import no.leo.studentmanager.model.Student;
 import no.leo.studentmanager.service.CourseEnrollmentService;
 import no.leo.studentmanager.service.CourseService;
+import no.leo.studentmanager.service.EnrollmentDetails;
+import no.leo.studentmanager.service.EnrollmentJoin;
 import no.leo.studentmanager.service.StudentAnalytics;
 import no.leo.studentmanager.service.StudentService;
 
@@ -37,15 +39,20 @@ public class GetEnrollmentCommand extends AbstractCommand {
         System.out.println("No enrollment found with ID " + enrollmentId);
         return;
       }
-      Student student = studentService.getById(enrollment.getStudentId());
-      Course course = courseService.getById(enrollment.getCourseId());
+      EnrollmentDetails details =
+          new EnrollmentJoin(studentService, courseService).join(enrollment);
+      Student student = details.student();
+      Course course = details.course();
 
       StringBuilder sb = new StringBuilder();
       sb.append("Enrollment ID: ").append(enrollment.getId()).append("\n");
-      sb.append("Student ID: ").append(student.getId()).append("\n");
-      sb.append("Student Name: ").append(student.getName()).append("\n");
-      sb.append("Course ID: ").append(course.getId()).append("\n");
-      sb.append("Course Name: ").append(course.getName()).append("\n");
+      sb.append("Student ID: ").append(enrollment.getStudentId()).append("\n");
+      // The student or course is null if it was deleted while still enrolled
+      sb.append("Student Name: ")
+          .append(student == null ? "(deleted student)" : student.getName()).append("\n");
+      sb.append("Course ID: ").append(enrollment.getCourseId()).append("\n");
+      sb.append("Course Name: ")
+          .append(course == null ? "(deleted course)" : course.getName()).append("\n");
       sb.append("Grade: ").append(enrollment.getGrade());
       System.out.println(sb);
       return;
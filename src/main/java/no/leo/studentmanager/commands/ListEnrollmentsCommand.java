@@ -1,11 +1,15 @@
 package no.leo.studentmanager.commands;
 
+import java.util.Iterator;
 import java.util.List;
 import no.leo.studentmanager.model.Course;
 import no.leo.studentmanager.model.CourseEnrollment;
 import no.leo.studentmanager.model.Student;
 import no.leo.studentmanager.service.CourseEnrollmentService;
 import no.leo.studentmanager.service.CourseService;
+import no.leo.studentmanager.service.EnrollmentDetails;
+import no.leo.studentmanager.service.EnrollmentJoin;
+import no.leo.studentmanager.service.Page;
 import no.leo.studentmanager.service.StudentAnalytics;
 import no.leo.studentmanager.service.StudentService;
 
@@ -24,14 +28,35 @@ public class ListEnrollmentsCommand extends AbstractCommand {
       return;
     }
 
-    List<CourseEnrollment> enrollments;
-    if (args.length == 1) {
-      enrollments = getEnrollmentsForStudent(args[0]);
-    } else {
-      enrollments = enrollmentService.getAll();
+    PagingOptions options;
+    try {
+      options = PagingOptions.parse(args);
+    } catch (IllegalArgumentException e) {
+      System.out.println("Error: " + getUsage());
+      return;
+    }
+    List<String> arguments = options.getArguments();
+    if (arguments.size() > 1 || (arguments.size() == 1 && options.isPaged())) {
+      System.out.println("Error: " + getUsage());
+      return;
     }
 
-    displayEnrollments(enrollments, args.length == 1);
+    if (arguments.size() == 1) {
+      displayEnrollments(getEnrollmentsForStudent(arguments.getFirst()).iterator(), true);
+    } else if (options.isPaged()) {
+      Page<CourseEnrollment> page;
+      try {
+        page = enrollmentService.scan(options.getCursor(), options.getPageSize());
+      } catch (IllegalArgumentException e) {
+        System.out.println("Error: " + e.getMessage());
+        return;
+      }
+      displayEnrollments(page.items().iterator(), false);
+      options.printNextPage(this.runtimeCommandString, page);
+    } else {
+      // Streamed, so the first enrollments print at once however large the table is
+      displayEnrollments(enrollmentService.stream().iterator(), false);
+    }
   }
 
   private List<CourseEnrollment> getEnrollmentsForStudent(String studentIdStr) throws Exception {
@@ -48,42 +73,56 @@ public class ListEnrollmentsCommand extends AbstractCommand {
     }
   }
 
-  private void displayEnrollments(List<CourseEnrollment> enrollments, boolean studentSpecific) throws Exception {
-    if (enrollments.isEmpty()) {
+  private void displayEnrollments(Iterator<CourseEnrollment> enrollments, boolean studentSpecific) throws Exception {
+    if (!enrollments.hasNext()) {
       System.out.println("No enrollments found.");
       return;
     }
 
-    for (CourseEnrollment enrollment : enrollments) {
+    // Decodes each student and course once, however many enrollments refer to it
+    EnrollmentJoin join = new EnrollmentJoin(studentService, courseService);
+    while (enrollments.hasNext()) {
+      EnrollmentDetails details = join.join(enrollments.next());
       if (studentSpecific) {
-        displayStudentEnrollment(enrollment);
+        displayStudentEnrollment(details);
       } else {
-        displayFullEnrollment(enrollment);
+        displayFullEnrollment(details);
       }
     }
   }
 
-  private void displayStudentEnrollment(CourseEnrollment enrollment) throws Exception {
-    Course course = courseService.getById(enrollment.getCourseId());
-    System.out.printf("ID: %d, Course: %s (ID: %d), Grade: %d%n",
+  private void displayStudentEnrollment(EnrollmentDetails details) {
+    CourseEnrollment enrollment = details.enrollment();
+    System.out.printf("ID: %d, Course: %s, Grade: %d%n",
         enrollment.getId(),
-        course.getName(),
-        course.getId(),
+        describeCourse(details),
         enrollment.getGrade());
   }
 
-  private void displayFullEnrollment(CourseEnrollment enrollment) throws Exception {
-    Student student = studentService.getById(enrollment.getStudentId());
-    Course course = courseService.getById(enrollment.getCourseId());
-    System.out.printf("ID: %d, Student: %s (ID: %d), Course: %s (ID: %d), Grade: %d%n",
+  private void displayFullEnrollment(EnrollmentDetails details) {
+    CourseEnrollment enrollment = details.enrollment();
+    System.out.printf("ID: %d, Student: %s, Course: %s, Grade: %d%n",
         enrollment.getId(),
-        student.getName(),
-        student.getId(),
-        course.getName(),
-        course.getId(),
+        describeStudent(details),
+        describeCourse(details),
         enrollment.getGrade());
   }
 
+  // The student or course is null if it was deleted while still enrolled
+  private static String describeStudent(EnrollmentDetails details) {
+    Student student = details.student();
+    return student == null
+        ? "(deleted student ID " + details.enrollment().getStudentId() + ")"
+        : student.getName() + " (ID: " + student.getId() + ")";
+  }
+
+  private static String describeCourse(EnrollmentDetails details) {
+    Course course = details.course();
+    return course == null
+        ? "(deleted course ID " + details.enrollment().getCourseId() + ")"
+        : course.getName() + " (ID: " + course.getId() + ")";
+  }
+
   @Override
   public String getDescription() {
     return "List all course enrollments in the system";
@@ -91,6 +130,8 @@ public class ListEnrollmentsCommand extends AbstractCommand {
 
   @Override
   public String getUsage() {
-    return this.runtimeCommandString + " - Lists all course enrollments with student and course details";
+    return this.runtimeCommandString + " [<student_id> | " + PagingOptions.USAGE + "]"
+        + " - Lists all course enrollments with student and course details, or those of one"
+        + " student; all enrollments can be listed one page at a time";
   }
 }
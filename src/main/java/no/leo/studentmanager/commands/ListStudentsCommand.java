@@ -1,8 +1,9 @@
 package no.leo.studentmanager.commands;
 import no.leo.studentmanager.model.Student;
-import java.util.List;
+import java.util.Iterator;
 import no.leo.studentmanager.service.CourseEnrollmentService;
 import no.leo.studentmanager.service.CourseService;
+import no.leo.studentmanager.service.Page;
 import no.leo.studentmanager.service.StudentAnalytics;
 import no.leo.studentmanager.service.StudentService;
 
@@ -21,16 +22,46 @@ public class ListStudentsCommand extends AbstractCommand {
       return;
     }
 
-    List<Student> students = studentService.getAll();
-    if (students.isEmpty()) {
+    PagingOptions options;
+    try {
+      options = PagingOptions.parse(args);
+    } catch (IllegalArgumentException e) {
+      System.out.println("Error: " + getUsage());
+      return;
+    }
+    if (!options.getArguments().isEmpty()) {
+      System.out.println("Error: " + getUsage());
+      return;
+    }
+
+    Iterator<Student> students;
+    Page<Student> page = null;
+    if (options.isPaged()) {
+      try {
+        page = studentService.scan(options.getCursor(), options.getPageSize());
+      } catch (IllegalArgumentException e) {
+        System.out.println("Error: " + e.getMessage());
+        return;
+      }
+      students = page.items().iterator();
+    } else {
+      // Streamed, so the first students print at once however large the table is
+      students = studentService.stream().iterator();
+    }
+
+    if (!students.hasNext()) {
       System.out.println("No students found.");
       return;
     }
 
-    for (Student student : students) {
+    while (students.hasNext()) {
+      Student student = students.next();
       System.out.printf("ID: %d, Name: %s, Email: %s, Phone: %s%n",
           student.getId(), student.getName(), student.getEmail(), student.getPhone());
     }
+    if (page != null) {
+      options.printNextPage(this.runtimeCommandString, page);
+    }
   }
 
   @Override
@@ -40,6 +71,8 @@ public class ListStudentsCommand extends AbstractCommand {
 
   @Override
   public String getUsage() {
-    return this.runtimeCommandString + " - Lists all students currently in the system";
+    return this.runtimeCommandString + " " + PagingOptions.USAGE
+        + " - Lists all students currently in the system, in ID order, optionally one page"
+        + " at a time";
   }
 }
@@ -0,0 +1,92 @@
+package no.leo.studentmanager.commands;
+
+import java.util.ArrayList;
+import java.util.List;
+import no.leo.studentmanager.service.Page;
+
+/**
+ * The {@code --page-size <n>} and {@code --cursor <cursor>} options of the list commands,
+ * separated from their other arguments.
+ */
+final class PagingOptions {
+  static final int DEFAULT_PAGE_SIZE = 20;
+  static final String USAGE = "[--page-size <n>] [--cursor <cursor>]";
+
+  private final List<String> arguments;
+  private final Integer pageSize;
+  private final String cursor;
+
+  private PagingOptions(List<String> arguments, Integer pageSize, String cursor) {
+    this.arguments = arguments;
+    this.pageSize = pageSize;
+    this.cursor = cursor;
+  }
+
+  /**
+   * Splits the paging options from the other arguments.
+   *
+   * @param args the command arguments
+   * @return the parsed options
+   * @throws IllegalArgumentException if an option has no value or the page size is not a
+   *                                  positive number
+   */
+  static PagingOptions parse(String[] args) {
+    List<String> arguments = new ArrayList<>();
+    Integer pageSize = null;
+    String cursor = null;
+    for (int i = 0; i < args.length; i++) {
+      switch (args[i]) {
+        case "--page-size" -> {
+          pageSize = Integer.parseInt(value(args, ++i));
+          if (pageSize <= 0) {
+            throw new IllegalArgumentException("Page size must be positive");
+          }
+        }
+        case "--cursor" -> cursor = value(args, ++i);
+        default -> arguments.add(args[i]);
+      }
+    }
+    return new PagingOptions(arguments, pageSize, cursor);
+  }
+
+  private static String value(String[] args, int i) {
+    if (i >= args.length) {
+      throw new IllegalArgumentException("Missing value for " + args[i - 1]);
+    }
+    return args[i];
+  }
+
+  List<String> getArguments() {
+    return arguments;
+  }
+
+  /**
+   * Checks whether a single page was asked for, rather than the whole table.
+   *
+   * @return true if a page size or cursor was given
+   */
+  boolean isPaged() {
+    return this.pageSize != null || this.cursor != null;
+  }
+
+  int getPageSize() {
+    return this.pageSize != null ? this.pageSize : DEFAULT_PAGE_SIZE;
+  }
+
+  String getCursor() {
+    return cursor;
+  }
+
+  /**
+   * Prints the command that lists the page after the given one, if there is one.
+   *
+   * @param command the command string the list command was run as
+   * @param page    the page just printed
+   */
+  void printNextPage(String command, Page<?> page) {
+    if (page.hasNext()) {
+      System.out.printf("More results: %s --page-size %d --cursor %s%n",
+          command, this.getPageSize(), page.nextCursor());
+    }
+  }
+}
@@ -2,31 +2,90 @@ package no.leo.studentmanager.service;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
 import java.util.Objects;
+import java.util.PrimitiveIterator;
+import java.util.SortedMap;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 import no.leo.studentmanager.exception.DatabaseException;
 import no.leo.studentmanager.exception.RecordNotFoundException;
 import no.leo.studentmanager.exception.UniqueConstraintViolation;
+import no.leo.studentmanager.storage.Checkpointer;
+import no.leo.studentmanager.storage.CompositeIndex;
+import no.leo.studentmanager.storage.DurabilityStatus;
+import no.leo.studentmanager.storage.IdSequence;
+import no.leo.studentmanager.storage.LoadProgressListener;
+import no.leo.studentmanager.storage.LogEntry;
+import no.leo.studentmanager.storage.RecordCodec;
+import no.leo.studentmanager.storage.RecordLayout;
+import no.leo.studentmanager.storage.RecordStore;
+import no.leo.studentmanager.storage.RoaringBitmap;
+import no.leo.studentmanager.storage.SnapshotFiles;
+import no.leo.studentmanager.storage.SnapshotFormat;
+import no.leo.studentmanager.storage.SnapshotVisitor;
+import no.leo.studentmanager.storage.StorageOptions;
+import no.leo.studentmanager.storage.TableLog;
+import no.leo.studentmanager.storage.TransactionLog;
 
 /**
  * Abstract base class for data services, providing common functionality
  * for managing records, unique constraints, and field-based indices.
+ * <p>
+ * The records and indices are guarded by a read-write lock: writes and open batches hold
+ * {@link #lock}, reads hold {@link #readLock}. Reads therefore never see a half-applied
+ * write, nor the uncommitted changes of a batch on another thread. A thread holding the
+ * read lock must not call a writing method, since the read lock cannot be upgraded.
  *
  * @param <T> The type of the model this service manages.
  */
-public abstract class BaseService<T> {
+public abstract class BaseService<T> implements AutoCloseable {
+  private static final Logger SLOW_QUERY_LOGGER = Logger.getLogger(Query.class.getName());
+  private static final int STREAM_PAGE_SIZE = 256;
+
   protected final Class<T> modelClass;
   protected final Path dbPath;
   protected final ObjectMapper objectMapper;
   protected Map<String, Object> data;
   protected Map<String, Object> definition;
+  protected final TableSchema schema;
+  protected final RecordStore records;
+  protected final RecordCodec<T> codec;
+  protected final CompositeIndex[] compositeIndices;
+  protected final StorageOptions options;
+  protected final TableLog log;
+  protected final Checkpointer checkpointer;
+  private final ReentrantReadWriteLock readWriteLock = new ReentrantReadWriteLock();
+  protected final ReentrantReadWriteLock.WriteLock lock = this.readWriteLock.writeLock();
+  protected final ReentrantReadWriteLock.ReadLock readLock = this.readWriteLock.readLock();
+  // Held while a snapshot is written, so concurrent checkpoints take turns
+  private final Object snapshotMonitor = new Object();
+  protected final IdSequence idSequence = new IdSequence();
+  protected long lastLsn;
+  private Batch batch;
 
   /**
    * Constructs a new instance of BaseService.
@@ -36,22 +95,39 @@ public abstract class BaseService<T> {
    * @param modelClass the class type of the model handled by the service
    * @param dbPath     the file system path to the database directory
    */
-  @SuppressWarnings("unchecked")
   public BaseService(Class<T> modelClass, String dbPath) {
+    this(modelClass, dbPath, StorageOptions.defaults());
+  }
+
+  /**
+   * Constructs a new instance of BaseService with explicit storage options.
+   *
+   * @param modelClass the class type of the model handled by the service
+   * @param dbPath     the file system path to the database directory
+   * @param options    the storage options controlling durability and log checkpointing
+   */
+  public BaseService(Class<T> modelClass, String dbPath, StorageOptions options) {
     this.modelClass = modelClass;
     this.dbPath = Paths.get(dbPath);
+    this.options = options;
     this.objectMapper = new ObjectMapper();
     ensureDbDirectory();
-    this.definition = loadDefinition();
-    this.data = loadData();
+    this.schema = this.loadSchema();
+    this.definition = this.schema.getDefinition();
+    this.records = new RecordStore(this.schema.getLayout());
+    this.codec = RecordCodec.forModel(modelClass, this.schema.getLayout(), this.objectMapper);
+    this.compositeIndices = this.schema.createCompositeIndices();
+    this.data = this.createEmptyData();
+    this.loadData();
 
-    // Initialize data and indices if they don't exist
-    if (!this.data.containsKey("data")) {
-      this.data.put("data", new HashMap<>());
-    }
-    if (!this.data.containsKey("indices")) {
-      this.data.put("indices", new HashMap<>());
+    try {
+      this.log = new TableLog(this.dbPath, this.getTableName(), this.objectMapper,
+          options.getDurabilityMode(), options.getFlushInterval());
+    } catch (IOException e) {
+      throw new RuntimeException("Could not open log", e);
     }
+    this.replayLog();
+    this.checkpointer = new Checkpointer(this.getTableName(), this.log, options, this::checkpoint);
   }
 
   /**
@@ -71,85 +147,472 @@ public abstract class BaseService<T> {
   }
 
   /**
-   * Loads the table definition for the database table associated with the specific service implementation.
-   * The method reads the definitions from a JSON file and retrieves the definition of the table
-   * corresponding to the name provided by the `getTableName` method. If the table definition is not found,
-   * an exception is thrown.
+   * Looks up the compiled schema of the database table associated with the specific service
+   * implementation in the process-wide {@link SchemaRegistry}, which reads
+   * {@code table_definitions.json} only once for all services.
    *
-   * @return a map containing the table definition as key-value pairs.
-   * This includes the table structure and metadata required for operations.
+   * @return the schema of the table returned by {@link #getTableName()}
    * @throws RuntimeException if the table definitions file cannot be read or if the table definition
    *                          for the specified name is not found.
    */
-  @SuppressWarnings("unchecked")
-  protected Map<String, Object> loadDefinition() {
-    try {
-      String content = Files.readString(Paths.get("table_definitions.json"));
-      Map<String, Object> root = this.objectMapper.readValue(content, Map.class);
-      List<Map<String, Object>> tables = (List<Map<String, Object>>) root.get("tables");
-
-      return tables.stream()
-          .filter(table -> table.get("name").equals(this.getTableName()))
-          .findFirst()
-          .orElseThrow(() -> new RuntimeException("Table definition not found"));
-    } catch (IOException e) {
-      throw new RuntimeException("Could not load table definitions", e);
+  protected TableSchema loadSchema() {
+    return SchemaRegistry.getDefault().getTable(this.getTableName());
+  }
+
+  /**
+   * Creates the data map of an empty table: the table definition and an empty index for
+   * every index declared in the definition. The records themselves live in {@link #records}.
+   * Hash indices are hash maps; ordered and bitmap indices are skip lists sorted by key.
+   *
+   * @return a new data map
+   */
+  protected Map<String, Object> createEmptyData() {
+    Map<String, Object> empty = new HashMap<>(this.definition);
+    empty.remove("data");
+    Map<String, Map<Object, Object>> indices = new HashMap<>();
+    for (int column = 0; column < this.schema.getLayout().size(); column++) {
+      String indexName = this.schema.getIndexName(column);
+      if (indexName != null) {
+        indices.put(indexName,
+            this.schema.isOrdered(column) ? new ConcurrentSkipListMap<>() : new HashMap<>());
+      }
     }
+    empty.put("indices", indices);
+    return empty;
   }
 
   /**
    * Loads the data for the specific database table associated with the service implementation.
-   * This method attempts to read a JSON file corresponding to the table name.
-   * If the file does not exist, it returns a new HashMap initialized with the table definition.
+   * This method streams the table's snapshot, preferring the configured snapshot format but
+   * falling back to a snapshot in any other known format. Each record is inserted into the
+   * data map and the indices as soon as it has been read, so peak memory stays close to the
+   * size of the loaded table. If a {@link LoadProgressListener} is configured, it is notified
+   * as loading proceeds. If no snapshot exists, the table is left empty.
    * In case of I/O issues, a runtime exception is thrown.
    *
-   * @return a map containing the loaded data as key-value pairs. If the data file does not exist,
-   * a new map initialized with the table definition is returned.
    * @throws RuntimeException if an I/O error occurs while reading the data file.
    */
-  @SuppressWarnings("unchecked")
-  protected Map<String, Object> loadData() {
-    Path filePath = this.dbPath.resolve(this.getTableName() + ".json");
-    if (!Files.exists(filePath)) {
-      return new HashMap<>(this.definition);
+  protected void loadData() {
+    SnapshotFormat format =
+        SnapshotFiles.find(this.dbPath, this.getTableName(), this.options.getSnapshotFormat());
+    if (format == null) {
+      return;
     }
 
-    try {
-      String content = Files.readString(filePath);
-      return this.objectMapper.readValue(content, Map.class);
+    Path filePath = SnapshotFiles.path(this.dbPath, this.getTableName(), format);
+    String pk = (String) this.definition.getOrDefault("pk", "id");
+    LoadProgressListener listener = this.options.getLoadProgressListener();
+    try (InputStream in = Files.newInputStream(filePath)) {
+      long totalBytes = Files.size(filePath);
+      format.read(in, this.definition, new SnapshotVisitor() {
+        @Override
+        public void lsn(long lsn) {
+          BaseService.this.data.put("lsn", lsn);
+        }
+
+        @Override
+        public void nextId(int nextId) {
+          BaseService.this.idSequence.advanceTo(nextId);
+        }
+
+        @Override
+        public void record(Map<String, Object> record) {
+          int id = ((Number) record.get(pk)).intValue();
+          Object[] row = BaseService.this.records.getLayout().toRow(record);
+          BaseService.this.records.put(id, row);
+          BaseService.this.updateIndices(row, id);
+          BaseService.this.idSequence.advancePast(id);
+        }
+
+        @Override
+        public void progress(long recordsRead, long bytesRead) {
+          if (listener != null) {
+            listener.onProgress(BaseService.this.getTableName(), recordsRead, bytesRead,
+                totalBytes);
+          }
+        }
+      });
     } catch (IOException e) {
       throw new RuntimeException("Could not load data", e);
     }
   }
 
   /**
-   * Persists the current state of the `data` map to a JSON file corresponding to the table name.
-   * The method serializes the `data` map into a JSON string using a pretty printer and writes it to a file
-   * in the specified database path. The file is named after the table name given by `getTableName` with a `.json` extension.
+   * Replays the write-ahead log on top of the snapshot loaded by {@link #loadData()}.
+   * Only entries newer than the LSN recorded in the snapshot are applied.
+   * <p>
+   * Entries committed through a {@link TransactionCoordinator} are durable in the shared
+   * transaction log before they reach this table's log, so both are merged by LSN and any
+   * entry the table log is missing is taken from the transaction log. If any entry had to
+   * be recovered that way, a checkpoint is written before the service is used: the
+   * transaction log may be truncated later by a coordinator that does not know the table
+   * log is missing those entries.
+   *
+   * @throws RuntimeException if the log cannot be read or the checkpoint cannot be written.
+   */
+  protected void replayLog() {
+    Object snapshotLsn = this.data.get("lsn");
+    long afterLsn = snapshotLsn instanceof Number ? ((Number) snapshotLsn).longValue() : 0L;
+    try {
+      TreeMap<Long, LogEntry> committed = new TreeMap<>();
+      TransactionLog.replay(this.dbPath, this.objectMapper, this.getTableName(), entry -> {
+        if (entry.getLsn() > afterLsn) {
+          committed.put(entry.getLsn(), entry);
+        }
+      });
+
+      int[] recovered = {0};
+      long replayedLsn = this.log.replay(afterLsn, entry -> {
+        SortedMap<Long, LogEntry> earlier = committed.headMap(entry.getLsn());
+        recovered[0] += earlier.size();
+        earlier.values().forEach(this::applyLogEntry);
+        earlier.clear();
+        committed.remove(entry.getLsn());
+        this.applyLogEntry(entry);
+      });
+      recovered[0] += committed.size();
+      committed.values().forEach(this::applyLogEntry);
+      this.lastLsn = committed.isEmpty() ? replayedLsn : Math.max(replayedLsn, committed.lastKey());
+      if (recovered[0] > 0) {
+        this.checkpoint();
+      }
+    } catch (IOException e) {
+      throw new RuntimeException("Could not replay log", e);
+    }
+  }
+
+  /**
+   * Applies a single replayed log entry to the in-memory records and indices.
+   *
+   * @param entry the log entry to apply
+   */
+  protected void applyLogEntry(LogEntry entry) {
+    Object[] previous = entry.getOp() == LogEntry.Op.DELETE
+        ? this.records.remove(entry.getId())
+        : this.records.put(entry.getId(), this.records.getLayout().toRow(entry.getRecord()));
+    if (previous != null) {
+      this.removeFromIndices(previous, entry.getId());
+    }
+    if (entry.getOp() != LogEntry.Op.DELETE) {
+      this.updateIndices(this.records.get(entry.getId()), entry.getId());
+      this.idSequence.advancePast(entry.getId());
+    }
+  }
+
+  /**
+   * Writes a mutation to the table's write-ahead log. Called with the write lock held and
+   * before the mutation is applied in memory, so a failed write leaves the records and
+   * indices unchanged; the caller must pass the returned sequence to
+   * {@link #awaitDurable(long)} after releasing the lock.
+   *
+   * @param op     the kind of mutation
+   * @param id     the ID of the affected record
+   * @param row    the row after the mutation, or null for deletes
+   * @return the log sequence to wait for, or 0 if the entry was staged in a batch
+   * @throws RuntimeException if an I/O error occurs while writing the log entry.
+   */
+  protected long appendLog(LogEntry.Op op, int id, Object[] row) {
+    Map<String, Object> record = row != null ? this.records.getLayout().toMap(row) : null;
+    LogEntry entry = new LogEntry(++this.lastLsn, op, id, record);
+    if (this.batch != null) {
+      this.batch.entries.add(entry);
+      return 0;
+    }
+    try {
+      return this.log.write(entry);
+    } catch (IOException e) {
+      this.lastLsn--;
+      throw new RuntimeException("Could not write to log", e);
+    }
+  }
+
+  /**
+   * Waits until a logged mutation is as durable as the configured
+   * {@link no.leo.studentmanager.storage.DurabilityMode} promises. Waiting happens outside
+   * the write lock, so concurrent writers can share a single fsync.
+   *
+   * @param sequence the sequence returned by {@link #appendLog(LogEntry.Op, int, Object[])}
+   * @throws RuntimeException if the log could not be forced to disk.
+   */
+  protected void awaitDurable(long sequence) {
+    if (sequence == 0) {
+      return;
+    }
+    try {
+      this.log.awaitDurable(sequence);
+    } catch (IOException e) {
+      throw new RuntimeException("Could not write to log", e);
+    }
+  }
+
+  /**
+   * Persists the current state of the `data` map to a snapshot corresponding to the table name,
+   * in the snapshot format configured in the storage options.
+   * The snapshot records the LSN of the last applied log entry so that a later replay skips
+   * entries it already contains. The file is written to a temporary file first and then moved
+   * into place, so a crash never leaves a half-written snapshot behind.
    * <p>
    * If an error occurs during the writing process, a `RuntimeException` is thrown.
    *
    * @throws RuntimeException if an I/O error occurs during the writing of the JSON data to file.
    */
   protected void saveData() {
+    synchronized (this.snapshotMonitor) {
+      this.lock.lock();
+      try {
+        this.writeSnapshot(this.captureSnapshot());
+      } finally {
+        this.lock.unlock();
+      }
+    }
+  }
+
+  /**
+   * Captures what a snapshot needs under the write lock: the LSN, the next ID and the row
+   * references, which stay valid because rows are replaced rather than changed in place.
+   */
+  private Map<String, Object> captureSnapshot() {
+    this.data.put("lsn", this.lastLsn);
+    this.data.put("next_id", this.idSequence.peek());
+    Map<String, Object> snapshot = new HashMap<>(this.data);
+    // Indices are rebuilt from the records on load
+    snapshot.remove("indices");
+    snapshot.put("data", this.records.copyAsMap());
+    return snapshot;
+  }
+
+  private void writeSnapshot(Map<String, Object> snapshot) {
     try {
-      String json = this.objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(data);
-      Files.writeString(this.dbPath.resolve(this.getTableName() + ".json"), json);
+      SnapshotFiles.write(this.dbPath, this.getTableName(), this.options.getSnapshotFormat(),
+          snapshot, this.definition);
     } catch (IOException e) {
       throw new RuntimeException("Could not save data", e);
     }
   }
 
   /**
-   * Retrieves the nested data map from the `data` field.
-   * The `data` field is expected to contain a key "data" that maps to a nested map structure.
+   * Writes a fresh snapshot of the table and discards the log segments it supersedes.
+   * <p>
+   * Writers are only blocked while the current log segment is sealed and the row references
+   * are captured; the records are encoded straight to disk and old segments are deleted
+   * afterwards. A crash at any point leaves either the old snapshot with all segments, or the
+   * new snapshot with segments whose entries it already covers, so no mutation is lost.
+   * Snapshots are taken one at a time, so an older one never replaces a newer one.
+   * This is called by the background checkpointer, but may also be called directly.
    *
-   * @return a map containing nested maps as values. The outer map uses a string as the key,
-   * and each inner map contains keys and values of type string and object, respectively.
+   * @throws RuntimeException if the snapshot or the log compaction fails.
    */
-  @SuppressWarnings("unchecked")
-  protected Map<String, Map<String, Object>> getDataMap() {
-    return (Map<String, Map<String, Object>>) this.data.get("data");
+  public void checkpoint() {
+    synchronized (this.snapshotMonitor) {
+      long sealedSegment;
+      Map<String, Object> snapshot;
+      this.lock.lock();
+      try {
+        sealedSegment = this.log.rollover();
+        snapshot = this.captureSnapshot();
+      } catch (IOException e) {
+        throw new RuntimeException("Could not roll over log", e);
+      } finally {
+        this.lock.unlock();
+      }
+
+      this.writeSnapshot(snapshot);
+      try {
+        this.log.deleteSegmentsUpTo(sealedSegment);
+      } catch (IOException e) {
+        throw new RuntimeException("Could not compact log", e);
+      }
+    }
+  }
+
+  /**
+   * Starts a batch on this service. Until {@link #commit()} or {@link #rollback()} is called,
+   * mutations from the calling thread are applied to the in-memory records and indices as
+   * usual, but their log entries are held back and written together on commit. The batch
+   * holds the write lock throughout, so other threads that try to read or write this service
+   * wait until the batch ends and never see its uncommitted changes.
+   *
+   * @throws IllegalStateException if a batch is already in progress on this thread
+   */
+  public void beginBatch() {
+    this.lock.lock();
+    if (this.batch != null) {
+      this.lock.unlock();
+      throw new IllegalStateException("A batch is already in progress");
+    }
+    this.batch = new Batch(this.lastLsn);
+  }
+
+  /**
+   * Commits the current batch, writing all staged log entries with a single write and
+   * waiting for them to become durable according to the configured durability mode.
+   *
+   * @throws IllegalStateException if no batch is in progress on this thread
+   * @throws RuntimeException      if the staged entries could not be written; the batch is
+   *                               then rolled back
+   */
+  public void commit() {
+    Batch committing = this.endBatch();
+    long sequence;
+    try {
+      sequence = committing.entries.isEmpty() ? 0 : this.log.writeAll(committing.entries);
+    } catch (IOException e) {
+      this.undo(committing);
+      throw new RuntimeException("Could not write to log", e);
+    } finally {
+      this.lock.unlock();
+    }
+    this.awaitDurable(sequence);
+  }
+
+  /**
+   * Discards the current batch, restoring every record it touched and the indices that
+   * point to them.
+   *
+   * @throws IllegalStateException if no batch is in progress on this thread
+   */
+  public void rollback() {
+    Batch rolledBack = this.endBatch();
+    try {
+      this.undo(rolledBack);
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  private void undo(Batch batch) {
+    for (Batch.UndoEntry undo : batch.undo.reversed()) {
+      Object[] current = undo.previous() == null
+          ? this.records.remove(undo.id())
+          : this.records.put(undo.id(), undo.previous());
+      if (current != null) {
+        this.removeFromIndices(current, undo.id());
+      }
+      if (undo.previous() != null) {
+        this.updateIndices(undo.previous(), undo.id());
+      }
+    }
+    this.lastLsn = batch.startLsn;
+  }
+
+  /**
+   * Runs the given work inside a batch, committing it if the work completes and rolling it
+   * back if the work throws.
+   *
+   * @param work the operations to run as one batch
+   * @throws DatabaseException if the work fails; the batch has been rolled back
+   */
+  public void inBatch(BatchWork work) throws DatabaseException {
+    this.beginBatch();
+    try {
+      work.run();
+    } catch (DatabaseException | RuntimeException e) {
+      this.rollback();
+      throw e;
+    }
+    this.commit();
+  }
+
+  /**
+   * Returns the log entries staged by the current batch, for a transaction coordinator to
+   * commit together with those of other tables.
+   *
+   * @return the staged entries
+   * @throws IllegalStateException if no batch is in progress on this thread
+   */
+  List<LogEntry> getStagedEntries() {
+    if (!this.lock.isHeldByCurrentThread() || this.batch == null) {
+      throw new IllegalStateException("No batch in progress");
+    }
+    return this.batch.entries;
+  }
+
+  /**
+   * Ends the current batch by writing its staged entries to this table's log without waiting
+   * for them to become durable. Only used once the same entries are durable elsewhere,
+   * i.e. in the transaction log.
+   *
+   * @throws IllegalStateException if no batch is in progress on this thread
+   * @throws RuntimeException      if the staged entries could not be written
+   */
+  void commitStaged() {
+    Batch committing = this.endBatch();
+    try {
+      if (!committing.entries.isEmpty()) {
+        this.log.writeAll(committing.entries);
+      }
+    } catch (IOException e) {
+      throw new RuntimeException("Could not write to log", e);
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  /**
+   * Forces everything written to this table's log to disk.
+   *
+   * @throws RuntimeException if the log could not be forced
+   */
+  void flushLog() {
+    try {
+      this.log.flush();
+    } catch (IOException e) {
+      throw new RuntimeException("Could not flush log", e);
+    }
+  }
+
+  private Batch endBatch() {
+    if (!this.lock.isHeldByCurrentThread() || this.batch == null) {
+      throw new IllegalStateException("No batch in progress");
+    }
+    Batch ended = this.batch;
+    this.batch = null;
+    ended.releaseIds(this.idSequence);
+    return ended;
+  }
+
+  /**
+   * Remembers the current state of a record so an open batch can restore it on rollback.
+   * Does nothing outside a batch.
+   *
+   * @param id the ID of the record about to be changed
+   */
+  protected void rememberForUndo(int id) {
+    if (this.batch != null) {
+      this.batch.undo.add(new Batch.UndoEntry(id, this.records.get(id)));
+    }
+  }
+
+  /**
+   * Reports how many acknowledged or pending log entries are not yet on stable storage.
+   *
+   * @return the durability status of this table's log
+   */
+  public DurabilityStatus getDurabilityStatus() {
+    return this.log.getStatus();
+  }
+
+  /**
+   * Stops the background checkpointer, flushes anything the log still buffers and closes it.
+   */
+  @Override
+  public void close() {
+    this.checkpointer.close();
+    try {
+      this.log.close();
+    } catch (IOException e) {
+      throw new RuntimeException("Could not close log", e);
+    }
+  }
+
+  /**
+   * Converts a stored row to an instance of the model class.
+   *
+   * @param row the row
+   * @return the model object
+   */
+  protected T toModel(Object[] row) {
+    return this.codec.fromRow(row);
   }
 
   /**
@@ -167,21 +630,15 @@ public abstract class BaseService<T> {
   }
 
   /**
-   * Generates the next sequential identifier based on the existing records in the data map.
-   * The method retrieves all current record keys, parses them as integers, and determines the maximum value.
-   * If no records exist, it returns 1 as the starting identifier.
+   * Takes the next identifier from the table's ID sequence. Inside a batch, identifiers are
+   * taken from a block reserved for the batch, so the shared sequence is only touched once
+   * per block.
+   * IDs are never reused, even after the record holding the highest ID is deleted.
    *
    * @return the next available integer identifier for a new record.
    */
   protected int getNextId() {
-    Map<String, ?> records = this.getDataMap();
-    if (records.isEmpty()) {
-      return 1;
-    }
-    return records.keySet().stream()
-        .mapToInt(Integer::parseInt)
-        .max()
-        .getAsInt() + 1;
+    return this.batch != null ? this.batch.nextId(this.idSequence) : this.idSequence.next();
   }
 
   /**
@@ -194,42 +651,93 @@ public abstract class BaseService<T> {
    * @param excludeId the ID of an existing record to exclude from validation to avoid self-conflicts (can be null)
    * @throws DatabaseException if a unique constraint violation is detected
    */
-  @SuppressWarnings("unchecked")
   protected void validateUniqueConstraints(T record, Integer excludeId) throws DatabaseException {
-    Map<String, Object> recordMap = this.objectMapper.convertValue(record, Map.class);
-    Map<String, Object> definitions = (Map<String, Object>) this.definition.get("definitions");
-
-    for (Map.Entry<String, Object> entry : definitions.entrySet()) {
-      String fieldName = entry.getKey();
-      Map<String, Object> fieldDef = (Map<String, Object>) entry.getValue();
-      Map<String, Object> constraints = (Map<String, Object>) fieldDef.get("constraints");
-
-      if (constraints != null && Boolean.TRUE.equals(constraints.get("unique"))) {
-        Object fieldValue = recordMap.get(fieldName);
-        String indexName = fieldName + "_id_idx";
-
-        if (this.getIndicesMap().containsKey(indexName)) {
-          Object existingId = this.getIndicesMap().get(indexName).get(fieldValue);
-          if (existingId != null && (!existingId.equals(excludeId))) {
-            throw new UniqueConstraintViolation(
-                fieldName + " " + fieldValue + " already exists"
-            );
-          }
-        }
+    this.validateUniqueConstraints(this.toRow(record), excludeId);
+  }
+
+  /**
+   * Validates the unique constraints of a row.
+   *
+   * @param row       the row to validate
+   * @param excludeId the ID of an existing record to exclude from validation (can be null)
+   * @throws DatabaseException if a unique constraint violation is detected
+   * @see #validateUniqueConstraints(Object, Integer)
+   */
+  protected void validateUniqueConstraints(Object[] row, Integer excludeId)
+      throws DatabaseException {
+    RecordLayout layout = this.records.getLayout();
+    for (int column = 0; column < layout.size(); column++) {
+      String indexName = this.schema.getIndexName(column);
+      if (!this.schema.isUnique(column) || indexName == null) {
+        continue;
+      }
+
+      Object key = this.schema.toKey(column, row[column]);
+      if (this.schema.isOrdered(column) && !this.schema.hasKeyType(column, key)) {
+        continue;
+      }
+      Object existingId = this.getIndicesMap().get(indexName).get(key);
+      if (existingId != null && (!existingId.equals(excludeId))) {
+        throw new UniqueConstraintViolation(
+            layout.getColumn(column) + " " + row[column] + " already exists"
+        );
+      }
+    }
+
+    for (CompositeIndex index : this.compositeIndices) {
+      int existingId = index.get(row);
+      if (existingId != 0 && (excludeId == null || existingId != excludeId)) {
+        throw new UniqueConstraintViolation(
+            String.join(", ", index.getFields()) + " " + this.describeValues(index, row)
+                + " already exists"
+        );
       }
     }
   }
 
+  private String describeValues(CompositeIndex index, Object[] row) {
+    StringBuilder values = new StringBuilder("(");
+    for (String field : index.getFields()) {
+      if (values.length() > 1) {
+        values.append(", ");
+      }
+      values.append(row[this.records.getLayout().indexOf(field)]);
+    }
+    return values.append(')').toString();
+  }
+
+  /**
+   * Validates a new record against the field constraints and unique constraints of the table.
+   *
+   * @param record the record to validate
+   * @throws DatabaseException if a constraint is violated
+   */
   protected void validateRecord(T record) throws DatabaseException {
-    Map<String, Object> recordMap = this.objectMapper.convertValue(record, Map.class);
+    this.validateRecord(this.toRow(record), null);
+  }
+
+  /**
+   * Validates a row against the compiled field constraints and the unique constraints of
+   * the table.
+   *
+   * @param row       the row to validate
+   * @param excludeId the ID of the record being updated, which may keep its own unique
+   *                  values, or null for new records
+   * @throws DatabaseException if a constraint is violated
+   */
+  protected void validateRecord(Object[] row, Integer excludeId) throws DatabaseException {
     try {
       // Validate field constraints
-      TableConstraints.validateRecord(getTableName(), recordMap);
-      // Validate unique constraints
-      this.validateUniqueConstraints(record, null);
+      this.schema.validate(row);
     } catch (IllegalArgumentException e) {
       throw new DatabaseException(e.getMessage());
     }
+    // Validate unique constraints
+    this.validateUniqueConstraints(row, excludeId);
+  }
+
+  private Object[] toRow(T record) {
+    return this.codec.toRow(record);
   }
 
   /**
@@ -237,61 +745,73 @@ public abstract class BaseService<T> {
    * The method dynamically updates the index entries for each field of the
    * given record by associating field values with the given record ID. If
    * the field is unique, the index maps the value directly to the record ID.
-   * Otherwise, it maintains a list of IDs for the corresponding field value.
+   * Otherwise, it maintains a {@link RoaringBitmap} of IDs for the corresponding field
+   * value, so adding and removing an ID stays cheap however many records share the value.
    *
    * @param record   the record to update indices for, represented as a generic type
    * @param recordId the ID of the record to associate with the indexed values
    */
   protected void updateIndices(T record, int recordId) {
-    Map<String, Object> recordMap = this.objectMapper.convertValue(record, Map.class);
+    this.updateIndices(this.toRow(record), recordId);
+  }
+
+  /**
+   * Updates the indices map with the given raw record and its corresponding ID.
+   *
+   * @param recordMap the record to update indices for
+   * @param recordId  the ID of the record to associate with the indexed values
+   * @see #updateIndices(Object, int)
+   */
+  protected void updateIndices(Map<String, Object> recordMap, int recordId) {
+    this.updateIndices(this.records.getLayout().toRow(recordMap), recordId);
+  }
+
+  /**
+   * Updates the indices map with the given row and its corresponding ID.
+   *
+   * @param row      the row to update indices for, as stored in the record store
+   * @param recordId the ID of the record to associate with the indexed values
+   * @see #updateIndices(Object, int)
+   */
+  protected void updateIndices(Object[] row, int recordId) {
     Map<String, Map<Object, Object>> indices = this.getIndicesMap();
+    RecordLayout layout = this.records.getLayout();
 
-    for (String fieldName : recordMap.keySet()) {
-      String indexName = fieldName + "_id_idx";
-      if (!indices.containsKey(indexName)) {
+    for (int column = 0; column < layout.size(); column++) {
+      String indexName = this.schema.getIndexName(column);
+      if (indexName == null) {
         continue;
       }
 
-      Object fieldValue = recordMap.get(fieldName);
-      indices.computeIfAbsent(indexName, k -> new HashMap<>());
       Map<Object, Object> index = indices.get(indexName);
+      Object fieldValue = this.schema.toKey(column, row[column]);
+      if (this.schema.isOrdered(column) && !this.schema.hasKeyType(column, fieldValue)) {
+        continue;
+      }
 
-      if (this.isUniqueField(fieldName)) {
+      if (this.schema.isUnique(column)) {
         index.put(fieldValue, recordId);
       } else {
-        List<Integer> ids;
-        if (index.containsKey(fieldValue)) {
-          ids = index.get(fieldValue) instanceof List ?
-              (List<Integer>) index.get(fieldValue) :
-              new ArrayList<>(Collections.singletonList((Integer) index.get(fieldValue)));
-        } else {
-          ids = new ArrayList<>();
-        }
-        if (!ids.contains(recordId)) {
-          ids.add(recordId);
-        }
-        index.put(fieldValue, ids);
+        ((RoaringBitmap) index.computeIfAbsent(fieldValue, key -> new RoaringBitmap()))
+            .add(recordId);
       }
     }
+
+    for (CompositeIndex index : this.compositeIndices) {
+      index.add(row, recordId);
+    }
   }
 
   /**
    * Checks if the specified field is marked as unique in the table definition.
-   * This method looks up the field in the table's definitions, retrieves its constraints,
-   * and determines if the "unique" constraint is set to true.
+   * The answer comes from the compiled {@link TableSchema}.
    *
    * @param fieldName the name of the field to check for uniqueness
    * @return true if the field is marked as unique in the table definition, false otherwise
    */
-  @SuppressWarnings("unchecked")
   protected boolean isUniqueField(String fieldName) {
-    Map<String, Object> definitions = (Map<String, Object>) this.definition.get("definitions");
-    Map<String, Object> fieldDef = (Map<String, Object>) definitions.get(fieldName);
-    if (fieldDef != null) {
-      Map<String, Object> constraints = (Map<String, Object>) fieldDef.get("constraints");
-      return constraints != null && Boolean.TRUE.equals(constraints.get("unique"));
-    }
-    return false;
+    int column = this.records.getLayout().indexOf(fieldName);
+    return column >= 0 && this.schema.isUnique(column);
   }
 
   /**
@@ -303,55 +823,80 @@ public abstract class BaseService<T> {
    * @throws RecordNotFoundException If no record is found for the given record ID.
    */
   protected void removeFromIndices(int recordId) throws RecordNotFoundException {
-    T record = this.getById(recordId);
-    Map<String, Object> recordMap = this.objectMapper.convertValue(record, Map.class);
+    Object[] row = this.records.get(recordId);
+    if (row == null) {
+      throw new RecordNotFoundException("Record with ID " + recordId + " not found");
+    }
+    this.removeFromIndices(row, recordId);
+  }
+
+  /**
+   * Removes the given row from all applicable indices.
+   *
+   * @param row      the row as stored in the record store
+   * @param recordId the ID of the record to be removed from the indices
+   * @see #removeFromIndices(int)
+   */
+  protected void removeFromIndices(Object[] row, int recordId) {
     Map<String, Map<Object, Object>> indices = this.getIndicesMap();
+    RecordLayout layout = this.records.getLayout();
 
-    for (String fieldName : recordMap.keySet()) {
-      String indexName = fieldName + "_id_idx";
-      if (!indices.containsKey(indexName)) {
+    for (int column = 0; column < layout.size(); column++) {
+      String indexName = this.schema.getIndexName(column);
+      if (indexName == null) {
         continue;
       }
 
-      Object fieldValue = recordMap.get(fieldName);
       Map<Object, Object> index = indices.get(indexName);
+      Object fieldValue = this.schema.toKey(column, row[column]);
+      if (this.schema.isOrdered(column) && !this.schema.hasKeyType(column, fieldValue)) {
+        continue;
+      }
 
-      if (this.isUniqueField(fieldName)) {
+      if (this.schema.isUnique(column)) {
         index.remove(fieldValue);
-      } else {
-        Object indexValue = index.get(fieldValue);
-        if (indexValue instanceof List) {
-          ((List<Integer>) indexValue).remove(Integer.valueOf(recordId));
-          if (((List<Integer>) indexValue).isEmpty()) {
-            index.remove(fieldValue);
-          }
-        } else if (indexValue instanceof Integer && (Integer) indexValue == recordId) {
+      } else if (index.get(fieldValue) instanceof RoaringBitmap bitmap) {
+        bitmap.remove(recordId);
+        if (bitmap.isEmpty()) {
           index.remove(fieldValue);
         }
       }
     }
+
+    for (CompositeIndex index : this.compositeIndices) {
+      index.remove(row, recordId);
+    }
   }
 
   /**
    * Creates a new record of the specified type and inserts it into the database.
    * This method validates the record against unique constraints, assigns it a new unique identifier,
-   * updates the relevant indices, and persists the changes.
+   * updates the relevant indices, and appends the change to the write-ahead log.
    *
    * @param record the record object to be created and stored in the database
    * @return the created record object with the assigned identifier
    * @throws DatabaseException if any error occurs during the creation process, such as a unique constraint violation
    */
   public T create(T record) throws DatabaseException {
-    this.validateRecord(record);
+    T createdRecord;
+    long sequence;
+    this.lock.lock();
+    try {
+      Object[] row = this.toRow(record);
+      this.validateRecord(row, null);
 
-    int recordId = this.getNextId();
-    Map<String, Object> recordMap = this.objectMapper.convertValue(record, Map.class);
-    recordMap.put("id", recordId);
+      int recordId = this.getNextId();
+      row[this.records.getLayout().getPkColumn()] = recordId;
 
-    this.getDataMap().put(String.valueOf(recordId), recordMap);
-    T createdRecord = this.objectMapper.convertValue(recordMap, this.modelClass);
-    this.updateIndices(createdRecord, recordId);
-    this.saveData();
+      this.rememberForUndo(recordId);
+      sequence = this.appendLog(LogEntry.Op.INSERT, recordId, row);
+      this.records.put(recordId, row);
+      createdRecord = this.toModel(row);
+      this.updateIndices(row, recordId);
+    } finally {
+      this.lock.unlock();
+    }
+    this.awaitDurable(sequence);
 
     return createdRecord;
   }
@@ -365,56 +910,496 @@ public abstract class BaseService<T> {
    * @throws RecordNotFoundException if a record with the given ID does not exist
    */
   public T getById(int id) throws RecordNotFoundException {
-    Map<String, Object> recordData = this.getDataMap().get(String.valueOf(id));
-    if (recordData == null) {
-      throw new RecordNotFoundException("Record with ID " + id + " not found");
+    this.readLock.lock();
+    try {
+      Object[] row = this.records.get(id);
+      if (row == null) {
+        throw new RecordNotFoundException("Record with ID " + id + " not found");
+      }
+      return this.toModel(row);
+    } finally {
+      this.readLock.unlock();
+    }
+  }
+
+  /**
+   * Retrieves a record by ID without throwing when it is missing, for lookups that resolve
+   * many keys and handle gaps themselves.
+   *
+   * @param id the record ID
+   * @return the record, or null if there is none
+   */
+  T findById(int id) {
+    this.readLock.lock();
+    try {
+      Object[] row = this.records.get(id);
+      return row == null ? null : this.toModel(row);
+    } finally {
+      this.readLock.unlock();
     }
-    return this.objectMapper.convertValue(recordData, this.modelClass);
   }
 
   /**
    * Retrieves a list of records filtered by a specified field and its value.
    * If an index exists for the given field, the method uses the index for optimized lookups.
    * Otherwise, it performs a full scan of the data to find matching records.
+   * The value is first converted to the key type of the field (see {@link TableSchema#toKey}),
+   * so for an {@code int} field, {@code 5}, {@code 5L} and {@code "5"} all match.
    *
    * @param fieldName the name of the field to filter the records by
    * @param value     the value to match against the specified field
    * @return a list of records of type {@code T} that match the specified field and value.
    * If no matching records are found, an empty list is returned.
    */
-  @SuppressWarnings("unchecked")
   public List<T> getByField(String fieldName, Object value) {
-    String indexName = fieldName + "_id_idx";
-    Map<String, Map<Object, Object>> indices = this.getIndicesMap();
+    this.readLock.lock();
+    try {
+      long start = System.nanoTime();
+      int column = this.records.getLayout().indexOf(fieldName);
+      if (column < 0) {
+        return new ArrayList<>();
+      }
+      Object key = this.schema.toKey(column, value);
+      String indexName = this.usableIndex(column, key);
+      List<T> results = this.findByField(column, key, indexName);
+      this.logIfSlow(start,
+          () -> this.describeFieldAccess(column, key, indexName, results.size()));
+      return results;
+    } finally {
+      this.readLock.unlock();
+    }
+  }
 
-    if (indices.containsKey(indexName)) {
-      Map<Object, Object> index = indices.get(indexName);
-      Object indexValue = index.get(value);
+  /**
+   * Describes how {@link #getByField(String, Object)} answers a lookup: from the field's
+   * index, or by scanning every record if the field has no index or the value cannot be a
+   * key of its ordered index. The lookup is run to count the actual rows.
+   *
+   * @param fieldName the name of the field to filter the records by
+   * @param value     the value to match against the specified field
+   * @return the plan of the lookup
+   * @throws IllegalArgumentException if the table has no such field
+   */
+  public QueryPlan explain(String fieldName, Object value) {
+    this.readLock.lock();
+    try {
+      int column = this.records.getLayout().indexOf(fieldName);
+      if (column < 0) {
+        throw new IllegalArgumentException("Unknown field " + fieldName);
+      }
+      Object key = this.schema.toKey(column, value);
+      String indexName = this.usableIndex(column, key);
+      return this.describeFieldAccess(column, key, indexName,
+          this.findByField(column, key, indexName).size());
+    } finally {
+      this.readLock.unlock();
+    }
+  }
 
+  /**
+   * Returns the index that can answer an equality lookup on a column, or null if the
+   * records have to be scanned.
+   */
+  private String usableIndex(int column, Object key) {
+    String indexName = this.schema.getIndexName(column);
+    boolean usable = indexName != null
+        && (!this.schema.isOrdered(column) || this.schema.hasKeyType(column, key));
+    return usable ? indexName : null;
+  }
+
+  private List<T> findByField(int column, Object key, String indexName) {
+    List<T> results = new ArrayList<>();
+    if (indexName != null) {
+      Object indexValue = this.getIndicesMap().get(indexName).get(key);
       if (indexValue == null) {
-        return new ArrayList<>();
+        return results;
+      }
+      for (PrimitiveIterator.OfInt ids = idIterator(indexValue); ids.hasNext(); ) {
+        Object[] row = this.records.get(ids.nextInt());
+        // Skip invalid records
+        if (row != null) {
+          results.add(this.toModel(row));
+        }
+      }
+      return results;
+    }
+
+    // Fallback to full scan if no index exists
+    for (int i = 0; i < this.records.size(); i++) {
+      Object[] row = this.records.rowAt(i);
+      if (Objects.equals(this.schema.toKey(column, row[column]), key)) {
+        results.add(this.toModel(row));
+      }
+    }
+    return results;
+  }
+
+  private QueryPlan describeFieldAccess(int column, Object key, String indexName,
+                                        long actualRows) {
+    Condition condition = Condition.eq(this.records.getLayout().getColumn(column), key);
+    if (indexName == null) {
+      return new QueryPlan(QueryPlan.Operation.FULL_SCAN,
+          this.getTableName() + " where " + condition, this.records.size(), actualRows,
+          List.of());
+    }
+    long estimate = QueryPlanner.entrySize(this.getIndicesMap().get(indexName).get(key));
+    return new QueryPlan(QueryPlan.Operation.INDEX_LOOKUP, indexName + " " + condition,
+        estimate, actualRows, List.of());
+  }
+
+  /**
+   * Writes a query to the slow-query log if it took at least the threshold configured in
+   * {@link StorageOptions#getSlowQueryThreshold()}.
+   *
+   * @param startNanos the {@link System#nanoTime()} at which the query started
+   * @param plan       supplies the plan of the query; only called if the query is logged
+   */
+  void logIfSlow(long startNanos, Supplier<QueryPlan> plan) {
+    Duration threshold = this.options.getSlowQueryThreshold();
+    long elapsed = System.nanoTime() - startNanos;
+    if (threshold != null && elapsed >= threshold.toNanos()
+        && SLOW_QUERY_LOGGER.isLoggable(Level.WARNING)) {
+      SLOW_QUERY_LOGGER.warning(String.format("Slow query on %s took %.1f ms:%n%s",
+          this.getTableName(), elapsed / 1_000_000.0, plan.get()));
+    }
+  }
+
+  /**
+   * Retrieves the record with the given values in the columns of a composite unique
+   * constraint, with a single probe of the constraint's index.
+   *
+   * @param fields the columns of a {@code unique_together} constraint, in declared order
+   * @param values one value per column
+   * @return the matching record, or null if there is none
+   * @throws IllegalArgumentException if the table has no such constraint
+   */
+  public T getByUniqueKey(String[] fields, Object... values) {
+    this.readLock.lock();
+    try {
+      for (CompositeIndex index : this.compositeIndices) {
+        if (!index.covers(fields)) {
+          continue;
+        }
+        Object[] keys = new Object[values.length];
+        for (int i = 0; i < values.length && i < fields.length; i++) {
+          keys[i] = this.schema.toKey(this.records.getLayout().indexOf(fields[i]), values[i]);
+        }
+        int id = index.find(keys);
+        return id != 0 ? this.toModel(this.records.get(id)) : null;
       }
+      throw new IllegalArgumentException(
+          "No unique_together constraint on " + String.join(", ", fields));
+    } finally {
+      this.readLock.unlock();
+    }
+  }
 
-      List<Integer> ids = indexValue instanceof List ?
-          (List<Integer>) indexValue :
-          Collections.singletonList((Integer) indexValue);
+  /**
+   * Retrieves the records whose value in a field lies within a range, ordered by that field,
+   * by walking the field's ordered index.
+   *
+   * @param fieldName the name of a field with an ordered index
+   * @param from      the lowest value to include, or null for no lower bound
+   * @param to        the highest value to include, or null for no upper bound
+   * @return the matching records in ascending order of the field
+   * @throws IllegalArgumentException if the field has no ordered index
+   */
+  public List<T> getRange(String fieldName, Object from, Object to) {
+    return this.getRange(fieldName, from, to, 0, Integer.MAX_VALUE);
+  }
 
+  /**
+   * Retrieves one page of the records whose value in a field lies within a range, ordered by
+   * that field. Only the entries of the index up to the end of the page are visited.
+   *
+   * @param fieldName the name of a field with an ordered index
+   * @param from      the lowest value to include, or null for no lower bound
+   * @param to        the highest value to include, or null for no upper bound
+   * @param offset    the number of matching records to skip
+   * @param limit     the maximum number of records to return
+   * @return the page of matching records in ascending order of the field
+   * @throws IllegalArgumentException if the field has no ordered index
+   */
+  public List<T> getRange(String fieldName, Object from, Object to, int offset, int limit) {
+    this.readLock.lock();
+    try {
       List<T> results = new ArrayList<>();
-      for (Integer id : ids) {
-        try {
-          results.add(getById(id));
-        } catch (RecordNotFoundException e) {
-          // Skip invalid records
+      int skip = offset;
+      for (Object indexValue : this.rangeOf(fieldName, from, to).values()) {
+        for (PrimitiveIterator.OfInt ids = idIterator(indexValue); ids.hasNext(); ) {
+          if (results.size() >= limit) {
+            return results;
+          }
+          Object[] row = this.records.get(ids.nextInt());
+          if (row == null) {
+            continue;
+          }
+          if (skip > 0) {
+            skip--;
+          } else {
+            results.add(this.toModel(row));
+          }
         }
       }
       return results;
+    } finally {
+      this.readLock.unlock();
     }
+  }
 
-    // Fallback to full scan if no index exists
-    return this.getDataMap().values().stream()
-        .filter(record -> Objects.equals(record.get(fieldName), value))
-        .map(record -> this.objectMapper.convertValue(record, this.modelClass))
-        .toList();
+  /**
+   * Retrieves one page of all records, ordered by a field with an ordered index.
+   *
+   * @param fieldName the name of a field with an ordered index
+   * @param offset    the number of records to skip
+   * @param limit     the maximum number of records to return
+   * @return the page of records in ascending order of the field
+   * @throws IllegalArgumentException if the field has no ordered index
+   */
+  public List<T> getOrdered(String fieldName, int offset, int limit) {
+    return this.getRange(fieldName, null, null, offset, limit);
+  }
+
+  /**
+   * Returns the entries of a field's ordered index whose keys lie within a range. The map
+   * is a live view of the index, so callers hold the read lock while they walk it.
+   *
+   * @throws IllegalArgumentException if the field has no ordered index or a bound does not
+   *                                  match the field's key type
+   */
+  @SuppressWarnings("unchecked")
+  NavigableMap<Object, Object> rangeOf(String fieldName, Object from, Object to) {
+    int column = this.records.getLayout().indexOf(fieldName);
+    if (column < 0 || !this.schema.isOrdered(column)) {
+      throw new IllegalArgumentException("No ordered index on " + fieldName);
+    }
+    NavigableMap<Object, Object> index =
+        (NavigableMap<Object, Object>) this.getIndicesMap().get(this.schema.getIndexName(column));
+    Object fromKey = this.schema.toKey(column, from);
+    Object toKey = this.schema.toKey(column, to);
+    if ((from != null && !this.schema.hasKeyType(column, fromKey))
+        || (to != null && !this.schema.hasKeyType(column, toKey))) {
+      throw new IllegalArgumentException("Range bounds do not match the type of " + fieldName);
+    }
+
+    if (fromKey != null && toKey != null) {
+      if (((Comparable<Object>) fromKey).compareTo(toKey) > 0) {
+        return Collections.emptyNavigableMap();
+      }
+      return index.subMap(fromKey, true, toKey, true);
+    } else if (fromKey != null) {
+      return index.tailMap(fromKey, true);
+    } else if (toKey != null) {
+      return index.headMap(toKey, true);
+    }
+    return index;
+  }
+
+  /**
+   * Returns the IDs held by one entry of an index: a single ID for unique indices, or a
+   * bitmap of IDs for every other index.
+   */
+  static PrimitiveIterator.OfInt idIterator(Object indexValue) {
+    if (indexValue instanceof RoaringBitmap bitmap) {
+      return bitmap.iterator();
+    }
+    return IntStream.of((Integer) indexValue).iterator();
+  }
+
+  /**
+   * Returns the IDs of the records with the given value in a field, as a bitmap that can
+   * be combined with other ID sets through {@link RoaringBitmap#and}, {@link RoaringBitmap#or}
+   * and {@link RoaringBitmap#andNot}. Non-unique indices answer this with a copy of
+   * their bitmap, unique indices are converted, and fields without an index are scanned.
+   *
+   * @param fieldName the name of the field to filter by
+   * @param value     the value to match, converted to the field's key type
+   * @return a new bitmap of matching IDs, which the caller may modify
+   */
+  public RoaringBitmap getIds(String fieldName, Object value) {
+    this.readLock.lock();
+    try {
+      RoaringBitmap ids = new RoaringBitmap();
+      int column = this.records.getLayout().indexOf(fieldName);
+      if (column < 0) {
+        return ids;
+      }
+      Object key = this.schema.toKey(column, value);
+      String indexName = this.schema.getIndexName(column);
+
+      if (indexName != null && (!this.schema.isOrdered(column)
+          || this.schema.hasKeyType(column, key))) {
+        Object indexValue = this.getIndicesMap().get(indexName).get(key);
+        if (indexValue instanceof RoaringBitmap bitmap) {
+          return bitmap.copy();
+        }
+        if (indexValue != null) {
+          idIterator(indexValue).forEachRemaining((int id) -> ids.add(id));
+        }
+        return ids;
+      }
+
+      for (int i = 0; i < this.records.size(); i++) {
+        if (Objects.equals(this.schema.toKey(column, this.records.rowAt(i)[column]), key)) {
+          ids.add(this.records.idAt(i));
+        }
+      }
+      return ids;
+    } finally {
+      this.readLock.unlock();
+    }
+  }
+
+  /**
+   * Returns the IDs of the records whose value in a field lies within a range. On a bitmap
+   * index this is the union of one bitmap per distinct value in the range.
+   *
+   * @param fieldName the name of a field with an ordered or bitmap index
+   * @param from      the lowest value to include, or null for no lower bound
+   * @param to        the highest value to include, or null for no upper bound
+   * @return a new bitmap of matching IDs, which the caller may modify
+   * @throws IllegalArgumentException if the field has no ordered index
+   */
+  public RoaringBitmap getIdsInRange(String fieldName, Object from, Object to) {
+    this.readLock.lock();
+    try {
+      RoaringBitmap ids = new RoaringBitmap();
+      for (Object indexValue : this.rangeOf(fieldName, from, to).values()) {
+        if (indexValue instanceof RoaringBitmap bitmap) {
+          ids = ids.or(bitmap);
+        } else {
+          RoaringBitmap result = ids;
+          idIterator(indexValue).forEachRemaining((int id) -> result.add(id));
+        }
+      }
+      return ids;
+    } finally {
+      this.readLock.unlock();
+    }
+  }
+
+  /**
+   * Returns the IDs of all records, e.g. to negate a filter with
+   * {@link RoaringBitmap#not(RoaringBitmap)}.
+   *
+   * @return a new bitmap of every ID in the table
+   */
+  public RoaringBitmap getAllIds() {
+    this.readLock.lock();
+    try {
+      return this.records.ids();
+    } finally {
+      this.readLock.unlock();
+    }
+  }
+
+  /**
+   * Retrieves the records with the given IDs, in ascending ID order. IDs without a record
+   * are skipped.
+   *
+   * @param ids the IDs, typically the result of combining {@link #getIds} and
+   *            {@link #getIdsInRange}
+   * @return the matching records
+   */
+  public List<T> getByIds(RoaringBitmap ids) {
+    this.readLock.lock();
+    try {
+      List<T> results = new ArrayList<>(ids.cardinality());
+      for (PrimitiveIterator.OfInt it = ids.iterator(); it.hasNext(); ) {
+        Object[] row = this.records.get(it.nextInt());
+        if (row != null) {
+          results.add(this.toModel(row));
+        }
+      }
+      return results;
+    } finally {
+      this.readLock.unlock();
+    }
+  }
+
+  /**
+   * Retrieves the records with the given IDs in one pass, in the order the IDs are given.
+   * Repeated IDs are looked up once. Missing IDs are reported in the result rather than
+   * thrown, so fan-out lookups need no per-ID error handling.
+   *
+   * @param ids the IDs to look up
+   * @return the records found and the IDs that were missing
+   */
+  public MultiGetResult<T> getByIds(int[] ids) {
+    return this.getByIds(ids, null);
+  }
+
+  /**
+   * Retrieves the records with the given IDs in one pass, as {@link #getByIds(int[])} does,
+   * and sorts the records found.
+   *
+   * @param ids   the IDs to look up
+   * @param order the order of the records, or null to keep the order of the IDs
+   * @return the records found and the IDs that were missing
+   */
+  public MultiGetResult<T> getByIds(int[] ids, Comparator<? super T> order) {
+    this.readLock.lock();
+    try {
+      RoaringBitmap seen = new RoaringBitmap();
+      List<Object[]> rows = new ArrayList<>(ids.length);
+      List<Integer> missing = new ArrayList<>();
+      for (int id : ids) {
+        if (seen.contains(id)) {
+          continue;
+        }
+        seen.add(id);
+        Object[] row = this.records.get(id);
+        if (row == null) {
+          missing.add(id);
+        } else {
+          rows.add(row);
+        }
+      }
+
+      List<T> found = new ArrayList<>(rows.size());
+      for (Object[] row : rows) {
+        found.add(this.toModel(row));
+      }
+      if (order != null) {
+        found.sort(order);
+      }
+      return new MultiGetResult<>(found, missing);
+    } finally {
+      this.readLock.unlock();
+    }
+  }
+
+  /**
+   * Retrieves the records with the given IDs in one pass, in the order the IDs are given.
+   * See {@link #getByIds(int[])}.
+   *
+   * @param ids the IDs to look up
+   * @return the records found and the IDs that were missing
+   */
+  public MultiGetResult<T> getByIds(Collection<Integer> ids) {
+    return this.getByIds(ids, null);
+  }
+
+  /**
+   * Retrieves the records with the given IDs in one pass and sorts them. See
+   * {@link #getByIds(int[], Comparator)}.
+   *
+   * @param ids   the IDs to look up
+   * @param order the order of the records, or null to keep the order of the IDs
+   * @return the records found and the IDs that were missing
+   */
+  public MultiGetResult<T> getByIds(Collection<Integer> ids, Comparator<? super T> order) {
+    return this.getByIds(ids.stream().mapToInt(Integer::intValue).toArray(), order);
+  }
+
+  /**
+   * Starts a query on the records of this service, which can combine predicates on several
+   * fields and uses the most selective indices to answer them.
+   *
+   * @return a new query matching every record
+   */
+  public Query<T> query() {
+    return new Query<>(this);
   }
 
   /**
@@ -425,9 +1410,107 @@ public abstract class BaseService<T> {
    * @return a list of objects of type {@code T}, representing all records in the data storage.
    */
   public List<T> getAll() {
-    return this.getDataMap().values().stream()
-        .map(record -> this.objectMapper.convertValue(record, this.modelClass))
-        .toList();
+    this.readLock.lock();
+    try {
+      List<T> results = new ArrayList<>(this.records.size());
+      for (int i = 0; i < this.records.size(); i++) {
+        results.add(this.toModel(this.records.rowAt(i)));
+      }
+      return results;
+    } finally {
+      this.readLock.unlock();
+    }
+  }
+
+  /**
+   * Reads one page of records in ascending ID order, starting after the position of a
+   * cursor. Only the records of the page are converted to models, so paging through a
+   * large table holds one page in memory at a time.
+   *
+   * @param cursor the {@link Page#nextCursor()} of the previous page, or null for the first
+   * @param limit  the maximum number of records in the page
+   * @return the page, with the cursor of the next page if more records follow
+   * @throws IllegalArgumentException if the limit is not positive or the cursor is invalid
+   */
+  public Page<T> scan(String cursor, int limit) {
+    if (limit <= 0) {
+      throw new IllegalArgumentException("limit must be positive");
+    }
+    // Read one row more than asked for, to know whether another page follows
+    List<Object[]> rows = this.readRows(Page.decodeCursor(cursor),
+        limit == Integer.MAX_VALUE ? limit : limit + 1);
+    boolean more = rows.size() > limit;
+    List<T> items = new ArrayList<>(Math.min(rows.size(), limit));
+    for (int i = 0; i < rows.size() && i < limit; i++) {
+      items.add(this.toModel(rows.get(i)));
+    }
+    return new Page<>(items, more ? Page.encodeCursor(this.idOf(rows.get(limit - 1))) : null);
+  }
+
+  /**
+   * Returns the records as a lazy stream in ascending ID order. Records are read in small
+   * batches as the stream is consumed and converted to models one at a time, so the first
+   * records are available at once and memory use does not grow with the table. Records
+   * changed while the stream is open are seen if the stream has not yet passed their ID.
+   *
+   * @return a sequential stream of all records
+   */
+  public Stream<T> stream() {
+    Iterator<T> iterator = new Iterator<>() {
+      private List<Object[]> batch = List.of();
+      private int next;
+      private long from;
+      private boolean exhausted;
+
+      @Override
+      public boolean hasNext() {
+        if (this.next == this.batch.size() && !this.exhausted) {
+          this.batch = BaseService.this.readRows(this.from, STREAM_PAGE_SIZE);
+          this.next = 0;
+          this.exhausted = this.batch.size() < STREAM_PAGE_SIZE;
+          if (!this.exhausted) {
+            this.from = BaseService.this.idOf(this.batch.getLast()) + 1L;
+          }
+        }
+        return this.next < this.batch.size();
+      }
+
+      @Override
+      public T next() {
+        if (!this.hasNext()) {
+          throw new NoSuchElementException();
+        }
+        return BaseService.this.toModel(this.batch.get(this.next++));
+      }
+    };
+    return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator,
+        Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL), false);
+  }
+
+  /**
+   * Collects up to {@code limit} rows with IDs from {@code fromId} upwards, in ID order. The
+   * read lock keeps writers from changing the ID set during the walk; rows are immutable, so
+   * callers convert them after it is released.
+   */
+  private List<Object[]> readRows(long fromId, int limit) {
+    if (fromId > Integer.MAX_VALUE) {
+      return List.of();
+    }
+    this.readLock.lock();
+    try {
+      List<Object[]> rows = new ArrayList<>(Math.min(limit, this.records.size()));
+      for (PrimitiveIterator.OfInt it = this.records.idsFrom((int) fromId);
+           rows.size() < limit && it.hasNext(); ) {
+        rows.add(this.records.get(it.nextInt()));
+      }
+      return rows;
+    } finally {
+      this.readLock.unlock();
+    }
+  }
+
+  private int idOf(Object[] row) {
+    return ((Number) row[this.records.getLayout().getPkColumn()]).intValue();
   }
 
   /**
@@ -441,19 +1524,26 @@ public abstract class BaseService<T> {
    * @throws RecordNotFoundException if the specified record ID does not exist in the database
    */
   public T update(T record) throws DatabaseException {
-    Map<String, Object> recordMap = this.objectMapper.convertValue(record, Map.class);
-    int recordId = (Integer) recordMap.get("id");
+    Object[] row = this.toRow(record);
+    int recordId = ((Number) row[this.records.getLayout().getPkColumn()]).intValue();
 
-    if (!getDataMap().containsKey(String.valueOf(recordId))) {
-      throw new RecordNotFoundException("Record with ID " + recordId + " not found");
-    }
+    long sequence;
+    this.lock.lock();
+    try {
+      if (!this.records.contains(recordId)) {
+        throw new RecordNotFoundException("Record with ID " + recordId + " not found");
+      }
 
-    this.validateRecord(record);
-    this.validateUniqueConstraints(record, recordId);
-    this.removeFromIndices(recordId);
-    this.getDataMap().put(String.valueOf(recordId), recordMap);
-    this.updateIndices(record, recordId);
-    this.saveData();
+      this.validateRecord(row, recordId);
+      this.rememberForUndo(recordId);
+      sequence = this.appendLog(LogEntry.Op.UPDATE, recordId, row);
+      this.removeFromIndices(recordId);
+      this.records.put(recordId, row);
+      this.updateIndices(row, recordId);
+    } finally {
+      this.lock.unlock();
+    }
+    this.awaitDurable(sequence);
 
     return record;
   }
@@ -462,19 +1552,27 @@ public abstract class BaseService<T> {
    * Deletes a record from the database using the specified unique identifier.
    * If the record with the provided ID does not exist, a {@code RecordNotFoundException} is thrown.
    * This method also removes the record's references from all applicable indices
-   * and persists the updated data state.
+   * and records the deletion in the write-ahead log.
    *
    * @param id the unique identifier of the record to be deleted
    * @throws DatabaseException       if an error occurs while deleting the record
    * @throws RecordNotFoundException if the record with the specified ID does not exist
    */
   public void delete(int id) throws DatabaseException {
-    if (!getDataMap().containsKey(String.valueOf(id))) {
-      throw new RecordNotFoundException("Record with ID " + id + " not found");
-    }
+    long sequence;
+    this.lock.lock();
+    try {
+      if (!this.records.contains(id)) {
+        throw new RecordNotFoundException("Record with ID " + id + " not found");
+      }
 
-    this.removeFromIndices(id);
-    this.getDataMap().remove(String.valueOf(id));
-    this.saveData();
+      this.rememberForUndo(id);
+      sequence = this.appendLog(LogEntry.Op.DELETE, id, null);
+      this.removeFromIndices(id);
+      this.records.remove(id);
+    } finally {
+      this.lock.unlock();
+    }
+    this.awaitDurable(sequence);
   }
 }
\ No newline at end of file
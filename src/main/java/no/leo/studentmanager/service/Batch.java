@@ -0,0 +1,61 @@
+package no.leo.studentmanager.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import no.leo.studentmanager.storage.IdSequence;
+import no.leo.studentmanager.storage.LogEntry;
+
+/**
+ * Changes staged by an open batch on a single {@link BaseService}.
+ * <p>
+ * Records and indices are updated in place as operations run, so later operations in the
+ * same batch see earlier ones. Log entries are held back until commit, and the previous
+ * version of every touched record is remembered so rollback can restore it. New records
+ * take their IDs from blocks reserved from the table's sequence.
+ */
+class Batch {
+  /**
+   * The state of a record before the batch first touched it.
+   *
+   * @param id       the record ID
+   * @param previous the row as it was, or null if it did not exist
+   */
+  record UndoEntry(int id, Object[] previous) {
+  }
+
+  private static final int ID_BLOCK_SIZE = 64;
+
+  final long startLsn;
+  final List<LogEntry> entries = new ArrayList<>();
+  final List<UndoEntry> undo = new ArrayList<>();
+  private int nextId;
+  private int blockEnd;
+
+  Batch(long startLsn) {
+    this.startLsn = startLsn;
+  }
+
+  /**
+   * Takes the next ID from the batch's block, reserving a new block when it is used up.
+   *
+   * @param sequence the table's ID sequence
+   * @return the ID for a new record
+   */
+  int nextId(IdSequence sequence) {
+    if (this.nextId == this.blockEnd) {
+      this.nextId = sequence.reserve(ID_BLOCK_SIZE);
+      this.blockEnd = this.nextId + ID_BLOCK_SIZE;
+    }
+    return this.nextId++;
+  }
+
+  /**
+   * Hands the unused part of the current block back to the sequence.
+   *
+   * @param sequence the table's ID sequence
+   */
+  void releaseIds(IdSequence sequence) {
+    sequence.release(this.nextId, this.blockEnd);
+    this.nextId = this.blockEnd;
+  }
+}
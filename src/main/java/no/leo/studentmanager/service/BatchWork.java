@@ -0,0 +1,17 @@
+package no.leo.studentmanager.service;
+
+import no.leo.studentmanager.exception.DatabaseException;
+
+/**
+ * A unit of work executed inside a batch by {@link BaseService#inBatch(BatchWork)}.
+ * If it throws, every change it made is rolled back.
+ */
+@FunctionalInterface
+public interface BatchWork {
+  /**
+   * Performs the work of the batch.
+   *
+   * @throws DatabaseException if any operation fails; the batch is then rolled back
+   */
+  void run() throws DatabaseException;
+}
@@ -0,0 +1,167 @@
+package no.leo.studentmanager.service;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Computes an {@link EnrollmentReport} over a snapshot of the enrollment columns as a
+ * fork-join task: the positions are split in halves until a range is small enough, each
+ * range is aggregated into its own partial totals without any sharing, and the partials are
+ * merged as the halves are joined.
+ */
+final class BulkAggregation extends RecursiveTask<BulkAggregation.Partial> {
+  // Ranges below this are never split, as merging would cost more than it saves
+  static final int MIN_RANGE = 1 << 15;
+
+  private final EnrollmentColumns.Snapshot columns;
+  private final int from;
+  private final int to;
+  private final int threshold;
+
+  /**
+   * Creates a task over a whole snapshot.
+   *
+   * @param columns     the enrollment columns
+   * @param parallelism the number of threads the task will run on, used to size the ranges
+   */
+  BulkAggregation(EnrollmentColumns.Snapshot columns, int parallelism) {
+    this(columns, parallelism, MIN_RANGE);
+  }
+
+  /**
+   * Creates a task over a whole snapshot with a custom lower bound on the range size, e.g.
+   * to split small snapshots in tests.
+   *
+   * @param columns     the enrollment columns
+   * @param parallelism the number of threads the task will run on, used to size the ranges
+   * @param minRange    the size below which a range is never split, at least 1
+   */
+  BulkAggregation(EnrollmentColumns.Snapshot columns, int parallelism, int minRange) {
+    this(columns, 0, columns.size(),
+        Math.max(minRange, columns.size() / Math.max(1, parallelism * 4)));
+  }
+
+  private BulkAggregation(EnrollmentColumns.Snapshot columns, int from, int to, int threshold) {
+    this.columns = columns;
+    this.from = from;
+    this.to = to;
+    this.threshold = threshold;
+  }
+
+  @Override
+  protected Partial compute() {
+    if (this.to - this.from <= this.threshold) {
+      Partial partial = new Partial();
+      int[] students = this.columns.students();
+      int[] courses = this.columns.courses();
+      int[] grades = this.columns.grades();
+      this.columns.forEachRange(this.from, this.to, (start, end) -> {
+        for (int i = start; i < end; i++) {
+          partial.add(students[i], courses[i], grades[i]);
+        }
+      });
+      return partial;
+    }
+
+    int middle = (this.from + this.to) >>> 1;
+    BulkAggregation left = new BulkAggregation(this.columns, this.from, middle, this.threshold);
+    BulkAggregation right = new BulkAggregation(this.columns, middle, this.to, this.threshold);
+    left.fork();
+    Partial partial = right.compute();
+    return partial.merge(left.join());
+  }
+
+  /**
+   * The totals of one range of positions, in primitive arrays indexed by student and course
+   * ID, which are allocated densely from 1. The arrays grow to the highest ID seen.
+   */
+  static final class Partial {
+    private static final int COURSE_WIDTH = StudentAnalytics.MAX_GRADE + 2;
+
+    // Grade sum and enrollment count per student
+    private long[] studentSums = new long[0];
+    private int[] studentCounts = new int[0];
+    // Enrollment count, then one count per grade, per course; COURSE_WIDTH slots each
+    private int[] courses = new int[0];
+
+    private void add(int studentId, int courseId, int grade) {
+      if (studentId >= this.studentCounts.length) {
+        int capacity = Math.max(studentId + 1, this.studentCounts.length * 2);
+        this.studentSums = Arrays.copyOf(this.studentSums, capacity);
+        this.studentCounts = Arrays.copyOf(this.studentCounts, capacity);
+      }
+      this.studentSums[studentId] += grade;
+      this.studentCounts[studentId]++;
+
+      int course = courseId * COURSE_WIDTH;
+      if (course >= this.courses.length) {
+        this.courses = Arrays.copyOf(this.courses,
+            Math.max(course + COURSE_WIDTH, this.courses.length * 2));
+      }
+      this.courses[course]++;
+      if (grade >= 0 && grade <= StudentAnalytics.MAX_GRADE) {
+        this.courses[course + 1 + grade]++;
+      }
+    }
+
+    private Partial merge(Partial other) {
+      // Add the shorter arrays into the longer ones
+      if (other.studentCounts.length > this.studentCounts.length) {
+        long[] sums = this.studentSums;
+        int[] counts = this.studentCounts;
+        this.studentSums = other.studentSums;
+        this.studentCounts = other.studentCounts;
+        other.studentSums = sums;
+        other.studentCounts = counts;
+      }
+      for (int id = 0; id < other.studentCounts.length; id++) {
+        this.studentSums[id] += other.studentSums[id];
+        this.studentCounts[id] += other.studentCounts[id];
+      }
+
+      if (other.courses.length > this.courses.length) {
+        int[] courses = this.courses;
+        this.courses = other.courses;
+        other.courses = courses;
+      }
+      for (int i = 0; i < other.courses.length; i++) {
+        this.courses[i] += other.courses[i];
+      }
+      return this;
+    }
+
+    /**
+     * Converts the totals into a report.
+     *
+     * @return the report
+     */
+    EnrollmentReport toReport() {
+      SortedMap<Integer, Double> averages = new TreeMap<>();
+      for (int id = 0; id < this.studentCounts.length; id++) {
+        if (this.studentCounts[id] > 0) {
+          averages.put(id,
+              Math.round((double) this.studentSums[id] / this.studentCounts[id] * 100.0) / 100.0);
+        }
+      }
+      SortedMap<Integer, Integer> counts = new TreeMap<>();
+      SortedMap<Integer, long[]> distributions = new TreeMap<>();
+      for (int course = 0; course < this.courses.length; course += COURSE_WIDTH) {
+        if (this.courses[course] > 0) {
+          int id = course / COURSE_WIDTH;
+          counts.put(id, this.courses[course]);
+          long[] histogram = new long[StudentAnalytics.MAX_GRADE + 1];
+          for (int grade = 0; grade < histogram.length; grade++) {
+            histogram[grade] = this.courses[course + 1 + grade];
+          }
+          distributions.put(id, histogram);
+        }
+      }
+      return new EnrollmentReport(Collections.unmodifiableSortedMap(averages),
+          Collections.unmodifiableSortedMap(counts),
+          Collections.unmodifiableSortedMap(distributions));
+    }
+  }
+}
@@ -0,0 +1,111 @@
+package no.leo.studentmanager.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * A filter on the records of a table: predicates on single fields, combined with
+ * {@link #and(Condition...)} and {@link #or(Condition...)}. Values are converted to the key
+ * type of their field (see {@link TableSchema#toKey}) before they are compared, as in
+ * {@link BaseService#getByField(String, Object)}.
+ * <p>
+ * Conditions are usually built through {@link Query}, which hands them to a planner that
+ * decides which indices to use.
+ */
+public sealed interface Condition {
+
+  /**
+   * Matches records whose field equals a value.
+   *
+   * @param field the field name
+   * @param value the value
+   */
+  record Eq(String field, Object value) implements Condition {
+    @Override
+    public String toString() {
+      return this.field + " = " + format(this.value);
+    }
+  }
+
+  /**
+   * Matches records whose field equals any of the given values.
+   *
+   * @param field  the field name
+   * @param values the values
+   */
+  record In(String field, List<Object> values) implements Condition {
+    @Override
+    public String toString() {
+      return this.field + " in (" + this.values.stream().map(Condition::format)
+          .collect(Collectors.joining(", ")) + ")";
+    }
+  }
+
+  /**
+   * Matches records whose field lies within a range, bounds included.
+   *
+   * @param field the field name
+   * @param from  the lowest value to include, or null for no lower bound
+   * @param to    the highest value to include, or null for no upper bound
+   */
+  record Between(String field, Object from, Object to) implements Condition {
+    @Override
+    public String toString() {
+      return this.field + " between " + (this.from != null ? format(this.from) : "*")
+          + " and " + (this.to != null ? format(this.to) : "*");
+    }
+  }
+
+  /**
+   * Matches records that match all of the given conditions.
+   *
+   * @param conditions the conditions
+   */
+  record And(List<Condition> conditions) implements Condition {
+    @Override
+    public String toString() {
+      return this.conditions.stream().map(Object::toString)
+          .collect(Collectors.joining(" and ", "(", ")"));
+    }
+  }
+
+  /**
+   * Matches records that match any of the given conditions.
+   *
+   * @param conditions the conditions
+   */
+  record Or(List<Condition> conditions) implements Condition {
+    @Override
+    public String toString() {
+      return this.conditions.stream().map(Object::toString)
+          .collect(Collectors.joining(" or ", "(", ")"));
+    }
+  }
+
+  static Condition eq(String field, Object value) {
+    return new Eq(field, value);
+  }
+
+  static Condition in(String field, Collection<?> values) {
+    return new In(field, Collections.unmodifiableList(new ArrayList<>(values)));
+  }
+
+  static Condition between(String field, Object from, Object to) {
+    return new Between(field, from, to);
+  }
+
+  static Condition and(Condition... conditions) {
+    return new And(List.of(conditions));
+  }
+
+  static Condition or(Condition... conditions) {
+    return new Or(List.of(conditions));
+  }
+
+  private static String format(Object value) {
+    return value instanceof String string ? "'" + string + "'" : String.valueOf(value);
+  }
+}
@@ -1,8 +1,15 @@
 package no.leo.studentmanager.service;
 
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
 import no.leo.studentmanager.exception.DatabaseException;
+import no.leo.studentmanager.exception.UniqueConstraintViolation;
 import no.leo.studentmanager.model.CourseEnrollment;
+import no.leo.studentmanager.storage.RecordLayout;
+import no.leo.studentmanager.storage.StorageOptions;
 
 /**
  * Service class for managing course enrollments. Provides functionality
@@ -10,9 +17,32 @@ import no.leo.studentmanager.model.CourseEnrollment;
  * by student or course.
  */
 public class CourseEnrollmentService extends BaseService<CourseEnrollment> {
+  private static final String[] STUDENT_COURSE = {"student_id", "course_id"};
+
+  private final int studentColumn;
+  private final int courseColumn;
+  private final int gradeColumn;
+  private final EnrollmentAggregates aggregates;
+  private final EnrollmentColumns columns;
 
   public CourseEnrollmentService(String dbPath) {
-    super(CourseEnrollment.class, dbPath);
+    this(dbPath, StorageOptions.defaults());
+  }
+
+  public CourseEnrollmentService(String dbPath, StorageOptions options) {
+    super(CourseEnrollment.class, dbPath, options);
+    RecordLayout layout = this.records.getLayout();
+    this.studentColumn = layout.indexOf("student_id");
+    this.courseColumn = layout.indexOf("course_id");
+    this.gradeColumn = layout.indexOf("grade");
+
+    // The base constructor loads the table before these fields exist, so the aggregates
+    // and columns are built from the loaded records here and maintained from then on
+    EnrollmentAggregates aggregates = new EnrollmentAggregates();
+    EnrollmentColumns columns = new EnrollmentColumns();
+    this.records.forEach((id, row) -> this.mirror(aggregates, columns, row, id, true));
+    this.aggregates = aggregates;
+    this.columns = columns;
   }
 
   /**
@@ -25,6 +55,143 @@ public class CourseEnrollmentService extends BaseService<CourseEnrollment> {
     return "course_enrollments";
   }
 
+  @Override
+  protected void updateIndices(Object[] row, int recordId) {
+    super.updateIndices(row, recordId);
+    if (this.aggregates != null) {
+      this.mirror(this.aggregates, this.columns, row, recordId, true);
+    }
+  }
+
+  @Override
+  protected void removeFromIndices(Object[] row, int recordId) {
+    super.removeFromIndices(row, recordId);
+    if (this.aggregates != null) {
+      this.mirror(this.aggregates, this.columns, row, recordId, false);
+    }
+  }
+
+  private void mirror(EnrollmentAggregates aggregates, EnrollmentColumns columns,
+                      Object[] row, int recordId, boolean add) {
+    int studentId = ((Number) row[this.studentColumn]).intValue();
+    int courseId = ((Number) row[this.courseColumn]).intValue();
+    int grade = row[this.gradeColumn] instanceof Number number ? number.intValue() : 0;
+    if (add) {
+      aggregates.add(studentId, courseId, grade);
+      columns.add(recordId, studentId, courseId, grade);
+    } else {
+      aggregates.remove(studentId, courseId, grade);
+      columns.remove(recordId);
+    }
+  }
+
+  /**
+   * Get the enrollments as primitive columns, for analytical scans. The snapshot is taken
+   * under the read lock and is not affected by later changes.
+   *
+   * @return the current columns
+   */
+  EnrollmentColumns.Snapshot columns() {
+    this.readLock.lock();
+    try {
+      return this.columns.snapshot();
+    } finally {
+      this.readLock.unlock();
+    }
+  }
+
+  /**
+   * Count the enrollments in a course, from totals kept up to date as enrollments change
+   *
+   * @param courseId The course ID
+   * @return The number of enrollments in the course
+   */
+  public int countByCourse(int courseId) {
+    this.readLock.lock();
+    try {
+      return this.aggregates.countOf(courseId);
+    } finally {
+      this.readLock.unlock();
+    }
+  }
+
+  /**
+   * Rank the courses by their number of enrollments, from the maintained totals. A heap of
+   * at most k courses is kept while the counts are walked once, so ranking costs
+   * O(courses log k) and reads no enrollment. Ties are broken by course ID, lowest first;
+   * courses without enrollments are not ranked.
+   *
+   * @param k The maximum number of courses to return
+   * @return Course IDs with their enrollment counts, most enrolled first
+   * @throws IllegalArgumentException if k is negative
+   */
+  public List<Map.Entry<Integer, Integer>> getTopCoursesByEnrollment(int k) {
+    if (k < 0) {
+      throw new IllegalArgumentException("k must not be negative");
+    }
+    if (k == 0) {
+      return List.of();
+    }
+
+    // The head of the heap is the weakest course kept so far: fewest enrollments, then
+    // highest ID
+    Comparator<Map.Entry<Integer, Integer>> weakestFirst =
+        Map.Entry.<Integer, Integer>comparingByValue()
+            .thenComparing(Map.Entry.<Integer, Integer>comparingByKey().reversed());
+    PriorityQueue<Map.Entry<Integer, Integer>> heap = new PriorityQueue<>(weakestFirst);
+    this.readLock.lock();
+    try {
+      for (Map.Entry<Integer, Integer> count : this.aggregates.courseCounts().entrySet()) {
+        Map.Entry<Integer, Integer> candidate = Map.entry(count.getKey(), count.getValue());
+        if (heap.size() < k) {
+          heap.add(candidate);
+        } else if (weakestFirst.compare(candidate, heap.peek()) > 0) {
+          heap.poll();
+          heap.add(candidate);
+        }
+      }
+    } finally {
+      this.readLock.unlock();
+    }
+
+    List<Map.Entry<Integer, Integer>> ranking = new ArrayList<>(heap.size());
+    while (!heap.isEmpty()) {
+      ranking.add(heap.poll());
+    }
+    return ranking.reversed();
+  }
+
+  /**
+   * Count the enrollments of a student, from totals kept up to date as enrollments change
+   *
+   * @param studentId The student's ID
+   * @return The number of enrollments of the student
+   */
+  public int countByStudent(int studentId) {
+    this.readLock.lock();
+    try {
+      return this.aggregates.gradesOf(studentId).count();
+    } finally {
+      this.readLock.unlock();
+    }
+  }
+
+  /**
+   * Get the average grade of a student over all their enrollments, from totals kept up to
+   * date as enrollments change
+   *
+   * @param studentId The student's ID
+   * @return The average grade, or 0.0 if the student has no enrollments
+   */
+  public double getAverageGrade(int studentId) {
+    this.readLock.lock();
+    try {
+      return this.aggregates.gradesOf(studentId).average();
+    } finally {
+      this.readLock.unlock();
+    }
+  }
+
   /**
    * Get all enrollments for a specific student
    *
@@ -47,22 +214,47 @@ public class CourseEnrollmentService extends BaseService<CourseEnrollment> {
     return this.getByField("course_id", courseId);
   }
 
+  /**
+   * Get the enrollment of a student in a course
+   *
+   * @param studentId The student's ID
+   * @param courseId  The course ID
+   * @return The enrollment, or null if the student is not enrolled in the course
+   */
+  public CourseEnrollment getByStudentAndCourse(int studentId, int courseId) {
+    return this.getByUniqueKey(STUDENT_COURSE, studentId, courseId);
+  }
+
+  /**
+   * Get the enrollments in a course with a grade within a range, e.g. all failing
+   * enrollments. The query is answered from the course index and the grade bitmap index,
+   * so no enrollment outside the course is read.
+   *
+   * @param courseId The course ID
+   * @param minGrade The lowest grade to include
+   * @param maxGrade The highest grade to include
+   * @return List of matching course enrollments
+   */
+  public List<CourseEnrollment> getByCourseAndGrade(int courseId, int minGrade, int maxGrade) {
+    return this.query()
+        .where("course_id").eq(courseId)
+        .and("grade").between(minGrade, maxGrade)
+        .list();
+  }
+
   public void enrollStudent(int studentId, int courseId) throws DatabaseException {
     CourseEnrollment enrollment = new CourseEnrollment(0, studentId, courseId, 0);
 
-    // no unique_together in this table, or rather not implemented yet, so we need to check if the enrollment already exists
-    if (this.getByStudent(studentId).stream().anyMatch(e -> e.getCourseId() == courseId)) {
+    // (student_id, course_id) is unique_together, so create() rejects duplicate enrollments
+    try {
+      this.create(enrollment);
+    } catch (UniqueConstraintViolation e) {
       throw new DatabaseException("Student is already enrolled in this course");
     }
-    this.create(enrollment);
   }
 
   public void setGrade(int studentId, int courseId, int grade) throws DatabaseException {
-    List<CourseEnrollment> enrollments = this.getByStudent(studentId);
-    CourseEnrollment enrollment = enrollments.stream()
-        .filter(e -> e.getCourseId() == courseId)
-        .findFirst()
-        .orElse(null);
+    CourseEnrollment enrollment = this.getByStudentAndCourse(studentId, courseId);
 
     if (enrollment == null) {
       throw new DatabaseException("Student is not enrolled in this course, enroll first using 'enroll-student'");
@@ -3,6 +3,7 @@ package no.leo.studentmanager.service;
 import java.util.List;
 import no.leo.studentmanager.exception.DatabaseException;
 import no.leo.studentmanager.model.Course;
+import no.leo.studentmanager.storage.StorageOptions;
 
 /**
  * Service class for managing Course entities.
@@ -16,6 +17,10 @@ public class CourseService extends BaseService<Course> {
     super(Course.class, dbPath);
   }
 
+  public CourseService(String dbPath, StorageOptions options) {
+    super(Course.class, dbPath, options);
+  }
+
   /**
    * Retrieves the name of the database table associated with the Course entity.
    *
@@ -0,0 +1,64 @@
+package no.leo.studentmanager.service;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Running totals over the enrollments of a table: the grade sum and enrollment count of
+ * every student, and the enrollment count of every course. {@link CourseEnrollmentService}
+ * adds and removes each enrollment as it is indexed or unindexed, so the totals follow
+ * creates, updates, deletes, log replay and rolled back batches, and answering from them
+ * never reads an enrollment.
+ * <p>
+ * Like {@link no.leo.studentmanager.storage.RecordStore}, this class is not thread-safe;
+ * {@link CourseEnrollmentService} updates it under its write lock and reads it under its
+ * read lock.
+ */
+final class EnrollmentAggregates {
+  private final Map<Integer, GradeTotal> students = new HashMap<>();
+  private final Map<Integer, Integer> courses = new HashMap<>();
+
+  /**
+   * The grades of one student.
+   *
+   * @param sum   the sum of the grades
+   * @param count the number of enrollments
+   */
+  record GradeTotal(long sum, int count) {
+    static final GradeTotal EMPTY = new GradeTotal(0, 0);
+
+    double average() {
+      return this.count == 0 ? 0.0 : (double) this.sum / this.count;
+    }
+  }
+
+  void add(int studentId, int courseId, int grade) {
+    this.students.merge(studentId, new GradeTotal(grade, 1),
+        (total, added) -> new GradeTotal(total.sum() + added.sum(), total.count() + 1));
+    this.courses.merge(courseId, 1, Integer::sum);
+  }
+
+  void remove(int studentId, int courseId, int grade) {
+    this.students.computeIfPresent(studentId, (id, total) -> total.count() == 1 ? null
+        : new GradeTotal(total.sum() - grade, total.count() - 1));
+    this.courses.computeIfPresent(courseId, (id, count) -> count == 1 ? null : count - 1);
+  }
+
+  GradeTotal gradesOf(int studentId) {
+    return this.students.getOrDefault(studentId, GradeTotal.EMPTY);
+  }
+
+  int countOf(int courseId) {
+    return this.courses.getOrDefault(courseId, 0);
+  }
+
+  /**
+   * Returns the enrollment count of every course with at least one enrollment.
+   *
+   * @return a read-only live view keyed by course ID
+   */
+  Map<Integer, Integer> courseCounts() {
+    return Collections.unmodifiableMap(this.courses);
+  }
+}
@@ -0,0 +1,178 @@
+package no.leo.studentmanager.service;
+
+import java.util.Arrays;
+import java.util.PrimitiveIterator;
+import no.leo.studentmanager.storage.RoaringBitmap;
+
+/**
+ * A columnar mirror of the enrollments table: parallel {@code int[]} columns of ID, student,
+ * course and grade, for analytical scans that run as tight loops over primitive arrays
+ * instead of decoding records.
+ * <p>
+ * Columns are append-only. Adding an enrollment appends a position; removing one marks its
+ * position in a deletion bitmap; an update is a removal followed by an addition. When more
+ * than half the positions are deleted, the live ones are copied into new arrays. A value at
+ * a position below the current size is therefore never overwritten, so a {@link Snapshot}
+ * stays valid while the mirror keeps changing.
+ * <p>
+ * Like {@link no.leo.studentmanager.storage.RecordStore}, this class is not thread-safe;
+ * {@link CourseEnrollmentService} changes it under its write lock and takes snapshots under
+ * its read lock.
+ */
+final class EnrollmentColumns {
+  private static final int MIN_CAPACITY = 16;
+  private static final int MIN_COMPACTION_SIZE = 1024;
+
+  private int[] ids = new int[MIN_CAPACITY];
+  private int[] students = new int[MIN_CAPACITY];
+  private int[] courses = new int[MIN_CAPACITY];
+  private int[] grades = new int[MIN_CAPACITY];
+  private int size;
+  private RoaringBitmap deleted = new RoaringBitmap();
+  private int deletedCount;
+  // Position + 1 of every live ID, indexed by ID; IDs are allocated densely from 1
+  private int[] positions = new int[MIN_CAPACITY];
+
+  /**
+   * Receives maximal runs of live positions, so scans can loop over them without checking
+   * the deletion bitmap per element.
+   */
+  @FunctionalInterface
+  interface RangeVisitor {
+    /**
+     * Called for each run of live positions.
+     *
+     * @param from the first position of the run
+     * @param to   the position after the last one of the run
+     */
+    void visit(int from, int to);
+  }
+
+  /**
+   * An immutable view of the columns at one point in time.
+   *
+   * @param ids      the enrollment ID column
+   * @param students the student ID column
+   * @param courses  the course ID column
+   * @param grades   the grade column
+   * @param size     the number of positions, live or deleted
+   * @param deleted  the deleted positions
+   */
+  record Snapshot(int[] ids, int[] students, int[] courses, int[] grades, int size,
+                  RoaringBitmap deleted) {
+
+    /**
+     * Returns the number of live enrollments.
+     *
+     * @return the live count
+     */
+    int liveCount() {
+      return this.size - this.deleted.cardinality();
+    }
+
+    /**
+     * Calls the visitor for every run of live positions within a range, in order.
+     *
+     * @param from    the first position to visit
+     * @param to      the position after the last one to visit
+     * @param visitor the visitor
+     */
+    void forEachRange(int from, int to, RangeVisitor visitor) {
+      int start = from;
+      for (PrimitiveIterator.OfInt it = this.deleted.iterator(from); it.hasNext(); ) {
+        int position = it.nextInt();
+        if (position >= to) {
+          break;
+        }
+        if (position > start) {
+          visitor.visit(start, position);
+        }
+        start = position + 1;
+      }
+      if (start < to) {
+        visitor.visit(start, to);
+      }
+    }
+
+    /**
+     * Calls the visitor for every run of live positions, in order.
+     *
+     * @param visitor the visitor
+     */
+    void forEachRange(RangeVisitor visitor) {
+      this.forEachRange(0, this.size, visitor);
+    }
+  }
+
+  void add(int id, int studentId, int courseId, int grade) {
+    if (this.size == this.ids.length) {
+      int capacity = this.size * 2;
+      this.ids = Arrays.copyOf(this.ids, capacity);
+      this.students = Arrays.copyOf(this.students, capacity);
+      this.courses = Arrays.copyOf(this.courses, capacity);
+      this.grades = Arrays.copyOf(this.grades, capacity);
+    }
+    if (id >= this.positions.length) {
+      this.positions = Arrays.copyOf(this.positions, Math.max(id + 1, this.positions.length * 2));
+    }
+    this.ids[this.size] = id;
+    this.students[this.size] = studentId;
+    this.courses[this.size] = courseId;
+    this.grades[this.size] = grade;
+    this.positions[id] = ++this.size;
+  }
+
+  void remove(int id) {
+    if (id >= this.positions.length || this.positions[id] == 0) {
+      return;
+    }
+    this.deleted.add(this.positions[id] - 1);
+    this.positions[id] = 0;
+    this.deletedCount++;
+    if (this.size >= MIN_COMPACTION_SIZE && this.deletedCount * 2 > this.size) {
+      this.compact();
+    }
+  }
+
+  /**
+   * Returns a view of the current columns. Later changes do not affect it.
+   *
+   * @return the snapshot
+   */
+  Snapshot snapshot() {
+    return new Snapshot(this.ids, this.students, this.courses, this.grades, this.size,
+        this.deleted.copy());
+  }
+
+  /**
+   * Copies the live positions into new arrays, leaving the old ones to any snapshots that
+   * still use them.
+   */
+  private void compact() {
+    int live = this.size - this.deletedCount;
+    int capacity = Math.max(MIN_CAPACITY, live * 2);
+    int[] ids = new int[capacity];
+    int[] students = new int[capacity];
+    int[] courses = new int[capacity];
+    int[] grades = new int[capacity];
+    int[] next = {0};
+    this.snapshot().forEachRange((from, to) -> {
+      int length = to - from;
+      System.arraycopy(this.ids, from, ids, next[0], length);
+      System.arraycopy(this.students, from, students, next[0], length);
+      System.arraycopy(this.courses, from, courses, next[0], length);
+      System.arraycopy(this.grades, from, grades, next[0], length);
+      next[0] += length;
+    });
+    for (int position = 0; position < live; position++) {
+      this.positions[ids[position]] = position + 1;
+    }
+    this.ids = ids;
+    this.students = students;
+    this.courses = courses;
+    this.grades = grades;
+    this.size = live;
+    this.deleted = new RoaringBitmap();
+    this.deletedCount = 0;
+  }
+}
@@ -0,0 +1,17 @@
+package no.leo.studentmanager.service;
+
+import no.leo.studentmanager.model.Course;
+import no.leo.studentmanager.model.CourseEnrollment;
+import no.leo.studentmanager.model.Student;
+
+/**
+ * An enrollment together with the student and course it refers to, as produced by
+ * {@link EnrollmentJoin}.
+ *
+ * @param enrollment the enrollment
+ * @param student    the enrolled student, or null if no student has the enrollment's
+ *                   student ID
+ * @param course     the course, or null if no course has the enrollment's course ID
+ */
+public record EnrollmentDetails(CourseEnrollment enrollment, Student student, Course course) {
+}
@@ -0,0 +1,93 @@
+package no.leo.studentmanager.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import no.leo.studentmanager.model.Course;
+import no.leo.studentmanager.model.CourseEnrollment;
+import no.leo.studentmanager.model.Student;
+
+/**
+ * Resolves the students and courses of enrollments as a hash join: each distinct student
+ * and course ID is looked up and decoded once, and later enrollments with the same ID reuse
+ * the decoded model. Listing every enrollment therefore decodes each course once rather than
+ * once per enrollment.
+ * <p>
+ * The lookup tables are bounded: when one reaches {@value #CACHE_LIMIT} entries it is
+ * emptied, so joining a stream of any length uses bounded memory. Courses are far fewer than
+ * that, so in practice only students are ever decoded again.
+ * <p>
+ * Joined models are shared between results and must not be modified. A join is not
+ * thread-safe; create one per listing.
+ */
+public class EnrollmentJoin {
+  static final int CACHE_LIMIT = 65_536;
+
+  private final StudentService studentService;
+  private final CourseService courseService;
+  private final Map<Integer, Student> students = new HashMap<>();
+  private final Map<Integer, Course> courses = new HashMap<>();
+
+  /**
+   * Creates a join against the given services.
+   *
+   * @param studentService the service to resolve student IDs with
+   * @param courseService  the service to resolve course IDs with
+   */
+  public EnrollmentJoin(StudentService studentService, CourseService courseService) {
+    this.studentService = studentService;
+    this.courseService = courseService;
+  }
+
+  /**
+   * Resolves the student and course of one enrollment.
+   *
+   * @param enrollment the enrollment
+   * @return the enrollment with its student and course
+   */
+  public EnrollmentDetails join(CourseEnrollment enrollment) {
+    return new EnrollmentDetails(enrollment,
+        lookup(this.students, this.studentService, enrollment.getStudentId()),
+        lookup(this.courses, this.courseService, enrollment.getCourseId()));
+  }
+
+  /**
+   * Resolves the students and courses of a collection of enrollments.
+   *
+   * @param enrollments the enrollments
+   * @return the joined enrollments, in the order given
+   */
+  public List<EnrollmentDetails> joinAll(Collection<CourseEnrollment> enrollments) {
+    List<EnrollmentDetails> results = new ArrayList<>(enrollments.size());
+    for (CourseEnrollment enrollment : enrollments) {
+      results.add(this.join(enrollment));
+    }
+    return results;
+  }
+
+  /**
+   * Resolves the students and courses of a stream of enrollments lazily, as the returned
+   * stream is consumed.
+   *
+   * @param enrollments the enrollments, e.g. {@link CourseEnrollmentService#stream()}
+   * @return a stream of joined enrollments, in the order of the input
+   */
+  public Stream<EnrollmentDetails> join(Stream<CourseEnrollment> enrollments) {
+    return enrollments.map(this::join);
+  }
+
+  private static <T> T lookup(Map<Integer, T> cache, BaseService<T> service, int id) {
+    T model = cache.get(id);
+    if (model == null && !cache.containsKey(id)) {
+      if (cache.size() >= CACHE_LIMIT) {
+        cache.clear();
+      }
+      model = service.findById(id);
+      cache.put(id, model);
+    }
+    return model;
+  }
+}
@@ -0,0 +1,19 @@
+package no.leo.studentmanager.service;
+
+import java.util.Map;
+
+/**
+ * Aggregates over every enrollment, computed in one pass by
+ * {@link StudentAnalytics#getEnrollmentReport()}. All maps are keyed by ID and sorted by it.
+ *
+ * @param studentAverages    the average grade of every student with enrollments, rounded to
+ *                           two decimals
+ * @param courseCounts       the number of enrollments of every course with enrollments
+ * @param gradeDistributions the grade histogram of every course with enrollments, where
+ *                           element {@code g} is the number of enrollments with grade
+ *                           {@code g}, from 0 to {@link StudentAnalytics#MAX_GRADE}
+ */
+public record EnrollmentReport(Map<Integer, Double> studentAverages,
+                               Map<Integer, Integer> courseCounts,
+                               Map<Integer, long[]> gradeDistributions) {
+}
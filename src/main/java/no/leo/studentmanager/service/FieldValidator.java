@@ -0,0 +1,70 @@
+package no.leo.studentmanager.service;
+
+import java.util.Map;
+
+/**
+ * The constraints of a single column, compiled from its {@code "constraints"} object in the
+ * table definition so that checking a value needs no map lookups.
+ */
+final class FieldValidator {
+  private static final int UNBOUNDED = -1;
+
+  private final String fieldName;
+  private final boolean notNull;
+  private final int length;
+  private final Integer min;
+  private final Integer max;
+
+  /**
+   * Compiles the constraints of a column.
+   *
+   * @param fieldName   the column name, used in error messages
+   * @param constraints the column's constraints, or null if it has none
+   */
+  FieldValidator(String fieldName, Map<String, Object> constraints) {
+    this.fieldName = fieldName;
+    if (constraints == null) {
+      this.notNull = false;
+      this.length = UNBOUNDED;
+      this.min = null;
+      this.max = null;
+      return;
+    }
+    this.notNull = Boolean.TRUE.equals(constraints.get("not_null"));
+    this.length = constraints.containsKey("length") ? (Integer) constraints.get("length") : UNBOUNDED;
+    this.min = (Integer) constraints.get("min");
+    this.max = (Integer) constraints.get("max");
+  }
+
+  /**
+   * Checks a value against the column's constraints.
+   *
+   * @param value the value to check
+   * @throws IllegalArgumentException if the value violates a constraint
+   */
+  void validate(Object value) {
+    if (value == null) {
+      if (this.notNull) {
+        throw new IllegalArgumentException(this.fieldName + " cannot be null");
+      }
+      return;
+    }
+
+    if (this.length != UNBOUNDED && value instanceof String string
+        && string.length() != this.length) {
+      throw new IllegalArgumentException(
+          String.format("%s must be exactly %d characters long", this.fieldName, this.length));
+    }
+
+    if (value instanceof Integer number) {
+      if (this.min != null && number < this.min) {
+        throw new IllegalArgumentException(
+            String.format("%s must be at least %d", this.fieldName, this.min));
+      }
+      if (this.max != null && number > this.max) {
+        throw new IllegalArgumentException(
+            String.format("%s must be at most %d", this.fieldName, this.max));
+      }
+    }
+  }
+}
@@ -0,0 +1,125 @@
+package no.leo.studentmanager.service;
+
+/**
+ * Aggregation loops over the grade column of an {@link EnrollmentColumns} snapshot. Each
+ * kernel works on one run of live positions, as handed out by
+ * {@link EnrollmentColumns.Snapshot#forEachRange}, so its loop touches nothing but plain
+ * arrays.
+ * <p>
+ * Every kernel has a scalar version here and a SIMD version in {@link VectorGradeKernels}.
+ * The SIMD versions are used when the JVM was started with
+ * {@code --add-modules jdk.incubator.vector}, unless the system property
+ * {@value #VECTOR_PROPERTY} is set to {@code false}.
+ */
+final class GradeKernels {
+  static final String VECTOR_PROPERTY = "studentmanager.vectorKernels";
+  private static final boolean VECTORIZED =
+      !"false".equalsIgnoreCase(System.getProperty(VECTOR_PROPERTY))
+          && ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+
+  private GradeKernels() {
+  }
+
+  /**
+   * Checks whether the kernels run on the Vector API.
+   *
+   * @return true if the SIMD kernels are in use
+   */
+  static boolean isVectorized() {
+    return VECTORIZED;
+  }
+
+  /**
+   * Summarizes the grades at positions {@code from} to {@code to}.
+   *
+   * @param grades the grade column
+   * @param from   the first position
+   * @param to     the position after the last one
+   * @return the summary of the range
+   */
+  static GradeSummary summarize(int[] grades, int from, int to) {
+    return VECTORIZED ? VectorGradeKernels.summarize(grades, from, to)
+        : summarizeScalar(grades, from, to);
+  }
+
+  /**
+   * Summarizes the grades of one course at positions {@code from} to {@code to}.
+   *
+   * @param grades   the grade column
+   * @param courses  the course column
+   * @param courseId the course to summarize
+   * @param from     the first position
+   * @param to       the position after the last one
+   * @return the summary of the course's grades in the range
+   */
+  static GradeSummary summarizeCourse(int[] grades, int[] courses, int courseId, int from,
+                                      int to) {
+    return VECTORIZED ? VectorGradeKernels.summarizeCourse(grades, courses, courseId, from, to)
+        : summarizeCourseScalar(grades, courses, courseId, from, to);
+  }
+
+  /**
+   * Counts the grades of one course at positions {@code from} to {@code to} per grade:
+   * {@code buckets[g]} is increased by the number of grades equal to {@code g}. Grades
+   * outside the buckets are not counted.
+   *
+   * @param grades   the grade column
+   * @param courses  the course column
+   * @param courseId the course to count
+   * @param from     the first position
+   * @param to       the position after the last one
+   * @param buckets  the counts to add to, one per grade from 0
+   */
+  static void histogramCourse(int[] grades, int[] courses, int courseId, int from, int to,
+                              long[] buckets) {
+    if (VECTORIZED) {
+      VectorGradeKernels.histogramCourse(grades, courses, courseId, from, to, buckets);
+    } else {
+      histogramCourseScalar(grades, courses, courseId, from, to, buckets);
+    }
+  }
+
+  static GradeSummary summarizeScalar(int[] grades, int from, int to) {
+    if (from >= to) {
+      return GradeSummary.EMPTY;
+    }
+    long sum = 0;
+    int min = Integer.MAX_VALUE;
+    int max = Integer.MIN_VALUE;
+    for (int i = from; i < to; i++) {
+      int grade = grades[i];
+      sum += grade;
+      min = Math.min(min, grade);
+      max = Math.max(max, grade);
+    }
+    return new GradeSummary(to - from, sum, min, max);
+  }
+
+  static GradeSummary summarizeCourseScalar(int[] grades, int[] courses, int courseId,
+                                            int from, int to) {
+    long count = 0;
+    long sum = 0;
+    int min = Integer.MAX_VALUE;
+    int max = Integer.MIN_VALUE;
+    for (int i = from; i < to; i++) {
+      if (courses[i] == courseId) {
+        int grade = grades[i];
+        count++;
+        sum += grade;
+        min = Math.min(min, grade);
+        max = Math.max(max, grade);
+      }
+    }
+    return count == 0 ? GradeSummary.EMPTY : new GradeSummary(count, sum, min, max);
+  }
+
+  static void histogramCourseScalar(int[] grades, int[] courses, int courseId, int from,
+                                    int to, long[] buckets) {
+    for (int i = from; i < to; i++) {
+      int grade = grades[i];
+      if (courses[i] == courseId && grade >= 0 && grade < buckets.length) {
+        buckets[grade]++;
+      }
+    }
+  }
+}
@@ -0,0 +1,39 @@
+package no.leo.studentmanager.service;
+
+/**
+ * Summary statistics over a set of grades.
+ *
+ * @param count the number of grades
+ * @param sum   the sum of the grades
+ * @param min   the lowest grade, or 0 if there are none
+ * @param max   the highest grade, or 0 if there are none
+ */
+public record GradeSummary(long count, long sum, int min, int max) {
+  public static final GradeSummary EMPTY = new GradeSummary(0, 0, 0, 0);
+
+  /**
+   * Returns the average grade.
+   *
+   * @return the average, or 0.0 if there are no grades
+   */
+  public double average() {
+    return this.count == 0 ? 0.0 : (double) this.sum / this.count;
+  }
+
+  /**
+   * Combines this summary with one over another set of grades.
+   *
+   * @param other the other summary
+   * @return a summary over both sets
+   */
+  public GradeSummary merge(GradeSummary other) {
+    if (this.count == 0) {
+      return other;
+    }
+    if (other.count == 0) {
+      return this;
+    }
+    return new GradeSummary(this.count + other.count, this.sum + other.sum,
+        Math.min(this.min, other.min), Math.max(this.max, other.max));
+  }
+}
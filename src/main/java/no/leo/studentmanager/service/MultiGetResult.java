@@ -0,0 +1,23 @@
+package no.leo.studentmanager.service;
+
+import java.util.List;
+
+/**
+ * The outcome of a batch lookup through {@link BaseService#getByIds(int[])}: the records
+ * that were found and the IDs that were not.
+ *
+ * @param found      the records found, each at most once
+ * @param missingIds the requested IDs without a record, in the order they were requested
+ * @param <T>        the model type of the service
+ */
+public record MultiGetResult<T>(List<T> found, List<Integer> missingIds) {
+
+  /**
+   * Checks whether every requested ID had a record.
+   *
+   * @return true if no ID was missing
+   */
+  public boolean isComplete() {
+    return this.missingIds.isEmpty();
+  }
+}
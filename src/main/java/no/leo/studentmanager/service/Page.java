@@ -0,0 +1,56 @@
+package no.leo.studentmanager.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * One page of records read by {@link BaseService#scan(String, int)}, in ascending ID order.
+ * <p>
+ * The cursor is opaque to callers: pass it back to {@code scan} to read the page that
+ * follows. It only marks a position, so records added or removed between calls are seen or
+ * skipped according to their ID, and no record is returned twice.
+ *
+ * @param items      the records of this page
+ * @param nextCursor the cursor of the following page, or null if this is the last page
+ * @param <T>        the model type of the service
+ */
+public record Page<T>(List<T> items, String nextCursor) {
+  private static final String PREFIX = "after:";
+
+  /**
+   * Checks whether more records follow this page.
+   *
+   * @return true if {@link #nextCursor()} can be passed to a further scan
+   */
+  public boolean hasNext() {
+    return this.nextCursor != null;
+  }
+
+  static String encodeCursor(int lastId) {
+    return Base64.getUrlEncoder().withoutPadding()
+        .encodeToString((PREFIX + lastId).getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Decodes a cursor into the ID the next page starts from.
+   *
+   * @param cursor a cursor returned by {@link #nextCursor()}, or null for the first page
+   * @return the lowest ID of the next page
+   * @throws IllegalArgumentException if the cursor was not produced by a scan
+   */
+  static long decodeCursor(String cursor) {
+    if (cursor == null || cursor.isEmpty()) {
+      return 0;
+    }
+    try {
+      String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+      if (decoded.startsWith(PREFIX)) {
+        return Integer.parseInt(decoded.substring(PREFIX.length())) + 1L;
+      }
+    } catch (IllegalArgumentException e) {
+      // Malformed Base64 or ID, reported below
+    }
+    throw new IllegalArgumentException("Invalid cursor: " + cursor);
+  }
+}
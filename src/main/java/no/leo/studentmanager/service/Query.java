@@ -0,0 +1,277 @@
+package no.leo.studentmanager.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import no.leo.studentmanager.storage.RoaringBitmap;
+
+/**
+ * A composable query on the records of one service, e.g.
+ * <pre>
+ * enrollmentService.query()
+ *     .where("course_id").eq(courseId)
+ *     .and("grade").between(0, 1)
+ *     .orderBy("grade")
+ *     .limit(10)
+ *     .list();
+ * </pre>
+ * Clauses are combined from left to right: {@code and} binds the new predicate to
+ * everything before it, as does {@code or}, so {@code a.or(b).and(c)} means
+ * {@code (a or b) and c}. Use {@link #where(Condition)} with {@link Condition#or} and
+ * {@link Condition#and} for other groupings.
+ * <p>
+ * Nothing is read until {@link #list()}, {@link #count()} or {@link #ids()} is called; the
+ * condition is then planned against the service's indices (see {@link QueryPlanner}) and
+ * only the matching records are converted to models. A query can be run more than once.
+ * {@link #explain()} shows the plan, and queries slower than the configured threshold are
+ * logged with their plan (see
+ * {@link no.leo.studentmanager.storage.StorageOptions#setSlowQueryThreshold}).
+ *
+ * @param <T> the model type of the service
+ */
+public class Query<T> {
+  private final BaseService<T> service;
+  private Condition condition;
+  private String orderBy;
+  private boolean descending;
+  private int limit = Integer.MAX_VALUE;
+
+  Query(BaseService<T> service) {
+    this.service = service;
+  }
+
+  /**
+   * Starts a predicate on a field, combined with the query so far by a logical and.
+   *
+   * @param field the field name
+   * @return the clause to complete with a predicate
+   */
+  public Clause where(String field) {
+    return new Clause(field, true);
+  }
+
+  /**
+   * Adds a condition, combined with the query so far by a logical and.
+   *
+   * @param condition the condition
+   * @return this query
+   */
+  public Query<T> where(Condition condition) {
+    this.condition = combine(this.condition, condition, true);
+    return this;
+  }
+
+  /**
+   * Starts a predicate on a field, combined with the query so far by a logical and.
+   *
+   * @param field the field name
+   * @return the clause to complete with a predicate
+   */
+  public Clause and(String field) {
+    return new Clause(field, true);
+  }
+
+  /**
+   * Starts a predicate on a field, combined with the query so far by a logical or.
+   *
+   * @param field the field name
+   * @return the clause to complete with a predicate
+   */
+  public Clause or(String field) {
+    return new Clause(field, false);
+  }
+
+  /**
+   * Orders the results by a field, lowest value first. Records without a value sort last.
+   *
+   * @param field the field name
+   * @return this query
+   */
+  public Query<T> orderBy(String field) {
+    this.orderBy = field;
+    this.descending = false;
+    return this;
+  }
+
+  /**
+   * Orders the results by a field, highest value first. Records without a value sort last.
+   *
+   * @param field the field name
+   * @return this query
+   */
+  public Query<T> orderByDescending(String field) {
+    this.orderBy = field;
+    this.descending = true;
+    return this;
+  }
+
+  /**
+   * Limits the number of results.
+   *
+   * @param limit the maximum number of records to return
+   * @return this query
+   */
+  public Query<T> limit(int limit) {
+    if (limit < 0) {
+      throw new IllegalArgumentException("limit must not be negative");
+    }
+    this.limit = limit;
+    return this;
+  }
+
+  public Condition getCondition() {
+    return condition;
+  }
+
+  /**
+   * Runs the query. Without {@link #orderBy(String)}, records come in no particular order.
+   *
+   * @return the matching records
+   * @throws IllegalArgumentException if the query names an unknown field or a range bound
+   *                                  does not match the type of its field
+   */
+  public List<T> list() {
+    long start = System.nanoTime();
+    QueryPlanner planner = new QueryPlanner(this.service);
+    List<Object[]> rows;
+    this.service.readLock.lock();
+    try {
+      rows = planner.select(this.condition, this.orderBy, this.descending, this.limit);
+    } finally {
+      this.service.readLock.unlock();
+    }
+    List<T> results = new ArrayList<>(rows.size());
+    for (Object[] row : rows) {
+      results.add(this.service.toModel(row));
+    }
+    this.service.logIfSlow(start, planner::getPlan);
+    return results;
+  }
+
+  /**
+   * Runs the query as {@link #list()} would, without converting the results to models, and
+   * describes how it was answered.
+   *
+   * @return the plan, with the estimated and actual rows of every step
+   * @throws IllegalArgumentException if the query names an unknown field or a range bound
+   *                                  does not match the type of its field
+   */
+  public QueryPlan explain() {
+    QueryPlanner planner = new QueryPlanner(this.service);
+    this.service.readLock.lock();
+    try {
+      planner.select(this.condition, this.orderBy, this.descending, this.limit);
+    } finally {
+      this.service.readLock.unlock();
+    }
+    return planner.getPlan();
+  }
+
+  /**
+   * Counts the matching records without converting any of them to models. The limit is
+   * ignored.
+   *
+   * @return the number of matching records
+   */
+  public int count() {
+    return this.ids().cardinality();
+  }
+
+  /**
+   * Returns the IDs of the matching records, to combine with other ID sets. The limit and
+   * order are ignored.
+   *
+   * @return a new bitmap of matching IDs
+   */
+  public RoaringBitmap ids() {
+    long start = System.nanoTime();
+    QueryPlanner planner = new QueryPlanner(this.service);
+    RoaringBitmap ids;
+    this.service.readLock.lock();
+    try {
+      ids = planner.execute(this.condition);
+    } finally {
+      this.service.readLock.unlock();
+    }
+    this.service.logIfSlow(start, planner::getPlan);
+    return ids;
+  }
+
+  private static Condition combine(Condition left, Condition right, boolean and) {
+    if (left == null) {
+      return right;
+    }
+    List<Condition> conditions = new ArrayList<>();
+    for (Condition condition : Arrays.asList(left, right)) {
+      if (and && condition instanceof Condition.And(List<Condition> children)) {
+        conditions.addAll(children);
+      } else if (!and && condition instanceof Condition.Or(List<Condition> children)) {
+        conditions.addAll(children);
+      } else {
+        conditions.add(condition);
+      }
+    }
+    return and ? new Condition.And(List.copyOf(conditions))
+        : new Condition.Or(List.copyOf(conditions));
+  }
+
+  /**
+   * A predicate on one field, waiting for its operator.
+   */
+  public final class Clause {
+    private final String field;
+    private final boolean and;
+
+    private Clause(String field, boolean and) {
+      this.field = field;
+      this.and = and;
+    }
+
+    /**
+     * Matches records whose field equals a value.
+     *
+     * @param value the value
+     * @return the query
+     */
+    public Query<T> eq(Object value) {
+      return this.add(Condition.eq(this.field, value));
+    }
+
+    /**
+     * Matches records whose field equals any of the given values.
+     *
+     * @param values the values
+     * @return the query
+     */
+    public Query<T> in(Collection<?> values) {
+      return this.add(Condition.in(this.field, values));
+    }
+
+    /**
+     * Matches records whose field equals any of the given values.
+     *
+     * @param values the values
+     * @return the query
+     */
+    public Query<T> in(Object... values) {
+      return this.add(Condition.in(this.field, Arrays.asList(values)));
+    }
+
+    /**
+     * Matches records whose field lies within a range, bounds included.
+     *
+     * @param from the lowest value to include, or null for no lower bound
+     * @param to   the highest value to include, or null for no upper bound
+     * @return the query
+     */
+    public Query<T> between(Object from, Object to) {
+      return this.add(Condition.between(this.field, from, to));
+    }
+
+    private Query<T> add(Condition condition) {
+      Query.this.condition = combine(Query.this.condition, condition, this.and);
+      return Query.this;
+    }
+  }
+}
@@ -0,0 +1,135 @@
+package no.leo.studentmanager.service;
+
+import java.util.List;
+
+/**
+ * Describes how a query was answered: a tree of steps, each with the access path it used,
+ * the number of rows the planner expected from it and the number it actually produced.
+ * Returned by {@link Query#explain()} and {@link BaseService#explain(String, Object)}, and
+ * written to the slow-query log.
+ * <p>
+ * Estimates for lookups are exact index entry sizes; the estimates of full scans and filters
+ * are upper bounds.
+ */
+public class QueryPlan {
+  /**
+   * The kinds of steps a plan can consist of.
+   */
+  public enum Operation {
+    /** Looks up records by primary key, without an index. */
+    PRIMARY_KEY_LOOKUP("Primary key lookup"),
+    /** Reads the IDs of one or more keys from an index. */
+    INDEX_LOOKUP("Index lookup"),
+    /** Reads the IDs of a key range from an ordered or bitmap index. */
+    INDEX_RANGE("Index range"),
+    /** Keeps the IDs found by every input. */
+    INTERSECT("Intersect"),
+    /** Keeps the IDs found by any input. */
+    UNION("Union"),
+    /** Checks the rows found by its input against the remaining predicates. */
+    FILTER("Filter"),
+    /** Checks every row of the table. */
+    FULL_SCAN("Full scan"),
+    /** Walks an ordered index in order until enough rows match. */
+    ORDERED_INDEX_WALK("Ordered index walk"),
+    /** Sorts the rows found by its input. */
+    SORT("Sort"),
+    /** Keeps the first rows found by its input. */
+    LIMIT("Limit");
+
+    private final String label;
+
+    Operation(String label) {
+      this.label = label;
+    }
+
+    @Override
+    public String toString() {
+      return label;
+    }
+  }
+
+  private final Operation operation;
+  private final String detail;
+  private final long estimatedRows;
+  private final long actualRows;
+  private final List<QueryPlan> inputs;
+
+  QueryPlan(Operation operation, String detail, long estimatedRows, long actualRows,
+            List<QueryPlan> inputs) {
+    this.operation = operation;
+    this.detail = detail;
+    this.estimatedRows = estimatedRows;
+    this.actualRows = actualRows;
+    this.inputs = inputs;
+  }
+
+  public Operation getOperation() {
+    return operation;
+  }
+
+  /**
+   * Returns what the step works on, e.g. the index and predicate of a lookup.
+   *
+   * @return the detail, possibly empty
+   */
+  public String getDetail() {
+    return detail;
+  }
+
+  public long getEstimatedRows() {
+    return estimatedRows;
+  }
+
+  /**
+   * Returns the number of rows the step produced.
+   *
+   * @return the row count, or -1 if the step was skipped, e.g. because an earlier input of
+   * an intersection was already empty
+   */
+  public long getActualRows() {
+    return actualRows;
+  }
+
+  public List<QueryPlan> getInputs() {
+    return inputs;
+  }
+
+  /**
+   * Checks whether this step or any of its inputs scans the whole table.
+   *
+   * @return true if the plan contains a full scan
+   */
+  public boolean hasFullScan() {
+    return this.operation == Operation.FULL_SCAN
+        || this.inputs.stream().anyMatch(QueryPlan::hasFullScan);
+  }
+
+  /**
+   * Formats the plan as an indented tree, one step per line.
+   *
+   * @return the formatted plan
+   */
+  @Override
+  public String toString() {
+    StringBuilder out = new StringBuilder();
+    this.format(out, 0);
+    return out.toString();
+  }
+
+  private void format(StringBuilder out, int depth) {
+    if (depth > 0) {
+      out.append('\n').append("  ".repeat(depth - 1)).append("-> ");
+    }
+    out.append(this.operation);
+    if (!this.detail.isEmpty()) {
+      out.append(' ').append(this.detail);
+    }
+    out.append(" (estimated rows=").append(this.estimatedRows)
+        .append(", actual rows=").append(this.actualRows < 0 ? "-" : this.actualRows)
+        .append(')');
+    for (QueryPlan input : this.inputs) {
+      input.format(out, depth + 1);
+    }
+  }
+}
@@ -0,0 +1,569 @@
+package no.leo.studentmanager.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.PrimitiveIterator;
+import java.util.function.Predicate;
+import no.leo.studentmanager.service.QueryPlan.Operation;
+import no.leo.studentmanager.storage.RecordLayout;
+import no.leo.studentmanager.storage.RecordStore;
+import no.leo.studentmanager.storage.RoaringBitmap;
+
+/**
+ * Turns a {@link Condition} into a plan of index lookups for one service.
+ * <p>
+ * Every predicate on an indexed field, or on the primary key, becomes a lookup whose number
+ * of matching IDs is known exactly from the index before any ID is collected. For an and,
+ * the lookup with the fewest IDs drives the query and only lookups of similar size are
+ * intersected with it; the remaining predicates are checked against the few candidate
+ * rows instead, which is cheaper than collecting a large ID set. An or can only use indices
+ * if every branch can. Whatever cannot be answered from indices is answered by scanning all
+ * rows once, without converting them to models.
+ * <p>
+ * A planner is used for a single execution: afterwards, {@link #getPlan()} describes what
+ * was done, with the estimated and actual number of rows of every step.
+ */
+final class QueryPlanner {
+  /**
+   * How many times larger than the most selective lookup another lookup may be and still be
+   * intersected with it rather than checked row by row.
+   */
+  private static final long INTERSECT_FACTOR = 4;
+
+  private final BaseService<?> service;
+  private final TableSchema schema;
+  private final RecordLayout layout;
+  private final RecordStore records;
+  private QueryPlan plan;
+
+  QueryPlanner(BaseService<?> service) {
+    this.service = service;
+    this.schema = service.schema;
+    this.layout = service.records.getLayout();
+    this.records = service.records;
+  }
+
+  /**
+   * Describes the last execution of this planner.
+   *
+   * @return the plan, or null if nothing has been executed
+   */
+  QueryPlan getPlan() {
+    return this.plan;
+  }
+
+  /**
+   * Returns the IDs of the records matching a condition.
+   *
+   * @param condition the condition, or null to match every record
+   * @return a new bitmap of matching IDs
+   */
+  RoaringBitmap execute(Condition condition) {
+    Node root = this.root(condition);
+    RoaringBitmap ids = root.run();
+    this.plan = root.toPlan();
+    return ids;
+  }
+
+  /**
+   * Returns the rows matching a condition, optionally ordered by a field.
+   * <p>
+   * If the condition can only be answered by a scan and the order field has an ordered
+   * index, the index is walked in order instead and the walk stops as soon as the limit is
+   * reached. Otherwise the matching rows are collected and sorted.
+   *
+   * @param condition  the condition, or null to match every record
+   * @param orderBy    the field to order by, or null for no particular order
+   * @param descending whether to order from the highest value to the lowest
+   * @param limit      the maximum number of rows to return
+   * @return the matching rows
+   */
+  List<Object[]> select(Condition condition, String orderBy, boolean descending, int limit) {
+    Node root = this.root(condition);
+    int orderColumn = orderBy != null ? this.column(orderBy) : -1;
+
+    List<Object[]> rows = new ArrayList<>();
+    if (orderColumn >= 0 && root instanceof FullScan scan
+        && this.schema.isOrdered(orderColumn)) {
+      this.walk(orderColumn, descending, scan.test, limit, rows);
+      this.plan = new QueryPlan(Operation.ORDERED_INDEX_WALK,
+          this.schema.getIndexName(orderColumn) + (descending ? " descending" : "")
+              + (condition != null ? " where " + condition : ""),
+          Math.min(limit, root.estimate), rows.size(), List.of());
+      return rows;
+    }
+
+    int collect = orderColumn >= 0 ? Integer.MAX_VALUE : limit;
+    if (root instanceof FullScan scan) {
+      // Rows are taken straight from the store, so an unordered scan can stop at the limit
+      scan.collect(rows, collect);
+    } else {
+      for (PrimitiveIterator.OfInt ids = root.run().iterator();
+           ids.hasNext() && rows.size() < collect; ) {
+        Object[] row = this.records.get(ids.nextInt());
+        if (row != null) {
+          rows.add(row);
+        }
+      }
+    }
+    QueryPlan input = root.toPlan();
+    if (orderColumn >= 0) {
+      rows.sort(this.ordering(orderColumn, descending));
+      if (rows.size() > limit) {
+        rows = new ArrayList<>(rows.subList(0, limit));
+      }
+      input = new QueryPlan(Operation.SORT, orderBy + (descending ? " descending" : ""),
+          Math.min(limit, root.estimate), rows.size(), List.of(input));
+    }
+    if (limit != Integer.MAX_VALUE && orderColumn < 0) {
+      input = new QueryPlan(Operation.LIMIT, String.valueOf(limit),
+          Math.min(limit, root.estimate), rows.size(), List.of(input));
+    }
+    this.plan = input;
+    return rows;
+  }
+
+  /**
+   * Plans a condition, falling back to a full scan.
+   */
+  private Node root(Condition condition) {
+    if (condition == null) {
+      return new FullScan(null);
+    }
+    Node node = this.plan(condition);
+    return node != null ? node : new FullScan(condition);
+  }
+
+  /**
+   * Plans a condition.
+   *
+   * @param condition the condition
+   * @return the plan, or null if answering the condition requires a full scan
+   * @throws IllegalArgumentException if the condition names an unknown field or a range
+   *                                  bound does not match the type of its field
+   */
+  private Node plan(Condition condition) {
+    return switch (condition) {
+      case Condition.And and -> this.planAnd(and);
+      case Condition.Or or -> this.planOr(or);
+      default -> this.planLookup(condition);
+    };
+  }
+
+  private Node planAnd(Condition.And and) {
+    List<Node> lookups = new ArrayList<>();
+    List<Condition> residual = new ArrayList<>();
+    for (Condition child : and.conditions()) {
+      Node node = this.plan(child);
+      if (node != null) {
+        lookups.add(node);
+      } else {
+        residual.add(child);
+      }
+    }
+    if (lookups.isEmpty()) {
+      return null;
+    }
+
+    lookups.sort(Comparator.comparingLong(node -> node.estimate));
+    long smallest = lookups.getFirst().estimate;
+    List<Node> intersected = new ArrayList<>();
+    for (Node lookup : lookups) {
+      if (intersected.isEmpty() || lookup.estimate <= smallest * INTERSECT_FACTOR) {
+        intersected.add(lookup);
+      } else {
+        residual.add(lookup.condition);
+      }
+    }
+
+    Node node = intersected.size() == 1 ? intersected.getFirst() : new Intersect(and, intersected);
+    return residual.isEmpty() ? node : new Filter(node, residual);
+  }
+
+  private Node planOr(Condition.Or or) {
+    List<Node> branches = new ArrayList<>();
+    for (Condition child : or.conditions()) {
+      Node node = this.plan(child);
+      if (node == null) {
+        return null;
+      }
+      branches.add(node);
+    }
+    return new Union(or, branches);
+  }
+
+  private Node planLookup(Condition condition) {
+    String field = switch (condition) {
+      case Condition.Eq eq -> eq.field();
+      case Condition.In in -> in.field();
+      case Condition.Between between -> between.field();
+      default -> throw new IllegalStateException("Unexpected condition " + condition);
+    };
+    int column = this.column(field);
+    boolean pk = column == this.layout.getPkColumn();
+    String indexName = this.schema.getIndexName(column);
+
+    if (condition instanceof Condition.Between between) {
+      this.checkBounds(column, between);
+      if (indexName == null || !this.schema.isOrdered(column)) {
+        return null;
+      }
+      long estimate = 0;
+      for (Object entry : this.service.rangeOf(field, between.from(), between.to()).values()) {
+        estimate += entrySize(entry);
+        if (estimate >= this.records.size()) {
+          break;
+        }
+      }
+      return new Lookup(condition, column, Math.min(estimate, this.records.size()));
+    }
+
+    List<Object> values = condition instanceof Condition.Eq eq
+        ? Collections.singletonList(eq.value())
+        : ((Condition.In) condition).values();
+    if (!pk && indexName == null) {
+      return null;
+    }
+    long estimate = 0;
+    for (Object value : values) {
+      Object key = this.schema.toKey(column, value);
+      if (pk) {
+        estimate += key instanceof Integer id && this.records.contains(id) ? 1 : 0;
+      } else if (this.schema.isOrdered(column) && !this.schema.hasKeyType(column, key)) {
+        return null;
+      } else {
+        estimate += entrySize(this.service.getIndicesMap().get(indexName).get(key));
+      }
+    }
+    return new Lookup(condition, column, estimate);
+  }
+
+  private void checkBounds(int column, Condition.Between between) {
+    if ((between.from() != null
+        && !this.schema.hasKeyType(column, this.schema.toKey(column, between.from())))
+        || (between.to() != null
+        && !this.schema.hasKeyType(column, this.schema.toKey(column, between.to())))) {
+      throw new IllegalArgumentException(
+          "Range bounds do not match the type of " + between.field());
+    }
+  }
+
+  private int column(String field) {
+    int column = this.layout.indexOf(field);
+    if (column < 0) {
+      throw new IllegalArgumentException("Unknown field " + field);
+    }
+    return column;
+  }
+
+  /**
+   * Returns the number of IDs held by one entry of an index.
+   *
+   * @param entry the entry, or null
+   * @return the number of IDs
+   */
+  static long entrySize(Object entry) {
+    if (entry instanceof RoaringBitmap bitmap) {
+      return bitmap.cardinality();
+    }
+    return entry != null ? 1 : 0;
+  }
+
+  /**
+   * Compiles a condition into a test on stored rows. Values are converted to key types once
+   * here rather than once per row.
+   *
+   * @param condition the condition
+   * @return a predicate on rows
+   */
+  @SuppressWarnings("unchecked")
+  private Predicate<Object[]> compile(Condition condition) {
+    switch (condition) {
+      case Condition.Eq(String field, Object value) -> {
+        int column = this.column(field);
+        Object key = this.schema.toKey(column, value);
+        return row -> Objects.equals(this.schema.toKey(column, row[column]), key);
+      }
+      case Condition.In(String field, List<Object> values) -> {
+        int column = this.column(field);
+        List<Object> keys = values.stream().map(value -> this.schema.toKey(column, value)).toList();
+        return row -> keys.contains(this.schema.toKey(column, row[column]));
+      }
+      case Condition.Between between -> {
+        int column = this.column(between.field());
+        this.checkBounds(column, between);
+        Comparable<Object> from = (Comparable<Object>) this.schema.toKey(column, between.from());
+        Comparable<Object> to = (Comparable<Object>) this.schema.toKey(column, between.to());
+        return row -> {
+          Object key = this.schema.toKey(column, row[column]);
+          return this.schema.hasKeyType(column, key)
+              && (from == null || from.compareTo(key) <= 0)
+              && (to == null || to.compareTo(key) >= 0);
+        };
+      }
+      case Condition.And(List<Condition> conditions) -> {
+        List<Predicate<Object[]>> tests = conditions.stream().map(this::compile).toList();
+        return row -> tests.stream().allMatch(test -> test.test(row));
+      }
+      case Condition.Or(List<Condition> conditions) -> {
+        List<Predicate<Object[]>> tests = conditions.stream().map(this::compile).toList();
+        return row -> tests.stream().anyMatch(test -> test.test(row));
+      }
+    }
+  }
+
+  /**
+   * Compares rows by the key of a field; rows without a key of the field's type sort last
+   * in either direction.
+   */
+  @SuppressWarnings("unchecked")
+  private Comparator<Object[]> ordering(int column, boolean descending) {
+    Comparator<Object> keys = (Comparator<Object>) (Comparator<?>) Comparator.naturalOrder();
+    return Comparator.comparing(row -> {
+      Object key = this.schema.toKey(column, row[column]);
+      return this.schema.hasKeyType(column, key) ? key : null;
+    }, Comparator.nullsLast(descending ? keys.reversed() : keys));
+  }
+
+  private void walk(int column, boolean descending, Predicate<Object[]> test, int limit,
+                    List<Object[]> rows) {
+    NavigableMap<Object, Object> index =
+        this.service.rangeOf(this.layout.getColumn(column), null, null);
+    for (Object entry : (descending ? index.descendingMap() : index).values()) {
+      for (PrimitiveIterator.OfInt ids = BaseService.idIterator(entry); ids.hasNext(); ) {
+        if (rows.size() >= limit) {
+          return;
+        }
+        Object[] row = this.records.get(ids.nextInt());
+        if (row != null && test.test(row)) {
+          rows.add(row);
+        }
+      }
+    }
+    // Rows without a key of the field's type are not in the index and sort last
+    for (int i = 0; i < this.records.size() && rows.size() < limit; i++) {
+      Object[] row = this.records.rowAt(i);
+      Object key = this.schema.toKey(column, row[column]);
+      if (!this.schema.hasKeyType(column, key) && test.test(row)) {
+        rows.add(row);
+      }
+    }
+  }
+
+  /**
+   * A step of a plan, with the number of IDs it is expected to produce and, once run, the
+   * number it did produce.
+   */
+  private abstract static class Node {
+    final Condition condition;
+    final long estimate;
+    long actual = -1;
+
+    Node(Condition condition, long estimate) {
+      this.condition = condition;
+      this.estimate = estimate;
+    }
+
+    final RoaringBitmap run() {
+      RoaringBitmap ids = this.ids();
+      this.actual = ids.cardinality();
+      return ids;
+    }
+
+    abstract RoaringBitmap ids();
+
+    abstract QueryPlan toPlan();
+  }
+
+  /**
+   * Reads the IDs for a predicate on a single field from its index.
+   */
+  private final class Lookup extends Node {
+    private final int column;
+
+    Lookup(Condition condition, int column, long estimate) {
+      super(condition, estimate);
+      this.column = column;
+    }
+
+    @Override
+    RoaringBitmap ids() {
+      BaseService<?> service = QueryPlanner.this.service;
+      return switch (this.condition) {
+        case Condition.Between(String field, Object from, Object to) ->
+            service.getIdsInRange(field, from, to);
+        case Condition.Eq(String field, Object value) ->
+            this.idsOf(field, Collections.singletonList(value));
+        case Condition.In(String field, List<Object> values) -> this.idsOf(field, values);
+        default -> throw new IllegalStateException("Unexpected condition " + this.condition);
+      };
+    }
+
+    private boolean isPk() {
+      return this.column == QueryPlanner.this.layout.getPkColumn();
+    }
+
+    private RoaringBitmap idsOf(String field, List<?> values) {
+      RoaringBitmap ids = new RoaringBitmap();
+      for (Object value : values) {
+        if (this.isPk()) {
+          if (QueryPlanner.this.schema.toKey(this.column, value) instanceof Integer id
+              && QueryPlanner.this.records.contains(id)) {
+            ids.add(id);
+          }
+        } else {
+          RoaringBitmap found = QueryPlanner.this.service.getIds(field, value);
+          ids = ids.isEmpty() ? found : ids.or(found);
+        }
+      }
+      return ids;
+    }
+
+    @Override
+    QueryPlan toPlan() {
+      Operation operation = this.isPk() ? Operation.PRIMARY_KEY_LOOKUP
+          : this.condition instanceof Condition.Between ? Operation.INDEX_RANGE
+          : Operation.INDEX_LOOKUP;
+      String index = this.isPk() ? "" : QueryPlanner.this.schema.getIndexName(this.column) + " ";
+      return new QueryPlan(operation, index + this.condition, this.estimate, this.actual,
+          List.of());
+    }
+  }
+
+  /**
+   * Intersects the IDs of several lookups, smallest first.
+   */
+  private static final class Intersect extends Node {
+    private final List<Node> inputs;
+
+    Intersect(Condition condition, List<Node> inputs) {
+      super(condition, inputs.getFirst().estimate);
+      this.inputs = inputs;
+    }
+
+    @Override
+    RoaringBitmap ids() {
+      RoaringBitmap ids = this.inputs.getFirst().run();
+      for (int i = 1; i < this.inputs.size() && !ids.isEmpty(); i++) {
+        ids = ids.and(this.inputs.get(i).run());
+      }
+      return ids;
+    }
+
+    @Override
+    QueryPlan toPlan() {
+      return new QueryPlan(Operation.INTERSECT, "", this.estimate, this.actual,
+          this.inputs.stream().map(Node::toPlan).toList());
+    }
+  }
+
+  /**
+   * Unites the IDs of several lookups.
+   */
+  private final class Union extends Node {
+    private final List<Node> inputs;
+
+    Union(Condition condition, List<Node> inputs) {
+      super(condition, Math.min(QueryPlanner.this.records.size(),
+          inputs.stream().mapToLong(node -> node.estimate).sum()));
+      this.inputs = inputs;
+    }
+
+    @Override
+    RoaringBitmap ids() {
+      RoaringBitmap ids = new RoaringBitmap();
+      for (Node input : this.inputs) {
+        ids = ids.or(input.run());
+      }
+      return ids;
+    }
+
+    @Override
+    QueryPlan toPlan() {
+      return new QueryPlan(Operation.UNION, "", this.estimate, this.actual,
+          this.inputs.stream().map(Node::toPlan).toList());
+    }
+  }
+
+  /**
+   * Checks the rows of the IDs found by a lookup against the predicates that were not
+   * answered from indices.
+   */
+  private final class Filter extends Node {
+    private final Node input;
+    private final Condition residual;
+    private final Predicate<Object[]> test;
+
+    Filter(Node input, List<Condition> residual) {
+      super(residual.size() == 1 ? residual.getFirst() : new Condition.And(residual),
+          input.estimate);
+      this.input = input;
+      this.residual = this.condition;
+      this.test = QueryPlanner.this.compile(this.residual);
+    }
+
+    @Override
+    RoaringBitmap ids() {
+      RoaringBitmap ids = new RoaringBitmap();
+      RecordStore records = QueryPlanner.this.records;
+      this.input.run().forEach(id -> {
+        Object[] row = records.get(id);
+        if (row != null && this.test.test(row)) {
+          ids.add(id);
+        }
+      });
+      return ids;
+    }
+
+    @Override
+    QueryPlan toPlan() {
+      return new QueryPlan(Operation.FILTER, this.residual.toString(), this.estimate,
+          this.actual, List.of(this.input.toPlan()));
+    }
+  }
+
+  /**
+   * Tests every row of the table.
+   */
+  private final class FullScan extends Node {
+    private final Predicate<Object[]> test;
+
+    FullScan(Condition condition) {
+      super(condition, QueryPlanner.this.records.size());
+      this.test = condition != null ? QueryPlanner.this.compile(condition) : row -> true;
+    }
+
+    @Override
+    RoaringBitmap ids() {
+      RoaringBitmap ids = new RoaringBitmap();
+      RecordStore records = QueryPlanner.this.records;
+      for (int i = 0; i < records.size(); i++) {
+        if (this.test.test(records.rowAt(i))) {
+          ids.add(records.idAt(i));
+        }
+      }
+      return ids;
+    }
+
+    void collect(List<Object[]> rows, int limit) {
+      RecordStore records = QueryPlanner.this.records;
+      for (int i = 0; i < records.size() && rows.size() < limit; i++) {
+        if (this.test.test(records.rowAt(i))) {
+          rows.add(records.rowAt(i));
+        }
+      }
+      this.actual = rows.size();
+    }
+
+    @Override
+    QueryPlan toPlan() {
+      return new QueryPlan(Operation.FULL_SCAN, QueryPlanner.this.schema.getName()
+          + (this.condition != null ? " where " + this.condition : ""), this.estimate,
+          this.actual, List.of());
+    }
+  }
+}
@@ -0,0 +1,84 @@
+package no.leo.studentmanager.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Holds the compiled schema of every table in {@code table_definitions.json}.
+ * <p>
+ * The process-wide registry returned by {@link #getDefault()} reads and compiles the file
+ * the first time it is needed; every service and every validation after that uses the
+ * compiled {@link TableSchema} objects.
+ */
+public final class SchemaRegistry {
+  private static final Path DEFAULT_PATH = Paths.get("table_definitions.json");
+  private static volatile SchemaRegistry defaultRegistry;
+
+  private final Map<String, TableSchema> tables = new HashMap<>();
+
+  private SchemaRegistry(Map<String, Object> root) {
+    @SuppressWarnings("unchecked")
+    List<Map<String, Object>> definitions = (List<Map<String, Object>>) root.get("tables");
+    for (Map<String, Object> definition : definitions) {
+      TableSchema schema = new TableSchema(definition);
+      this.tables.put(schema.getName(), schema);
+    }
+  }
+
+  /**
+   * Returns the registry for {@code table_definitions.json} in the working directory,
+   * loading it on first use.
+   *
+   * @return the shared registry
+   * @throws RuntimeException if the table definitions cannot be read
+   */
+  public static SchemaRegistry getDefault() {
+    SchemaRegistry registry = defaultRegistry;
+    if (registry == null) {
+      synchronized (SchemaRegistry.class) {
+        registry = defaultRegistry;
+        if (registry == null) {
+          registry = load(DEFAULT_PATH);
+          defaultRegistry = registry;
+        }
+      }
+    }
+    return registry;
+  }
+
+  /**
+   * Reads and compiles a table definitions file.
+   *
+   * @param path the path of the table definitions file
+   * @return a new registry
+   * @throws RuntimeException if the file cannot be read
+   */
+  @SuppressWarnings("unchecked")
+  public static SchemaRegistry load(Path path) {
+    try {
+      return new SchemaRegistry(new ObjectMapper().readValue(path.toFile(), Map.class));
+    } catch (IOException e) {
+      throw new RuntimeException("Could not load table definitions", e);
+    }
+  }
+
+  /**
+   * Returns the schema of a table.
+   *
+   * @param tableName the table name
+   * @return the compiled schema
+   * @throws RuntimeException if the table is not defined
+   */
+  public TableSchema getTable(String tableName) {
+    TableSchema schema = this.tables.get(tableName);
+    if (schema == null) {
+      throw new RuntimeException("Table definition not found: " + tableName);
+    }
+    return schema;
+  }
+}
@@ -1,11 +1,13 @@
 package no.leo.studentmanager.service;
 
-import java.util.Collections;
+import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import no.leo.studentmanager.exception.DatabaseException;
 import no.leo.studentmanager.model.Course;
 import no.leo.studentmanager.model.CourseEnrollment;
@@ -21,11 +23,21 @@ import no.leo.studentmanager.model.Student;
  * determining course enrollment counts, identifying the course with the most students,
  * and listing students enrolled in a specified course. Results are often wrapped
  * in Optional objects to handle scenarios where data is unavailable or invalid.
+ * <p>
+ * Reports may be computed on several threads at once. {@link #setParallelism(int)} and
+ * {@link #close()} may be called meanwhile; they wait for the running reports to finish
+ * before the old pool is shut down.
  */
-public class StudentAnalytics {
+public class StudentAnalytics implements AutoCloseable {
+  /** The highest grade an enrollment can have; grades run from 0 to this. */
+  public static final int MAX_GRADE = 5;
+
   private final StudentService studentService;
   private final CourseService courseService;
   private final CourseEnrollmentService enrollmentService;
+  // Reports hold the read lock while they run on the pool, so it is never shut down under them
+  private final ReentrantReadWriteLock poolLock = new ReentrantReadWriteLock();
+  private volatile ForkJoinPool pool = ForkJoinPool.commonPool();
 
   /**
    * Default constructor for the StudentAnalytics class.
@@ -114,16 +126,8 @@ public class StudentAnalytics {
         throw new IllegalArgumentException("studentNameOrId must be either String or Integer");
       }
 
-      List<CourseEnrollment> enrollments = this.enrollmentService.getByStudent(student.getId());
-
-      if (enrollments == null || enrollments.isEmpty()) {
-        return Optional.of(Map.entry(student, 0.0));
-      }
-
-      double average = enrollments.stream()
-          .mapToInt(CourseEnrollment::getGrade)
-          .average()
-          .orElse(0.0);
+      // Kept up to date by the enrollment service, so no enrollment is read here
+      double average = this.enrollmentService.getAverageGrade(student.getId());
 
       // Round to 2 decimal places to match Python implementation
       average = Math.round(average * 100.0) / 100.0;
@@ -170,8 +174,8 @@ public class StudentAnalytics {
         return Optional.empty();
       }
 
-      List<CourseEnrollment> enrollments = this.enrollmentService.getByCourse(course.getId());
-      return Optional.of(Map.entry(course, enrollments != null ? enrollments.size() : 0));
+      int enrollmentCount = this.enrollmentService.countByCourse(course.getId());
+      return Optional.of(Map.entry(course, enrollmentCount));
 
     } catch (DatabaseException e) {
       return Optional.empty();
@@ -180,8 +184,7 @@ public class StudentAnalytics {
 
   /**
    * Retrieves the course with the most students enrolled along with the count of enrollments.
-   * This method accesses all available courses, evaluates their enrollment counts,
-   * and identifies the course with the highest number of students.
+   * If several courses share the highest count, the one with the lowest ID is returned.
    *
    * @return an Optional containing a Map.Entry where the key is the Course with the most students
    * and the value is the count of students. If no courses are available or all courses
@@ -189,37 +192,231 @@ public class StudentAnalytics {
    * @throws DatabaseException if an error occurs while accessing the database or fetching data.
    */
   public Optional<Map.Entry<Course, Integer>> getCourseWithMostStudents() throws DatabaseException {
-    try {
-      List<Course> courses = this.courseService.getAll();
-      if (courses == null || courses.isEmpty()) {
-        return Optional.empty();
-      }
+    return this.getTopCoursesByEnrollment(1).stream().findFirst();
+  }
 
-      Course mostStudents = null;
-      int mostStudentsCount = 0;
+  /**
+   * Retrieves the k courses with the most students enrolled, along with their enrollment
+   * counts. The ranking is computed from enrollment totals the enrollment service maintains,
+   * so no enrollment is read, and only the ranked courses are fetched. Courses with the same
+   * count are ordered by ID, lowest first; courses without enrollments are left out. Deleted
+   * courses whose enrollments remain are skipped, and the ranking is widened until k
+   * existing courses are found or every course has been ranked.
+   *
+   * @param k the maximum number of courses to return
+   * @return the courses and their counts, most enrolled first
+   * @throws DatabaseException if an error occurs while fetching the courses
+   * @throws IllegalArgumentException if k is negative
+   */
+  public List<Map.Entry<Course, Integer>> getTopCoursesByEnrollment(int k)
+      throws DatabaseException {
+    if (k < 0) {
+      throw new IllegalArgumentException("k must not be negative");
+    }
+    try {
+      int ranked = k;
+      while (true) {
+        List<Map.Entry<Integer, Integer>> ranking =
+            this.enrollmentService.getTopCoursesByEnrollment(ranked);
+        Map<Integer, Course> courses = new HashMap<>();
+        for (Course course : this.courseService.getByIds(
+            ranking.stream().map(Map.Entry::getKey).toList()).found()) {
+          courses.put(course.getId(), course);
+        }
 
-      for (Course course : courses) {
-        List<CourseEnrollment> enrollments = this.enrollmentService.getByCourse(course.getId());
-        int enrollmentCount = enrollments != null ? enrollments.size() : 0;
-        if (enrollmentCount > mostStudentsCount) {
-          mostStudents = course;
-          mostStudentsCount = enrollmentCount;
+        List<Map.Entry<Course, Integer>> result = new ArrayList<>(k);
+        for (Map.Entry<Integer, Integer> entry : ranking) {
+          Course course = courses.get(entry.getKey());
+          if (course != null && result.size() < k) {
+            result.add(Map.entry(course, entry.getValue()));
+          }
+        }
+        if (result.size() == k || ranking.size() < ranked) {
+          return result;
         }
+        // Some ranked courses were deleted; rank twice as many to make up for them
+        ranked = ranked > Integer.MAX_VALUE / 2 ? Integer.MAX_VALUE : ranked * 2;
       }
+    } catch (Exception e) {
+      throw new DatabaseException("Error finding course with most students: " + e.getMessage());
+    }
+  }
 
-      if (mostStudents == null) {
-        return Optional.empty();
+  /**
+   * Summarizes the grades of every enrollment. The scan runs over the enrollment service's
+   * columnar mirror, so it loops over a primitive grade column without decoding any record.
+   *
+   * @return the count, sum, lowest and highest grade of all enrollments
+   */
+  public GradeSummary getGradeSummary() {
+    EnrollmentColumns.Snapshot columns = this.enrollmentService.columns();
+    GradeSummary[] summary = {GradeSummary.EMPTY};
+    columns.forEachRange((from, to) ->
+        summary[0] = summary[0].merge(GradeKernels.summarize(columns.grades(), from, to)));
+    return summary[0];
+  }
+
+  /**
+   * Summarizes the grades of the enrollments in a course, scanning the columnar mirror of
+   * the enrollments as {@link #getGradeSummary()} does.
+   *
+   * @param courseNameOrId the name (String) or ID (Integer) of the course
+   * @return an Optional containing the course and the summary of its grades, or empty if the
+   * course is not found or the input is null
+   * @throws DatabaseException if several courses have the given name
+   * @throws IllegalArgumentException if courseNameOrId is neither a String nor an Integer
+   */
+  public Optional<Map.Entry<Course, GradeSummary>> getCourseGradeSummary(Object courseNameOrId)
+      throws DatabaseException {
+    Course course = this.findCourse(courseNameOrId);
+    if (course == null) {
+      return Optional.empty();
+    }
+
+    EnrollmentColumns.Snapshot columns = this.enrollmentService.columns();
+    GradeSummary[] summary = {GradeSummary.EMPTY};
+    columns.forEachRange((from, to) -> summary[0] = summary[0].merge(GradeKernels
+        .summarizeCourse(columns.grades(), columns.courses(), course.getId(), from, to)));
+    return Optional.of(Map.entry(course, summary[0]));
+  }
+
+  /**
+   * Counts the grades of the enrollments in a course, per grade from 0 to
+   * {@value #MAX_GRADE}, scanning the columnar mirror of the enrollments as
+   * {@link #getGradeSummary()} does. Grades outside that range are not counted.
+   *
+   * @param courseNameOrId the name (String) or ID (Integer) of the course
+   * @return an Optional containing the course and its histogram, where element {@code g} is
+   * the number of enrollments with grade {@code g}, or empty if the course is not found or
+   * the input is null
+   * @throws DatabaseException if several courses have the given name
+   * @throws IllegalArgumentException if courseNameOrId is neither a String nor an Integer
+   */
+  public Optional<Map.Entry<Course, long[]>> getCourseGradeHistogram(Object courseNameOrId)
+      throws DatabaseException {
+    Course course = this.findCourse(courseNameOrId);
+    if (course == null) {
+      return Optional.empty();
+    }
+
+    EnrollmentColumns.Snapshot columns = this.enrollmentService.columns();
+    long[] buckets = new long[MAX_GRADE + 1];
+    columns.forEachRange((from, to) -> GradeKernels.histogramCourse(
+        columns.grades(), columns.courses(), course.getId(), from, to, buckets));
+    return Optional.of(Map.entry(course, buckets));
+  }
+
+  private Course findCourse(Object courseNameOrId) throws DatabaseException {
+    if (courseNameOrId == null) {
+      return null;
+    }
+    if (courseNameOrId instanceof String) {
+      return this.courseService.getByName((String) courseNameOrId);
+    }
+    if (courseNameOrId instanceof Integer) {
+      return this.courseService.findById((Integer) courseNameOrId);
+    }
+    throw new IllegalArgumentException("courseNameOrId must be either String or Integer");
+  }
+
+  /**
+   * Sets how many threads the bulk analytics run on. By default they share the common
+   * fork-join pool, which has one thread per core; any other count starts a pool of its own,
+   * which is shut down by the next call or by {@link #close()}. The call waits for reports
+   * running on other threads to finish on the old pool.
+   *
+   * @param parallelism the number of threads, at least 1
+   * @throws IllegalArgumentException if parallelism is less than 1
+   */
+  public void setParallelism(int parallelism) {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("parallelism must be at least 1");
+    }
+    this.poolLock.writeLock().lock();
+    try {
+      ForkJoinPool previous = this.pool;
+      this.pool = parallelism == ForkJoinPool.getCommonPoolParallelism()
+          ? ForkJoinPool.commonPool() : new ForkJoinPool(parallelism);
+      if (previous != ForkJoinPool.commonPool()) {
+        previous.shutdown();
       }
+    } finally {
+      this.poolLock.writeLock().unlock();
+    }
+  }
 
-      return Optional.of(Map.entry(mostStudents, mostStudentsCount));
+  public int getParallelism() {
+    return this.pool.getParallelism();
+  }
 
-    } catch (DatabaseException e) {
-      throw e;
-    } catch (Exception e) {
-      throw new DatabaseException("Error finding course with most students: " + e.getMessage());
+  /**
+   * Shuts down the pool started by {@link #setParallelism(int)}, if any. The common pool is
+   * left running. Waits for running reports to finish; the bulk analytics must not be used
+   * after this.
+   */
+  @Override
+  public void close() {
+    this.poolLock.writeLock().lock();
+    try {
+      if (this.pool != ForkJoinPool.commonPool()) {
+        this.pool.shutdown();
+      }
+    } finally {
+      this.poolLock.writeLock().unlock();
     }
   }
 
+  /**
+   * Computes the average grade of every student, the enrollment count of every course and
+   * the grade distribution of every course in one pass over the enrollments. The pass
+   * scans the columnar mirror of the enrollments, split across the threads configured with
+   * {@link #setParallelism(int)}, and merges the totals of each part, so its running time
+   * falls with the number of cores.
+   *
+   * @return the report, keyed by student and course ID
+   */
+  public EnrollmentReport getEnrollmentReport() {
+    EnrollmentColumns.Snapshot columns = this.enrollmentService.columns();
+    this.poolLock.readLock().lock();
+    try {
+      ForkJoinPool pool = this.pool;
+      return pool.invoke(new BulkAggregation(columns, pool.getParallelism())).toReport();
+    } finally {
+      this.poolLock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Computes the average grade of every student with enrollments. See
+   * {@link #getEnrollmentReport()}.
+   *
+   * @return the averages rounded to two decimals, keyed by student ID
+   */
+  public Map<Integer, Double> getAllStudentAverageGrades() {
+    return this.getEnrollmentReport().studentAverages();
+  }
+
+  /**
+   * Counts the enrollments of every course with enrollments. See
+   * {@link #getEnrollmentReport()}.
+   *
+   * @return the counts, keyed by course ID
+   */
+  public Map<Integer, Integer> getAllCourseEnrollmentCounts() {
+    return this.getEnrollmentReport().courseCounts();
+  }
+
+  /**
+   * Computes the grade distribution of every course with enrollments. See
+   * {@link #getEnrollmentReport()}.
+   *
+   * @return the histograms, where element {@code g} is the number of enrollments with grade
+   * {@code g}, keyed by course ID
+   */
+  public Map<Integer, long[]> getAllCourseGradeDistributions() {
+    return this.getEnrollmentReport().gradeDistributions();
+  }
+
   /**
    * Retrieves the students enrolled in a specified course.
    * The course can be identified by its name (String) or ID (Integer).
@@ -254,23 +451,14 @@ public class StudentAnalytics {
         return Optional.empty();
       }
 
-      List<CourseEnrollment> enrollments = this.enrollmentService.getByCourse(course.getId());
-      if (enrollments == null) {
-        enrollments = Collections.emptyList();
-      }
-
-      List<Student> students = enrollments.stream()
-          .map(enrollment -> {
-            try {
-              return this.studentService.getById(enrollment.getStudentId());
-            } catch (DatabaseException e) {
-              return null;
-            }
-          })
-          .filter(Objects::nonNull)
-          .sorted(Comparator.comparing(Student::getName))
+      List<Integer> studentIds = this.enrollmentService.getByCourse(course.getId()).stream()
+          .map(CourseEnrollment::getStudentId)
           .toList();
 
+      List<Student> students = this.studentService.getByIds(studentIds,
+          Comparator.comparing(Student::getName, Comparator.nullsLast(Comparator.naturalOrder())))
+          .found();
+
       return Optional.of(Map.entry(course, students));
 
     } catch (DatabaseException e) {
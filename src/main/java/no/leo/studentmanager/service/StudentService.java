@@ -3,6 +3,7 @@ package no.leo.studentmanager.service;
 import java.util.List;
 import no.leo.studentmanager.exception.DatabaseException;
 import no.leo.studentmanager.model.Student;
+import no.leo.studentmanager.storage.StorageOptions;
 
 /**
  * Service class to perform operations related to Student entities.
@@ -15,6 +16,10 @@ public class StudentService extends BaseService<Student> {
     super(Student.class, dbPath);
   }
 
+  public StudentService(String dbPath, StorageOptions options) {
+    super(Student.class, dbPath, options);
+  }
+
   /**
    * Retrieves the name of the database table associated with the Student entity.
    *
@@ -0,0 +1,250 @@
+package no.leo.studentmanager.service;
+
+import java.util.List;
+import java.util.Map;
+import no.leo.studentmanager.storage.CompositeIndex;
+import no.leo.studentmanager.storage.RecordLayout;
+
+/**
+ * A table definition compiled for fast access: the row layout, a validator per column and,
+ * per column, whether it is unique, which index covers it and the type of its index keys.
+ * Everything is resolved once when the schema is loaded, so validating a row does neither
+ * I/O nor map lookups.
+ * <p>
+ * An index is a hash index unless it is declared as ordered, which keeps its keys sorted
+ * for range queries and ordered iteration:
+ * <pre>
+ * "indices": {"name_id_idx": {"type": "ordered"}}
+ * </pre>
+ * <p>
+ Every index that is not unique holds the IDs of each key in a
+ * {@link no.leo.studentmanager.storage.RoaringBitmap}, so filters on several columns can be
+ * combined with set operations rather than by scanning. Columns with only a handful of
+ * distinct values, such as grades, can declare a bitmap index, which is ordered as well:
+ * <pre>
+ * "indices": {"grade_id_idx": {"type": "bitmap"}}
+ * </pre>
+ * <p>
+ * A table may also declare composite unique constraints, each a list of column names:
+ * <pre>
+ * "unique_together": [["student_id", "course_id"]]
+ * </pre>
+ * <p>
+ * Instances are shared by all services of the same table and must not be modified.
+ */
+public class TableSchema {
+  private final String name;
+  private final Map<String, Object> definition;
+  private final RecordLayout layout;
+  private final FieldValidator[] validators;
+  private final boolean[] unique;
+  private final String[] indexNames;
+  private final boolean[] intKeys;
+  private final boolean[] ordered;
+  private final boolean[] bitmap;
+  private final String[][] uniqueTogether;
+
+  /**
+   * Compiles a table definition.
+   *
+   * @param definition the table definition from {@code table_definitions.json}
+   */
+  @SuppressWarnings("unchecked")
+  TableSchema(Map<String, Object> definition) {
+    this.name = (String) definition.get("name");
+    this.definition = definition;
+    this.layout = new RecordLayout(definition);
+
+    Map<String, Object> definitions = (Map<String, Object>) definition.get("definitions");
+    Map<String, Object> indices = (Map<String, Object>) definition.get("indices");
+    int columns = this.layout.size();
+    this.validators = new FieldValidator[columns];
+    this.unique = new boolean[columns];
+    this.indexNames = new String[columns];
+    this.intKeys = new boolean[columns];
+    this.ordered = new boolean[columns];
+    this.bitmap = new boolean[columns];
+    for (int i = 0; i < columns; i++) {
+      String column = this.layout.getColumn(i);
+      Map<String, Object> field = (Map<String, Object>) definitions.get(column);
+      Map<String, Object> constraints = (Map<String, Object>) field.get("constraints");
+      this.validators[i] = new FieldValidator(column, constraints);
+      this.unique[i] = constraints != null && Boolean.TRUE.equals(constraints.get("unique"));
+      String indexName = column + "_id_idx";
+      this.indexNames[i] = indices != null && indices.containsKey(indexName) ? indexName : null;
+      this.intKeys[i] = "int".equals(field.get("type"));
+      if (this.indexNames[i] != null) {
+        Map<String, Object> index = (Map<String, Object>) indices.get(indexName);
+        Object type = index != null ? index.get("type") : null;
+        this.bitmap[i] = "bitmap".equals(type);
+        this.ordered[i] = "ordered".equals(type) || this.bitmap[i];
+        if (this.bitmap[i] && this.unique[i]) {
+          throw new IllegalArgumentException(
+              "Unique column " + column + " of " + this.name + " cannot have a bitmap index");
+        }
+      }
+    }
+
+    List<List<String>> composites = (List<List<String>>) definition.get("unique_together");
+    this.uniqueTogether = composites == null ? new String[0][] : composites.stream()
+        .map(fields -> fields.toArray(new String[0]))
+        .toArray(String[][]::new);
+    for (String[] fields : this.uniqueTogether) {
+      for (String field : fields) {
+        if (this.layout.indexOf(field) < 0) {
+          throw new IllegalArgumentException(
+              "unique_together of " + this.name + " names unknown column " + field);
+        }
+      }
+    }
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Returns the raw table definition the schema was compiled from.
+   *
+   * @return the table definition
+   */
+  public Map<String, Object> getDefinition() {
+    return definition;
+  }
+
+  public RecordLayout getLayout() {
+    return layout;
+  }
+
+  /**
+   * Checks whether a column carries a unique constraint.
+   *
+   * @param column the position of the column
+   * @return true if the column is unique
+   */
+  public boolean isUnique(int column) {
+    return this.unique[column];
+  }
+
+  /**
+   * Returns the name of the index declared for a column.
+   *
+   * @param column the position of the column
+   * @return the index name, or null if the column is not indexed
+   */
+  public String getIndexName(int column) {
+    return this.indexNames[column];
+  }
+
+  /**
+   * Checks whether the index of a column keeps its keys sorted, i.e. is declared as ordered
+   * or as bitmap.
+   *
+   * @param column the position of the column
+   * @return true if the column has an ordered index
+   */
+  public boolean isOrdered(int column) {
+    return this.ordered[column];
+  }
+
+  /**
+   * Checks whether the index of a column is declared as bitmap.
+   *
+   * @param column the position of the column
+   * @return true if the column has a bitmap index
+   */
+  public boolean isBitmap(int column) {
+    return this.bitmap[column];
+  }
+
+  /**
+   * Creates an empty index for every composite unique constraint of the table. Indices hold
+   * a service's data, so every service gets its own.
+   *
+   * @return one new index per {@code unique_together} entry
+   */
+  public CompositeIndex[] createCompositeIndices() {
+    CompositeIndex[] indices = new CompositeIndex[this.uniqueTogether.length];
+    for (int i = 0; i < indices.length; i++) {
+      String[] fields = this.uniqueTogether[i];
+      int[] columns = new int[fields.length];
+      boolean intColumns = true;
+      for (int j = 0; j < fields.length; j++) {
+        columns[j] = this.layout.indexOf(fields[j]);
+        intColumns &= this.intKeys[columns[j]];
+      }
+      indices[i] = new CompositeIndex(fields, columns, intColumns);
+    }
+    return indices;
+  }
+
+  /**
+   * Converts a value to the key type of the column's index, which follows the column's
+   * declared type: {@code int} columns are keyed by {@link Integer}, all other columns by
+   * {@link String}. This way a lookup finds its records whatever numeric or string form the
+   * value arrives in, and indices built from a reloaded snapshot use the same keys as
+   * indices built from fresh inserts.
+   *
+   * @param column the position of the column
+   * @param value  the value to convert
+   * @return the index key, or the value itself if it cannot be converted
+   */
+  public Object toKey(int column, Object value) {
+    if (value == null) {
+      return null;
+    }
+    if (!this.intKeys[column]) {
+      return value instanceof String ? value : value.toString();
+    }
+    if (value instanceof Integer) {
+      return value;
+    }
+    if (value instanceof Number number) {
+      return number.intValue();
+    }
+    try {
+      return Integer.valueOf(value.toString().trim());
+    } catch (NumberFormatException e) {
+      return value;
+    }
+  }
+
+  /**
+   * Checks whether a key already has the key type of a column's index, as returned by
+   * {@link #toKey(int, Object)} for convertible values. Ordered indices can only compare
+   * keys of their own type.
+   *
+   * @param column the position of the column
+   * @param key    the key
+   * @return true if the key is a non-null value of the column's key type
+   */
+  public boolean hasKeyType(int column, Object key) {
+    return this.intKeys[column] ? key instanceof Integer : key instanceof String;
+  }
+
+  /**
+   * Checks every value of a row against the constraints of its column.
+   *
+   * @param row the row to check
+   * @throws IllegalArgumentException if a value violates a constraint
+   */
+  public void validate(Object[] row) {
+    for (int i = 0; i < this.validators.length; i++) {
+      this.validators[i].validate(row[i]);
+    }
+  }
+
+  /**
+   * Checks a single value against the constraints of its column.
+   *
+   * @param fieldName the column name
+   * @param value     the value to check
+   * @throws IllegalArgumentException if the value violates a constraint
+   */
+  public void validateField(String fieldName, Object value) {
+    int column = this.layout.indexOf(fieldName);
+    if (column >= 0) {
+      this.validators[column].validate(value);
+    }
+  }
+}
@@ -0,0 +1,170 @@
+package no.leo.studentmanager.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import no.leo.studentmanager.exception.DatabaseException;
+import no.leo.studentmanager.storage.LogEntry;
+import no.leo.studentmanager.storage.StorageOptions;
+import no.leo.studentmanager.storage.TransactionLog;
+
+/**
+ * Runs work that spans several services as one atomic, durable transaction.
+ * <p>
+ * A transaction opens a batch on every participating service, locking them in table-name
+ * order so concurrent transactions cannot deadlock. On commit, the staged log entries of all
+ * tables are written as a single record to the shared {@link TransactionLog} and forced once;
+ * each table's own log then receives its entries without another fsync. If the work throws,
+ * or the commit record cannot be written, every participant is rolled back.
+ * <p>
+ * Only one coordinator should be used per database directory, since it also decides when the
+ * shared transaction log can be truncated.
+ */
+public class TransactionCoordinator implements AutoCloseable {
+  private final List<BaseService<?>> participants;
+  private final TransactionLog log;
+  private final long maxLogBytes;
+  private boolean truncationBlocked;
+
+  /**
+   * Creates a coordinator for the given services, which must share a database directory.
+   *
+   * @param participants the services transactions may write to
+   * @throws IllegalArgumentException if the services do not share a database directory
+   */
+  public TransactionCoordinator(BaseService<?>... participants) {
+    this(StorageOptions.defaults(), participants);
+  }
+
+  /**
+   * Creates a coordinator for the given services, which must share a database directory.
+   *
+   * @param options      storage options; the log size threshold decides when the
+   *                     transaction log is truncated
+   * @param participants the services transactions may write to
+   * @throws IllegalArgumentException if no services are given or they do not share a
+   *                                  database directory
+   */
+  public TransactionCoordinator(StorageOptions options, BaseService<?>... participants) {
+    if (participants.length == 0) {
+      throw new IllegalArgumentException("A transaction needs at least one participant");
+    }
+    this.participants = new ArrayList<>(Arrays.asList(participants));
+    this.participants.sort(Comparator.comparing(BaseService::getTableName));
+    for (BaseService<?> participant : this.participants) {
+      if (!participant.dbPath.equals(participants[0].dbPath)) {
+        throw new IllegalArgumentException("All participants must share a database directory");
+      }
+    }
+    this.maxLogBytes = options.getMaxLogBytes();
+    try {
+      this.log = new TransactionLog(participants[0].dbPath, new ObjectMapper());
+    } catch (IOException e) {
+      throw new RuntimeException("Could not open transaction log", e);
+    }
+  }
+
+  /**
+   * Runs the given work as one transaction across all participants.
+   *
+   * @param work the operations to run; they may use any participating service
+   * @throws DatabaseException if the work fails; every participant has been rolled back
+   * @throws RuntimeException  if the transaction could not be committed; every participant
+   *                           has been rolled back
+   */
+  public void inTransaction(BatchWork work) throws DatabaseException {
+    List<BaseService<?>> locked = new ArrayList<>();
+    try {
+      for (BaseService<?> participant : this.participants) {
+        participant.lock.lock();
+        locked.add(participant);
+        participant.beginBatch();
+      }
+    } catch (RuntimeException e) {
+      // beginBatch failed on the last locked participant; the others have open batches
+      for (BaseService<?> participant : locked.subList(0, locked.size() - 1)) {
+        participant.rollback();
+      }
+      locked.forEach(participant -> participant.lock.unlock());
+      throw e;
+    }
+
+    try {
+      try {
+        work.run();
+        this.commit();
+      } catch (DatabaseException | RuntimeException e) {
+        this.participants.forEach(BaseService::rollback);
+        throw e;
+      }
+
+      // Every entry is durable in the transaction log, so the table logs need no fsync
+      RuntimeException failure = null;
+      for (BaseService<?> participant : this.participants) {
+        try {
+          participant.commitStaged();
+        } catch (RuntimeException e) {
+          // The entries will be recovered from the transaction log, which must now be kept
+          this.truncationBlocked = true;
+          failure = failure == null ? e : failure;
+        }
+      }
+      this.truncateIfLarge();
+      if (failure != null) {
+        throw failure;
+      }
+    } finally {
+      this.participants.forEach(participant -> participant.lock.unlock());
+    }
+  }
+
+  private void commit() {
+    Map<String, List<LogEntry>> tables = new LinkedHashMap<>();
+    for (BaseService<?> participant : this.participants) {
+      List<LogEntry> staged = participant.getStagedEntries();
+      if (!staged.isEmpty()) {
+        tables.put(participant.getTableName(), staged);
+      }
+    }
+    if (tables.isEmpty()) {
+      return;
+    }
+    try {
+      this.log.commit(tables);
+    } catch (IOException e) {
+      throw new RuntimeException("Could not commit transaction", e);
+    }
+  }
+
+  /**
+   * Truncates the transaction log once it passes the size threshold. Called with every
+   * participant locked, after forcing their logs, so no committed entry exists only in the
+   * transaction log when it is cleared. Entries a table log missed before a restart are
+   * safe too: the table writes a checkpoint as soon as it recovers them on startup.
+   */
+  private void truncateIfLarge() {
+    try {
+      if (this.truncationBlocked || this.log.size() < this.maxLogBytes) {
+        return;
+      }
+      this.participants.forEach(BaseService::flushLog);
+      this.log.truncate();
+    } catch (IOException e) {
+      throw new RuntimeException("Could not truncate transaction log", e);
+    }
+  }
+
+  @Override
+  public void close() {
+    try {
+      this.log.close();
+    } catch (IOException e) {
+      throw new RuntimeException("Could not close transaction log", e);
+    }
+  }
+}
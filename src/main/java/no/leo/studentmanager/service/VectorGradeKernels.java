@@ -0,0 +1,119 @@
+package no.leo.studentmanager.service;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The {@link GradeKernels} written with the Vector API, processing as many grades per
+ * instruction as the CPU's preferred vector width holds. Only loaded when
+ * {@link GradeKernels#isVectorized()} is true, so the rest of the application runs without
+ * the {@code jdk.incubator.vector} module.
+ * <p>
+ * Sums are exact for any int grades: each lane adds the low and the high 16 bits of its
+ * grades separately, and the lanes are folded into a long before either half can overflow.
+ */
+final class VectorGradeKernels {
+  private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+  // The most iterations after which a lane of 16-bit halves is still within int range
+  private static final int BLOCK = 32_767;
+
+  private VectorGradeKernels() {
+  }
+
+  /**
+   * See {@link GradeKernels#summarize}.
+   */
+  static GradeSummary summarize(int[] grades, int from, int to) {
+    if (from >= to) {
+      return GradeSummary.EMPTY;
+    }
+    int upper = from + SPECIES.loopBound(to - from);
+    IntVector min = IntVector.broadcast(SPECIES, Integer.MAX_VALUE);
+    IntVector max = IntVector.broadcast(SPECIES, Integer.MIN_VALUE);
+    long sum = 0;
+    int i = from;
+    while (i < upper) {
+      int blockEnd = i + (int) Math.min(upper - i, (long) BLOCK * SPECIES.length());
+      IntVector low = IntVector.zero(SPECIES);
+      IntVector high = IntVector.zero(SPECIES);
+      for (; i < blockEnd; i += SPECIES.length()) {
+        IntVector grade = IntVector.fromArray(SPECIES, grades, i);
+        low = low.add(grade.and(0xFFFF));
+        high = high.add(grade.lanewise(VectorOperators.ASHR, 16));
+        min = min.min(grade);
+        max = max.max(grade);
+      }
+      sum += sumLanes(low) + (sumLanes(high) << 16);
+    }
+
+    // Merging ignores a summary of no grades, whatever its min and max
+    return new GradeSummary(upper - from, sum, min.reduceLanes(VectorOperators.MIN),
+        max.reduceLanes(VectorOperators.MAX))
+        .merge(GradeKernels.summarizeScalar(grades, upper, to));
+  }
+
+  /**
+   * See {@link GradeKernels#summarizeCourse}.
+   */
+  static GradeSummary summarizeCourse(int[] grades, int[] courses, int courseId, int from,
+                                      int to) {
+    int upper = from + SPECIES.loopBound(Math.max(0, to - from));
+    IntVector min = IntVector.broadcast(SPECIES, Integer.MAX_VALUE);
+    IntVector max = IntVector.broadcast(SPECIES, Integer.MIN_VALUE);
+    IntVector zero = IntVector.zero(SPECIES);
+    long count = 0;
+    long sum = 0;
+    int i = from;
+    while (i < upper) {
+      int blockEnd = i + (int) Math.min(upper - i, (long) BLOCK * SPECIES.length());
+      IntVector low = zero;
+      IntVector high = zero;
+      for (; i < blockEnd; i += SPECIES.length()) {
+        VectorMask<Integer> inCourse = IntVector.fromArray(SPECIES, courses, i).eq(courseId);
+        IntVector grade = zero.blend(IntVector.fromArray(SPECIES, grades, i), inCourse);
+        count += inCourse.trueCount();
+        low = low.add(grade.and(0xFFFF));
+        high = high.add(grade.lanewise(VectorOperators.ASHR, 16));
+        min = min.lanewise(VectorOperators.MIN, grade, inCourse);
+        max = max.lanewise(VectorOperators.MAX, grade, inCourse);
+      }
+      sum += sumLanes(low) + (sumLanes(high) << 16);
+    }
+
+    GradeSummary tail = GradeKernels.summarizeCourseScalar(grades, courses, courseId, upper, to);
+    if (count == 0) {
+      return tail;
+    }
+    return new GradeSummary(count, sum, min.reduceLanes(VectorOperators.MIN),
+        max.reduceLanes(VectorOperators.MAX)).merge(tail);
+  }
+
+  /**
+   * See {@link GradeKernels#histogramCourse}.
+   */
+  static void histogramCourse(int[] grades, int[] courses, int courseId, int from, int to,
+                              long[] buckets) {
+    int upper = from + SPECIES.loopBound(Math.max(0, to - from));
+    for (int i = from; i < upper; i += SPECIES.length()) {
+      VectorMask<Integer> inCourse = IntVector.fromArray(SPECIES, courses, i).eq(courseId);
+      if (!inCourse.anyTrue()) {
+        continue;
+      }
+      IntVector grade = IntVector.fromArray(SPECIES, grades, i);
+      for (int bucket = 0; bucket < buckets.length; bucket++) {
+        buckets[bucket] += grade.eq(bucket).and(inCourse).trueCount();
+      }
+    }
+    GradeKernels.histogramCourseScalar(grades, courses, courseId, upper, to, buckets);
+  }
+
+  private static long sumLanes(IntVector vector) {
+    long sum = 0;
+    for (int lane = 0; lane < SPECIES.length(); lane++) {
+      sum += vector.lane(lane);
+    }
+    return sum;
+  }
+}
@@ -0,0 +1,172 @@
+package no.leo.studentmanager.storage;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Stores snapshots in a compact, length-prefixed binary encoding.
+ * <p>
+ * The columns and their types are taken from the table definition and written once in the
+ * header; after that each record is a sequence of typed values with no field names:
+ * <pre>
+ * magic "SMDB" | version u16 | lsn i64 | next id i32 | column count i32
+ * per column:  name (modified UTF-8) | type u8 (0 = int, 1 = varchar)
+ * record count i32
+ * per record:  per column: present u8 | int i32 or varchar (length i32, UTF-8 bytes)
+ * </pre>
+ * Indices are not stored; they are rebuilt from the records when the table is loaded.
+ * Version 1 snapshots, which lack the next ID, can still be read.
+ */
+public class BinarySnapshotFormat implements SnapshotFormat {
+  private static final int MAGIC = 0x534D4442;
+  private static final int VERSION = 2;
+  private static final byte TYPE_INT = 0;
+  private static final byte TYPE_VARCHAR = 1;
+  private static final int PROGRESS_INTERVAL = 10_000;
+
+  @Override
+  public String getExtension() {
+    return "bin";
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public void write(OutputStream out, Map<String, Object> snapshot, Map<String, Object> definition)
+      throws IOException {
+    Map<String, Object> definitions = (Map<String, Object>) definition.get("definitions");
+    List<String> columns = new ArrayList<>(definitions.keySet());
+    byte[] types = new byte[columns.size()];
+
+    DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out, 1 << 16));
+    data.writeInt(MAGIC);
+    data.writeShort(VERSION);
+    Object lsn = snapshot.get("lsn");
+    data.writeLong(lsn instanceof Number ? ((Number) lsn).longValue() : 0L);
+    Object nextId = snapshot.get("next_id");
+    data.writeInt(nextId instanceof Number ? ((Number) nextId).intValue() : 0);
+    data.writeInt(columns.size());
+    for (int i = 0; i < columns.size(); i++) {
+      Map<String, Object> field = (Map<String, Object>) definitions.get(columns.get(i));
+      types[i] = typeCode(columns.get(i), (String) field.get("type"));
+      data.writeUTF(columns.get(i));
+      data.writeByte(types[i]);
+    }
+
+    Map<String, Map<String, Object>> records =
+        (Map<String, Map<String, Object>>) snapshot.get("data");
+    data.writeInt(records.size());
+    for (Map<String, Object> record : records.values()) {
+      for (int i = 0; i < columns.size(); i++) {
+        Object value = record.get(columns.get(i));
+        if (value == null) {
+          data.writeByte(0);
+          continue;
+        }
+        data.writeByte(1);
+        if (types[i] == TYPE_INT) {
+          data.writeInt(((Number) value).intValue());
+        } else {
+          byte[] bytes = value.toString().getBytes(StandardCharsets.UTF_8);
+          data.writeInt(bytes.length);
+          data.write(bytes);
+        }
+      }
+    }
+    data.flush();
+  }
+
+  @Override
+  public void read(InputStream in, Map<String, Object> definition, SnapshotVisitor visitor)
+      throws IOException {
+    CountingInputStream counter = new CountingInputStream(new BufferedInputStream(in, 1 << 16));
+    DataInputStream data = new DataInputStream(counter);
+    if (data.readInt() != MAGIC) {
+      throw new IOException("Not a binary snapshot");
+    }
+    int version = data.readUnsignedShort();
+    if (version < 1 || version > VERSION) {
+      throw new IOException("Unsupported binary snapshot version " + version);
+    }
+    visitor.lsn(data.readLong());
+    if (version >= 2) {
+      visitor.nextId(data.readInt());
+    }
+
+    int columnCount = data.readInt();
+    String[] columns = new String[columnCount];
+    byte[] types = new byte[columnCount];
+    for (int i = 0; i < columnCount; i++) {
+      columns[i] = data.readUTF();
+      types[i] = data.readByte();
+    }
+
+    int recordCount = data.readInt();
+    for (int r = 1; r <= recordCount; r++) {
+      Map<String, Object> record = new HashMap<>(columnCount * 4 / 3 + 1);
+      for (int i = 0; i < columnCount; i++) {
+        if (data.readByte() == 0) {
+          record.put(columns[i], null);
+        } else if (types[i] == TYPE_INT) {
+          record.put(columns[i], data.readInt());
+        } else {
+          byte[] bytes = new byte[data.readInt()];
+          data.readFully(bytes);
+          record.put(columns[i], new String(bytes, StandardCharsets.UTF_8));
+        }
+      }
+      visitor.record(record);
+      if (r % PROGRESS_INTERVAL == 0) {
+        visitor.progress(r, counter.count);
+      }
+    }
+    visitor.progress(recordCount, counter.count);
+  }
+
+  private static byte typeCode(String column, String type) throws IOException {
+    return switch (type) {
+      case "int" -> TYPE_INT;
+      case "varchar" -> TYPE_VARCHAR;
+      default -> throw new IOException("Column " + column + " has unsupported type " + type);
+    };
+  }
+
+  /**
+   * Counts the bytes consumed from the underlying stream, for progress reporting.
+   */
+  private static class CountingInputStream extends FilterInputStream {
+    private long count;
+
+    CountingInputStream(InputStream in) {
+      super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+      int b = super.read();
+      if (b != -1) {
+        this.count++;
+      }
+      return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      int n = super.read(b, off, len);
+      if (n > 0) {
+        this.count += n;
+      }
+      return n;
+    }
+  }
+}
@@ -0,0 +1,75 @@
+package no.leo.studentmanager.storage;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Background task that keeps a table's write-ahead log bounded.
+ * <p>
+ * At a fixed interval the checkpointer looks at the active log segment. Once it grows past
+ * {@link StorageOptions#getMaxLogBytes()} or its oldest entry is older than
+ * {@link StorageOptions#getMaxLogAge()}, the supplied checkpoint action is run, which writes
+ * a fresh snapshot and removes the segments it replaces. The write path never waits for it.
+ */
+public class Checkpointer implements AutoCloseable {
+  private static final Logger LOGGER = Logger.getLogger(Checkpointer.class.getName());
+
+  private final TableLog log;
+  private final StorageOptions options;
+  private final Runnable checkpoint;
+  private final ScheduledExecutorService scheduler;
+
+  /**
+   * Starts a checkpointer for the given log.
+   *
+   * @param tableName  the table name, used to name the background thread
+   * @param log        the log whose size and age are monitored
+   * @param options    the thresholds to apply
+   * @param checkpoint the action that snapshots the table and compacts the log
+   */
+  public Checkpointer(String tableName, TableLog log, StorageOptions options, Runnable checkpoint) {
+    this.log = log;
+    this.options = options;
+    this.checkpoint = checkpoint;
+    this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "checkpointer-" + tableName);
+      thread.setDaemon(true);
+      return thread;
+    });
+    long interval = options.getCheckpointInterval().toMillis();
+    this.scheduler.scheduleWithFixedDelay(this::tick, interval, interval, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Checks whether the log has passed one of its thresholds.
+   *
+   * @return true if a checkpoint should be taken now
+   */
+  public boolean isCheckpointDue() {
+    if (this.log.getBytesSinceRollover() >= this.options.getMaxLogBytes()) {
+      return true;
+    }
+    long firstAppend = this.log.getFirstAppendMillis();
+    return firstAppend > 0
+        && System.currentTimeMillis() - firstAppend >= this.options.getMaxLogAge().toMillis();
+  }
+
+  private void tick() {
+    try {
+      if (this.isCheckpointDue()) {
+        this.checkpoint.run();
+      }
+    } catch (RuntimeException e) {
+      // Keep the schedule alive; the next tick will try again
+      LOGGER.log(Level.WARNING, "Checkpoint failed", e);
+    }
+  }
+
+  @Override
+  public void close() {
+    this.scheduler.shutdown();
+  }
+}
@@ -0,0 +1,157 @@
+package no.leo.studentmanager.storage;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A unique index over several columns, backing a {@code unique_together} constraint.
+ * <p>
+ * When the index covers two {@code int} columns, both values are packed into one
+ * {@code long} and kept in a primitive open-addressing map, so a probe neither allocates
+ * nor boxes. Any other combination of columns is keyed by the list of values. Rows with a
+ * null in any indexed column are not indexed, so they never conflict.
+ */
+public class CompositeIndex {
+  private final String[] fields;
+  private final int[] columns;
+  private final boolean packed;
+  private final LongIntHashMap packedIds;
+  private final Map<List<Object>, Integer> ids;
+
+  /**
+   * Creates an empty index.
+   *
+   * @param fields     the names of the indexed columns
+   * @param columns    the positions of the indexed columns in the row layout
+   * @param intColumns whether every indexed column is an {@code int} column
+   */
+  public CompositeIndex(String[] fields, int[] columns, boolean intColumns) {
+    this.fields = fields.clone();
+    this.columns = columns.clone();
+    this.packed = intColumns && columns.length == 2;
+    this.packedIds = this.packed ? new LongIntHashMap() : null;
+    this.ids = this.packed ? null : new HashMap<>();
+  }
+
+  /**
+   * Returns the names of the indexed columns.
+   *
+   * @return the column names, in index order
+   */
+  public String[] getFields() {
+    return this.fields.clone();
+  }
+
+  /**
+   * Checks whether this index covers exactly the given columns, in that order.
+   *
+   * @param fields the column names
+   * @return true if the index covers these columns
+   */
+  public boolean covers(String... fields) {
+    return Arrays.equals(this.fields, fields);
+  }
+
+  /**
+   * Looks up the record whose indexed columns hold the same values as a row.
+   *
+   * @param row the row
+   * @return the ID of the record, or 0 if there is none
+   */
+  public int get(Object[] row) {
+    if (this.packed) {
+      Object first = row[this.columns[0]];
+      Object second = row[this.columns[1]];
+      return first == null || second == null ? 0 : this.packedIds.get(pack(first, second));
+    }
+    List<Object> key = this.key(row);
+    Integer id = key != null ? this.ids.get(key) : null;
+    return id != null ? id : 0;
+  }
+
+  /**
+   * Looks up the record with the given values in the indexed columns.
+   *
+   * @param values one value per indexed column, in index order
+   * @return the ID of the record, or 0 if there is none
+   */
+  public int find(Object... values) {
+    if (values.length != this.columns.length || hasNull(values)) {
+      return 0;
+    }
+    if (this.packed) {
+      return this.packedIds.get(pack(values[0], values[1]));
+    }
+    Integer id = this.ids.get(List.of(values));
+    return id != null ? id : 0;
+  }
+
+  /**
+   * Adds a record to the index.
+   *
+   * @param row the record's row
+   * @param id  the record ID
+   */
+  public void add(Object[] row, int id) {
+    if (this.packed) {
+      Object first = row[this.columns[0]];
+      Object second = row[this.columns[1]];
+      if (first != null && second != null) {
+        this.packedIds.put(pack(first, second), id);
+      }
+      return;
+    }
+    List<Object> key = this.key(row);
+    if (key != null) {
+      this.ids.put(key, id);
+    }
+  }
+
+  /**
+   * Removes a record from the index, if the index still points to it.
+   *
+   * @param row the record's row
+   * @param id  the record ID
+   */
+  public void remove(Object[] row, int id) {
+    if (this.packed) {
+      Object first = row[this.columns[0]];
+      Object second = row[this.columns[1]];
+      if (first != null && second != null) {
+        this.packedIds.remove(pack(first, second), id);
+      }
+      return;
+    }
+    List<Object> key = this.key(row);
+    if (key != null) {
+      this.ids.remove(key, id);
+    }
+  }
+
+  private List<Object> key(Object[] row) {
+    List<Object> key = new ArrayList<>(this.columns.length);
+    for (int column : this.columns) {
+      if (row[column] == null) {
+        return null;
+      }
+      key.add(row[column]);
+    }
+    return List.copyOf(key);
+  }
+
+  private static boolean hasNull(Object[] values) {
+    for (Object value : values) {
+      if (value == null) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static long pack(Object first, Object second) {
+    return ((long) ((Number) first).intValue() << 32) | (((Number) second).intValue() & 0xFFFFFFFFL);
+  }
+}
@@ -0,0 +1,25 @@
+package no.leo.studentmanager.storage;
+
+/**
+ * Controls when a table's write-ahead log is forced to stable storage, trading
+ * write latency against how much acknowledged data a crash can lose.
+ */
+public enum DurabilityMode {
+  /**
+   * Every append is forced to disk before the write returns. Nothing acknowledged is ever
+   * at risk, but each write pays for its own fsync.
+   */
+  SYNC,
+  /**
+   * Appends are written immediately, and a background flusher forces the log once per
+   * flush interval. Writers wait for the fsync that covers their entry, so nothing
+   * acknowledged is at risk, while concurrent writers share a single fsync.
+   */
+  GROUP_COMMIT,
+  /**
+   * Appends are buffered in memory and the write returns at once. A background flusher
+   * writes and forces the buffer once per flush interval, so up to one interval's worth of
+   * acknowledged writes can be lost in a crash.
+   */
+  ASYNC
+}
@@ -0,0 +1,15 @@
+package no.leo.studentmanager.storage;
+
+import java.time.Duration;
+
+/**
+ * A point-in-time report of how much of a table's log is not yet on stable storage.
+ *
+ * @param mode            the durability mode of the log
+ * @param unsyncedEntries the number of appended entries that have not been forced to disk
+ * @param unsyncedBytes   the number of appended bytes that have not been forced to disk
+ * @param maxLossWindow   the longest span of acknowledged writes a crash can lose in this mode
+ */
+public record DurabilityStatus(DurabilityMode mode, long unsyncedEntries, long unsyncedBytes,
+                               Duration maxLossWindow) {
+}
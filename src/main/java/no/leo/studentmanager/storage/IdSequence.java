@@ -0,0 +1,93 @@
+package no.leo.studentmanager.storage;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A monotonically increasing source of record IDs for one table.
+ * <p>
+ * The next free ID is stored in every snapshot and advanced past every inserted record
+ * while the snapshot and the log are replayed, so IDs are never handed out twice, not even
+ * for records that have since been deleted. Callers that insert many records, such as
+ * batches, can {@link #reserve(int) reserve} a block of IDs at once and hand unused IDs
+ * back with {@link #release(int, int)}.
+ */
+public class IdSequence {
+  private final AtomicInteger next;
+
+  /**
+   * Creates a sequence whose first ID is 1.
+   */
+  public IdSequence() {
+    this(1);
+  }
+
+  /**
+   * Creates a sequence starting at the given ID.
+   *
+   * @param next the first ID to hand out
+   */
+  public IdSequence(int next) {
+    this.next = new AtomicInteger(next);
+  }
+
+  /**
+   * Takes the next ID.
+   *
+   * @return an ID that has not been handed out before
+   */
+  public int next() {
+    return this.next.getAndIncrement();
+  }
+
+  /**
+   * Takes a block of consecutive IDs.
+   *
+   * @param count the number of IDs to reserve
+   * @return the first ID of the block; the block ends before {@code first + count}
+   */
+  public int reserve(int count) {
+    if (count <= 0) {
+      throw new IllegalArgumentException("count must be positive");
+    }
+    return this.next.getAndAdd(count);
+  }
+
+  /**
+   * Hands back the unused tail of a reserved block. This only succeeds if no IDs were taken
+   * after the block; otherwise the IDs are simply skipped.
+   *
+   * @param from the first unused ID of the block
+   * @param end  the end of the block, exclusive
+   * @return true if the IDs will be handed out again
+   */
+  public boolean release(int from, int end) {
+    return from < end && this.next.compareAndSet(end, from);
+  }
+
+  /**
+   * Makes sure the sequence never hands out the given ID or any ID below it.
+   *
+   * @param id an ID that is in use
+   */
+  public void advancePast(int id) {
+    this.advanceTo(id + 1);
+  }
+
+  /**
+   * Makes sure the next ID handed out is at least the given value.
+   *
+   * @param next the lowest ID the sequence may still hand out
+   */
+  public void advanceTo(int next) {
+    this.next.accumulateAndGet(next, Math::max);
+  }
+
+  /**
+   * Returns the next ID without taking it, e.g. to store it in a snapshot.
+   *
+   * @return the next ID
+   */
+  public int peek() {
+    return this.next.get();
+  }
+}
@@ -0,0 +1,33 @@
+package no.leo.studentmanager.storage;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.Map;
+
+/**
+ * A codec that converts through an intermediate map with Jackson. Works for any model
+ * Jackson can map, at the cost of a map per conversion.
+ *
+ * @param <T> the model type
+ */
+class JacksonRecordCodec<T> implements RecordCodec<T> {
+  private final Class<T> modelClass;
+  private final RecordLayout layout;
+  private final ObjectMapper objectMapper;
+
+  JacksonRecordCodec(Class<T> modelClass, RecordLayout layout, ObjectMapper objectMapper) {
+    this.modelClass = modelClass;
+    this.layout = layout;
+    this.objectMapper = objectMapper;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public Object[] toRow(T record) {
+    return this.layout.toRow(this.objectMapper.convertValue(record, Map.class));
+  }
+
+  @Override
+  public T fromRow(Object[] row) {
+    return this.objectMapper.convertValue(this.layout.toMap(row), this.modelClass);
+  }
+}
@@ -0,0 +1,76 @@
+package no.leo.studentmanager.storage;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+
+/**
+ * Reads files of newline-terminated JSON values, as written by the logs in this package.
+ */
+final class JsonLines {
+  private JsonLines() {
+  }
+
+  /**
+   * Decodes every complete line of the file in order. Only the end of the file can hold a
+   * torn write: an unterminated tail, or a last line that cannot be decoded, is cut off so
+   * later appends start on a clean line. A line that cannot be decoded anywhere else means
+   * the file is corrupt; the file is then left untouched and an exception is thrown, since
+   * cutting it off would discard every durable entry after it.
+   *
+   * @param path         the file to read
+   * @param objectMapper the mapper used to decode each line
+   * @param type         the type every line decodes to
+   * @param consumer     receives each decoded value
+   * @param <E>          the decoded type
+   * @throws IOException if the file could not be read or truncated, or a line other than
+   *                     the last one cannot be decoded
+   */
+  static <E> void read(Path path, ObjectMapper objectMapper, Class<E> type, Consumer<E> consumer)
+      throws IOException {
+    if (!Files.exists(path)) {
+      return;
+    }
+
+    long size = Files.size(path);
+    long validLength = 0;
+    long offset = 0;
+    try (InputStream in = new BufferedInputStream(Files.newInputStream(path))) {
+      ByteArrayOutputStream line = new ByteArrayOutputStream();
+      int b;
+      while ((b = in.read()) != -1) {
+        offset++;
+        if (b != '\n') {
+          line.write(b);
+          continue;
+        }
+        E value;
+        try {
+          value = objectMapper.readValue(line.toByteArray(), type);
+        } catch (IOException e) {
+          if (offset < size) {
+            throw new IOException("Corrupt line ending at byte " + offset + " of " + path, e);
+          }
+          break;
+        }
+        line.reset();
+        validLength = offset;
+        consumer.accept(value);
+      }
+    }
+
+    if (validLength < size) {
+      try (FileChannel ch = FileChannel.open(path, StandardOpenOption.WRITE)) {
+        ch.truncate(validLength);
+        ch.force(true);
+      }
+    }
+  }
+}
@@ -0,0 +1,70 @@
+package no.leo.studentmanager.storage;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+
+/**
+ * Stores snapshots as pretty-printed JSON. Easy to inspect by hand, and the format older
+ * versions of the database wrote.
+ * <p>
+ * Reading walks the token stream of the file: each record object under {@code "data"} is
+ * decoded on its own and handed to the visitor, while any other field, such as the indices
+ * older versions stored, is skipped, so the file is never materialized as a whole.
+ */
+public class JsonSnapshotFormat implements SnapshotFormat {
+  private static final int PROGRESS_INTERVAL = 10_000;
+
+  private final ObjectMapper objectMapper = new ObjectMapper()
+      .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+      .disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+
+  @Override
+  public String getExtension() {
+    return "json";
+  }
+
+  @Override
+  public void write(OutputStream out, Map<String, Object> snapshot, Map<String, Object> definition)
+      throws IOException {
+    this.objectMapper.writerWithDefaultPrettyPrinter().writeValue(out, snapshot);
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public void read(InputStream in, Map<String, Object> definition, SnapshotVisitor visitor)
+      throws IOException {
+    long records = 0;
+    try (JsonParser parser = this.objectMapper.createParser(in)) {
+      if (parser.nextToken() != JsonToken.START_OBJECT) {
+        throw new IOException("Snapshot is not a JSON object");
+      }
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String field = parser.currentName();
+        JsonToken value = parser.nextToken();
+        if ("lsn".equals(field) && value.isNumeric()) {
+          visitor.lsn(parser.getLongValue());
+        } else if ("next_id".equals(field) && value.isNumeric()) {
+          visitor.nextId(parser.getIntValue());
+        } else if ("data".equals(field) && value == JsonToken.START_OBJECT) {
+          while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            parser.nextToken();
+            visitor.record(parser.readValueAs(Map.class));
+            if (++records % PROGRESS_INTERVAL == 0) {
+              visitor.progress(records, parser.currentLocation().getByteOffset());
+            }
+          }
+        } else {
+          // Indices and table metadata are derived from the records and the definition
+          parser.skipChildren();
+        }
+      }
+      visitor.progress(records, parser.currentLocation().getByteOffset());
+    }
+  }
+}
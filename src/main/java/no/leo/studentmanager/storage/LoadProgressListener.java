@@ -0,0 +1,17 @@
+package no.leo.studentmanager.storage;
+
+/**
+ * Notified while a table's snapshot is loaded at startup.
+ */
+@FunctionalInterface
+public interface LoadProgressListener {
+  /**
+   * Reports loading progress.
+   *
+   * @param tableName     the table being loaded
+   * @param recordsLoaded the number of records loaded so far
+   * @param bytesRead     the number of snapshot bytes consumed so far
+   * @param totalBytes    the size of the snapshot file
+   */
+  void onProgress(String tableName, long recordsLoaded, long bytesRead, long totalBytes);
+}
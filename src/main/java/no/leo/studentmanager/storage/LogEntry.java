@@ -0,0 +1,82 @@
+package no.leo.studentmanager.storage;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import java.util.Map;
+
+/**
+ * A single mutation recorded in a table's write-ahead log.
+ * <p>
+ * Every entry carries a log sequence number (LSN) that increases monotonically per table.
+ * Snapshots remember the LSN of the last entry they contain, so replay can skip entries
+ * that are already part of the snapshot.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class LogEntry {
+  /**
+   * The kind of mutation a log entry describes.
+   */
+  public enum Op {
+    @JsonProperty("insert")
+    INSERT,
+    @JsonProperty("update")
+    UPDATE,
+    @JsonProperty("delete")
+    DELETE
+  }
+
+  @JsonProperty("lsn")
+  private final long lsn;
+  @JsonProperty("op")
+  private final Op op;
+  @JsonProperty("id")
+  private final int id;
+  @JsonProperty("record")
+  private final Map<String, Object> record;
+
+  /**
+   * Creates a new log entry.
+   *
+   * @param lsn    the log sequence number of the entry
+   * @param op     the mutation type
+   * @param id     the primary key of the affected record
+   * @param record the full record after the mutation, or null for deletes
+   */
+  @JsonCreator
+  public LogEntry(
+      @JsonProperty("lsn") long lsn,
+      @JsonProperty("op") Op op,
+      @JsonProperty("id") int id,
+      @JsonProperty("record") Map<String, Object> record) {
+    this.lsn = lsn;
+    this.op = op;
+    this.id = id;
+    this.record = record;
+  }
+
+  public long getLsn() {
+    return lsn;
+  }
+
+  public Op getOp() {
+    return op;
+  }
+
+  public int getId() {
+    return id;
+  }
+
+  public Map<String, Object> getRecord() {
+    return record;
+  }
+
+  @Override
+  public String toString() {
+    return "LogEntry{" +
+        "lsn=" + lsn +
+        ", op=" + op +
+        ", id=" + id +
+        '}';
+  }
+}
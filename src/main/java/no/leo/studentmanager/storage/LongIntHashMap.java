@@ -0,0 +1,111 @@
+package no.leo.studentmanager.storage;
+
+/**
+ * An open-addressing hash map from {@code long} keys to positive {@code int} values, with
+ * linear probing and backward-shift deletion. Neither keys nor values are boxed. A value of
+ * 0 marks an empty slot, which suits record IDs, since those start at 1.
+ */
+class LongIntHashMap {
+  private static final int MIN_CAPACITY = 16;
+
+  private long[] keys = new long[MIN_CAPACITY];
+  private int[] values = new int[MIN_CAPACITY];
+  private int size;
+
+  /**
+   * Returns the value for a key.
+   *
+   * @param key the key
+   * @return the value, or 0 if the key is absent
+   */
+  int get(long key) {
+    int mask = this.keys.length - 1;
+    for (int slot = hash(key) & mask; this.values[slot] != 0; slot = (slot + 1) & mask) {
+      if (this.keys[slot] == key) {
+        return this.values[slot];
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * Associates a key with a value, replacing any previous value.
+   *
+   * @param key   the key
+   * @param value the value, which must be positive
+   */
+  void put(long key, int value) {
+    if ((this.size + 1) * 2 > this.keys.length) {
+      this.resize(this.keys.length * 2);
+    }
+    int mask = this.keys.length - 1;
+    int slot = hash(key) & mask;
+    while (this.values[slot] != 0 && this.keys[slot] != key) {
+      slot = (slot + 1) & mask;
+    }
+    if (this.values[slot] == 0) {
+      this.size++;
+    }
+    this.keys[slot] = key;
+    this.values[slot] = value;
+  }
+
+  /**
+   * Removes a key if it maps to the given value.
+   *
+   * @param key   the key
+   * @param value the value the key must map to
+   */
+  void remove(long key, int value) {
+    int mask = this.keys.length - 1;
+    int slot = hash(key) & mask;
+    while (this.values[slot] != 0 && this.keys[slot] != key) {
+      slot = (slot + 1) & mask;
+    }
+    if (this.values[slot] != value) {
+      return;
+    }
+
+    int gap = slot;
+    for (int next = (gap + 1) & mask; this.values[next] != 0; next = (next + 1) & mask) {
+      int home = hash(this.keys[next]) & mask;
+      boolean movable = gap <= next
+          ? home <= gap || home > next
+          : home <= gap && home > next;
+      if (movable) {
+        this.keys[gap] = this.keys[next];
+        this.values[gap] = this.values[next];
+        gap = next;
+      }
+    }
+    this.values[gap] = 0;
+    this.size--;
+  }
+
+  int size() {
+    return this.size;
+  }
+
+  private void resize(int capacity) {
+    long[] oldKeys = this.keys;
+    int[] oldValues = this.values;
+    this.keys = new long[capacity];
+    this.values = new int[capacity];
+    int mask = capacity - 1;
+    for (int i = 0; i < oldKeys.length; i++) {
+      if (oldValues[i] != 0) {
+        int slot = hash(oldKeys[i]) & mask;
+        while (this.values[slot] != 0) {
+          slot = (slot + 1) & mask;
+        }
+        this.keys[slot] = oldKeys[i];
+        this.values[slot] = oldValues[i];
+      }
+    }
+  }
+
+  private static int hash(long key) {
+    long h = key * 0x9E3779B97F4A7C15L;
+    return (int) (h ^ (h >>> 32));
+  }
+}
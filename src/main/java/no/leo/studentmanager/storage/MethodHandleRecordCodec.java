@@ -0,0 +1,204 @@
+package no.leo.studentmanager.storage;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Executable;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Parameter;
+
+/**
+ * A codec built once per model class from its Jackson annotations.
+ * <p>
+ * Each column is read through a getter handle for the {@code @JsonProperty} field of the
+ * same name. Instances are built by the {@code @JsonCreator} constructor or factory, whose
+ * handle is adapted to take the row itself: every parameter is fed by an array-element
+ * getter for its column, so no argument array or map is created. Values are coerced to the
+ * parameter types as Jackson's {@code convertValue} would: null becomes the zero value of a
+ * primitive, numbers and numeric strings become the parameter's number type, and numbers
+ * and booleans become strings. Values that already have the parameter's type pass through
+ * after a single type check.
+ *
+ * @param <T> the model type
+ */
+class MethodHandleRecordCodec<T> implements RecordCodec<T> {
+  private static final MethodHandle COERCE;
+
+  static {
+    try {
+      COERCE = MethodHandles.lookup().findStatic(MethodHandleRecordCodec.class, "coerce",
+          MethodType.methodType(Object.class, Object.class, Class.class, Object.class));
+    } catch (ReflectiveOperationException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+  private final MethodHandle[] getters;
+  private final MethodHandle creator;
+
+  /**
+   * Builds the codec.
+   *
+   * @param modelClass the model class
+   * @param layout     the column layout of the rows
+   * @throws IllegalArgumentException if the model does not have a field for every column
+   *                                  or a creator taking exactly the columns
+   */
+  MethodHandleRecordCodec(Class<T> modelClass, RecordLayout layout) {
+    try {
+      MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(modelClass,
+          MethodHandles.lookup());
+      this.getters = new MethodHandle[layout.size()];
+      for (int column = 0; column < layout.size(); column++) {
+        Field field = findField(modelClass, layout.getColumn(column));
+        this.getters[column] = lookup.unreflectGetter(field)
+            .asType(MethodType.methodType(Object.class, Object.class));
+      }
+      this.creator = adaptCreator(lookup, findCreator(modelClass), layout);
+    } catch (IllegalAccessException e) {
+      throw new IllegalArgumentException("Cannot access " + modelClass.getName(), e);
+    }
+  }
+
+  @Override
+  public Object[] toRow(T record) {
+    Object[] row = new Object[this.getters.length];
+    try {
+      for (int column = 0; column < this.getters.length; column++) {
+        row[column] = this.getters[column].invokeExact((Object) record);
+      }
+    } catch (Throwable e) {
+      throw new IllegalStateException("Could not read record", e);
+    }
+    return row;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public T fromRow(Object[] row) {
+    try {
+      return (T) this.creator.invokeExact(row);
+    } catch (Throwable e) {
+      throw new IllegalStateException("Could not build record", e);
+    }
+  }
+
+  private static Field findField(Class<?> type, String column) {
+    for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+      for (Field field : c.getDeclaredFields()) {
+        JsonProperty property = field.getAnnotation(JsonProperty.class);
+        if (property != null && property.value().equals(column)
+            && !Modifier.isStatic(field.getModifiers())) {
+          return field;
+        }
+      }
+    }
+    throw new IllegalArgumentException("No field for column " + column + " in " + type.getName());
+  }
+
+  private static Executable findCreator(Class<?> type) {
+    for (Constructor<?> constructor : type.getDeclaredConstructors()) {
+      if (constructor.isAnnotationPresent(JsonCreator.class)) {
+        return constructor;
+      }
+    }
+    for (Method method : type.getDeclaredMethods()) {
+      if (method.isAnnotationPresent(JsonCreator.class) && Modifier.isStatic(method.getModifiers())
+          && method.getReturnType() == type) {
+        return method;
+      }
+    }
+    throw new IllegalArgumentException("No @JsonCreator in " + type.getName());
+  }
+
+  /**
+   * Turns the creator into a handle of type {@code (Object[])Object} that picks each
+   * argument from its column of the row.
+   */
+  private static MethodHandle adaptCreator(MethodHandles.Lookup lookup, Executable creator,
+                                           RecordLayout layout) throws IllegalAccessException {
+    MethodHandle handle = creator instanceof Constructor<?> constructor
+        ? lookup.unreflectConstructor(constructor)
+        : lookup.unreflect((Method) creator);
+
+    Parameter[] parameters = creator.getParameters();
+    if (parameters.length != layout.size()) {
+      throw new IllegalArgumentException("Creator of " + creator.getDeclaringClass().getName()
+          + " does not take every column");
+    }
+    MethodHandle element = MethodHandles.arrayElementGetter(Object[].class);
+    MethodHandle[] filters = new MethodHandle[parameters.length];
+    boolean[] covered = new boolean[layout.size()];
+    for (int i = 0; i < parameters.length; i++) {
+      JsonProperty property = parameters[i].getAnnotation(JsonProperty.class);
+      int column = property != null ? layout.indexOf(property.value()) : -1;
+      if (column < 0 || covered[column]) {
+        throw new IllegalArgumentException("Creator parameter " + i + " of "
+            + creator.getDeclaringClass().getName() + " is not a separate column");
+      }
+      covered[column] = true;
+
+      Class<?> type = parameters[i].getType();
+      Object zero = type.isPrimitive() ? zeroValue(type) : null;
+      Class<?> boxed = zero != null ? zero.getClass() : type;
+      MethodHandle value = MethodHandles.filterReturnValue(
+          MethodHandles.insertArguments(element, 1, column),
+          MethodHandles.insertArguments(COERCE, 1, boxed, zero));
+      filters[i] = value.asType(MethodType.methodType(type, Object[].class));
+    }
+
+    MethodHandle fromColumns = MethodHandles.filterArguments(handle, 0, filters);
+    return MethodHandles.permuteArguments(fromColumns,
+            MethodType.methodType(handle.type().returnType(), Object[].class),
+            new int[parameters.length])
+        .asType(MethodType.methodType(Object.class, Object[].class));
+  }
+
+  /**
+   * Converts a column value to a (boxed) parameter type. Values that cannot be converted
+   * are returned as they are, and fail the cast to the parameter type.
+   */
+  private static Object coerce(Object value, Class<?> type, Object zero) {
+    if (value == null) {
+      return zero;
+    }
+    if (type.isInstance(value)) {
+      return value;
+    }
+    if (type == String.class) {
+      return value instanceof Number || value instanceof Boolean ? value.toString() : value;
+    }
+    if (value instanceof String text) {
+      String trimmed = text.trim();
+      if (type == Integer.class) {
+        return Integer.parseInt(trimmed);
+      } else if (type == Long.class) {
+        return Long.parseLong(trimmed);
+      } else if (type == Double.class) {
+        return Double.parseDouble(trimmed);
+      }
+    } else if (value instanceof Number number) {
+      if (type == Integer.class) {
+        return number.intValue();
+      } else if (type == Long.class) {
+        return number.longValue();
+      } else if (type == Double.class) {
+        return number.doubleValue();
+      }
+    }
+    return value;
+  }
+
+  private static Object zeroValue(Class<?> type) {
+    try {
+      return MethodHandles.zero(type).invoke();
+    } catch (Throwable e) {
+      throw new IllegalArgumentException("No zero value for " + type, e);
+    }
+  }
+}
@@ -0,0 +1,47 @@
+package no.leo.studentmanager.storage;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Converts between model objects and the rows a {@link RecordStore} holds.
+ *
+ * @param <T> the model type
+ */
+public interface RecordCodec<T> {
+  /**
+   * Reads the column values of a model object into a new row.
+   *
+   * @param record the model object
+   * @return a new row in the codec's layout
+   */
+  Object[] toRow(T record);
+
+  /**
+   * Builds a model object from a row.
+   *
+   * @param row the row
+   * @return a new model object
+   */
+  T fromRow(Object[] row);
+
+  /**
+   * Creates the codec for a model class. Models whose columns are {@code @JsonProperty}
+   * fields and that have a {@code @JsonCreator} taking every column get a codec that reads
+   * and constructs them directly through method handles; any other model falls back to
+   * converting through Jackson.
+   *
+   * @param modelClass   the model class
+   * @param layout       the column layout of the rows
+   * @param objectMapper the mapper used by the fallback codec
+   * @param <T>          the model type
+   * @return a codec for the model class
+   */
+  static <T> RecordCodec<T> forModel(Class<T> modelClass, RecordLayout layout,
+                                     ObjectMapper objectMapper) {
+    try {
+      return new MethodHandleRecordCodec<>(modelClass, layout);
+    } catch (IllegalArgumentException e) {
+      return new JacksonRecordCodec<>(modelClass, layout, objectMapper);
+    }
+  }
+}
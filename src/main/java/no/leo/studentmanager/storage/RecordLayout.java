@@ -0,0 +1,98 @@
+package no.leo.studentmanager.storage;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The column layout of a table's rows, taken from the {@code "definitions"} of the table
+ * definition. A row is an {@code Object[]} holding one value per column in layout order,
+ * which is far smaller than a map with a key per field.
+ */
+public class RecordLayout {
+  private final String[] columns;
+  private final Map<String, Integer> positions = new HashMap<>();
+  private final int pkColumn;
+
+  /**
+   * Creates the layout of the given table.
+   *
+   * @param definition the table definition from {@code table_definitions.json}
+   */
+  @SuppressWarnings("unchecked")
+  public RecordLayout(Map<String, Object> definition) {
+    Map<String, Object> definitions = (Map<String, Object>) definition.get("definitions");
+    this.columns = definitions.keySet().toArray(new String[0]);
+    for (int i = 0; i < this.columns.length; i++) {
+      this.positions.put(this.columns[i], i);
+    }
+    this.pkColumn = this.indexOf((String) definition.getOrDefault("pk", "id"));
+  }
+
+  /**
+   * Returns the number of columns.
+   *
+   * @return the column count
+   */
+  public int size() {
+    return this.columns.length;
+  }
+
+  /**
+   * Returns the name of a column.
+   *
+   * @param column the position of the column
+   * @return the column name
+   */
+  public String getColumn(int column) {
+    return this.columns[column];
+  }
+
+  /**
+   * Returns the position of a column.
+   *
+   * @param column the column name
+   * @return the position of the column, or -1 if the table has no such column
+   */
+  public int indexOf(String column) {
+    Integer position = this.positions.get(column);
+    return position != null ? position : -1;
+  }
+
+  /**
+   * Returns the position of the primary key column.
+   *
+   * @return the position of the primary key, or -1 if it is not a declared column
+   */
+  public int getPkColumn() {
+    return this.pkColumn;
+  }
+
+  /**
+   * Converts a record to a row. Fields that are not declared columns are dropped.
+   *
+   * @param record the record, keyed by column name
+   * @return a new row
+   */
+  public Object[] toRow(Map<String, Object> record) {
+    Object[] row = new Object[this.columns.length];
+    for (int i = 0; i < this.columns.length; i++) {
+      row[i] = record.get(this.columns[i]);
+    }
+    return row;
+  }
+
+  /**
+   * Converts a row back to a record keyed by column name.
+   *
+   * @param row the row
+   * @return a new map with one entry per column, in layout order
+   */
+  public Map<String, Object> toMap(Object[] row) {
+    Map<String, Object> record = new LinkedHashMap<>(this.columns.length * 4 / 3 + 1);
+    for (int i = 0; i < this.columns.length; i++) {
+      record.put(this.columns[i], row[i]);
+    }
+    return record;
+  }
+}
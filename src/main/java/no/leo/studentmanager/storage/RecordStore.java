@@ -0,0 +1,304 @@
+package no.leo.studentmanager.storage;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.Set;
+
+/**
+ * The rows of one table, keyed by their int primary key.
+ * <p>
+ * IDs and rows are kept in two dense arrays, in insertion order; an open-addressing hash
+ * table with linear probing maps an ID to its position in those arrays. Lookups neither box
+ * the ID nor allocate, and iterating by position walks plain arrays. Deleting moves the last
+ * row into the freed position and shifts following probe entries back, so no tombstones are
+ * left behind. A bitmap of the IDs keeps them in key order as well, for paging through
+ * the rows without sorting them.
+ * <p>
+ * Rows are treated as immutable: changing a record stores a new row. This class is not
+ * thread-safe; the owning service holds its write lock to change the store and its read
+ * lock to read it, and only hands out rows, never the store itself.
+ */
+public class RecordStore {
+  private static final int MIN_CAPACITY = 16;
+
+  private final RecordLayout layout;
+  private int[] slots;
+  private int[] ids;
+  private Object[][] rows;
+  private int size;
+  private final RoaringBitmap keys = new RoaringBitmap();
+
+  /**
+   * Creates an empty store.
+   *
+   * @param layout the column layout of the rows
+   */
+  public RecordStore(RecordLayout layout) {
+    this.layout = layout;
+    this.slots = new int[MIN_CAPACITY * 2];
+    this.ids = new int[MIN_CAPACITY];
+    this.rows = new Object[MIN_CAPACITY][];
+  }
+
+  /**
+   * Receives the rows of a store one at a time.
+   */
+  @FunctionalInterface
+  public interface RowVisitor {
+    /**
+     * Called for each row.
+     *
+     * @param id  the row's ID
+     * @param row the row
+     */
+    void visit(int id, Object[] row);
+  }
+
+  public RecordLayout getLayout() {
+    return layout;
+  }
+
+  /**
+   * Returns the number of rows.
+   *
+   * @return the row count
+   */
+  public int size() {
+    return this.size;
+  }
+
+  /**
+   * Returns the row with the given ID.
+   *
+   * @param id the row ID
+   * @return the row, or null if there is none
+   */
+  public Object[] get(int id) {
+    int slot = this.findSlot(id);
+    return slot < 0 ? null : this.rows[this.slots[slot] - 1];
+  }
+
+  /**
+   * Checks whether a row with the given ID exists.
+   *
+   * @param id the row ID
+   * @return true if the row exists
+   */
+  public boolean contains(int id) {
+    return this.findSlot(id) >= 0;
+  }
+
+  /**
+   * Stores a row, replacing any row with the same ID.
+   *
+   * @param id  the row ID
+   * @param row the row
+   * @return the replaced row, or null if there was none
+   */
+  public Object[] put(int id, Object[] row) {
+    int mask = this.slots.length - 1;
+    for (int slot = hash(id) & mask; ; slot = (slot + 1) & mask) {
+      int position = this.slots[slot] - 1;
+      if (position < 0) {
+        if (this.size == this.ids.length) {
+          this.grow();
+          return this.put(id, row);
+        }
+        this.ids[this.size] = id;
+        this.rows[this.size] = row;
+        this.keys.add(id);
+        this.slots[slot] = ++this.size;
+        return null;
+      }
+      if (this.ids[position] == id) {
+        Object[] previous = this.rows[position];
+        this.rows[position] = row;
+        return previous;
+      }
+    }
+  }
+
+  /**
+   * Removes the row with the given ID.
+   *
+   * @param id the row ID
+   * @return the removed row, or null if there was none
+   */
+  public Object[] remove(int id) {
+    int slot = this.findSlot(id);
+    if (slot < 0) {
+      return null;
+    }
+    int position = this.slots[slot] - 1;
+    Object[] removed = this.rows[position];
+    this.clearSlot(slot);
+    this.keys.remove(id);
+
+    int last = --this.size;
+    if (position != last) {
+      this.ids[position] = this.ids[last];
+      this.rows[position] = this.rows[last];
+      this.slots[this.findSlot(this.ids[position])] = position + 1;
+    }
+    this.rows[last] = null;
+    return removed;
+  }
+
+  /**
+   * Returns the ID stored at a position, for allocation-free iteration from 0 to
+   * {@link #size()}.
+   *
+   * @param position the position, between 0 and {@code size() - 1}
+   * @return the ID at that position
+   */
+  public int idAt(int position) {
+    return this.ids[position];
+  }
+
+  /**
+   * Returns the row stored at a position.
+   *
+   * @param position the position, between 0 and {@code size() - 1}
+   * @return the row at that position
+   */
+  public Object[] rowAt(int position) {
+    return this.rows[position];
+  }
+
+  /**
+   * Returns the IDs of all rows.
+   *
+   * @return a new bitmap of IDs
+   */
+  public RoaringBitmap ids() {
+    return this.keys.copy();
+  }
+
+  /**
+   * Returns an iterator over the IDs from the given one upwards, in ascending order. The
+   * iterator must not be used after the store is modified.
+   *
+   * @param from the lowest ID to return
+   * @return a new iterator
+   */
+  public PrimitiveIterator.OfInt idsFrom(int from) {
+    return this.keys.iterator(from);
+  }
+
+  /**
+   * Calls the visitor for every row, in storage order.
+   *
+   * @param visitor the visitor
+   */
+  public void forEach(RowVisitor visitor) {
+    for (int i = 0; i < this.size; i++) {
+      visitor.visit(this.ids[i], this.rows[i]);
+    }
+  }
+
+  /**
+   * Returns the rows as they are now, as records keyed by the string form of their ID, the
+   * shape snapshot formats write. Only the ID and row references are copied; rows are never
+   * changed in place, so the result can be iterated without a lock while the store keeps
+   * changing. Records are converted as the result is iterated.
+   *
+   * @return a read-only copy of this store
+   */
+  public Map<String, Map<String, Object>> copyAsMap() {
+    RecordLayout layout = this.layout;
+    int size = this.size;
+    int[] ids = Arrays.copyOf(this.ids, size);
+    Object[][] rows = Arrays.copyOf(this.rows, size);
+    return new AbstractMap<>() {
+      @Override
+      public Set<Entry<String, Map<String, Object>>> entrySet() {
+        return new AbstractSet<>() {
+          @Override
+          public int size() {
+            return size;
+          }
+
+          @Override
+          public Iterator<Entry<String, Map<String, Object>>> iterator() {
+            return new Iterator<>() {
+              private int position;
+
+              @Override
+              public boolean hasNext() {
+                return this.position < size;
+              }
+
+              @Override
+              public Entry<String, Map<String, Object>> next() {
+                if (!this.hasNext()) {
+                  throw new NoSuchElementException();
+                }
+                int current = this.position++;
+                return new SimpleImmutableEntry<>(String.valueOf(ids[current]),
+                    layout.toMap(rows[current]));
+              }
+            };
+          }
+        };
+      }
+    };
+  }
+
+  private int findSlot(int id) {
+    int mask = this.slots.length - 1;
+    for (int slot = hash(id) & mask; ; slot = (slot + 1) & mask) {
+      int position = this.slots[slot] - 1;
+      if (position < 0) {
+        return -1;
+      }
+      if (this.ids[position] == id) {
+        return slot;
+      }
+    }
+  }
+
+  /**
+   * Empties a slot and moves later entries of the same probe sequence back into it, so
+   * lookups never stop early at the gap.
+   */
+  private void clearSlot(int slot) {
+    int mask = this.slots.length - 1;
+    int gap = slot;
+    for (int next = (gap + 1) & mask; this.slots[next] != 0; next = (next + 1) & mask) {
+      int home = hash(this.ids[this.slots[next] - 1]) & mask;
+      boolean movable = gap <= next
+          ? home <= gap || home > next
+          : home <= gap && home > next;
+      if (movable) {
+        this.slots[gap] = this.slots[next];
+        gap = next;
+      }
+    }
+    this.slots[gap] = 0;
+  }
+
+  private void grow() {
+    int capacity = this.ids.length * 2;
+    this.ids = Arrays.copyOf(this.ids, capacity);
+    this.rows = Arrays.copyOf(this.rows, capacity);
+    this.slots = new int[capacity * 2];
+    int mask = this.slots.length - 1;
+    for (int position = 0; position < this.size; position++) {
+      int slot = hash(this.ids[position]) & mask;
+      while (this.slots[slot] != 0) {
+        slot = (slot + 1) & mask;
+      }
+      this.slots[slot] = position + 1;
+    }
+  }
+
+  private static int hash(int id) {
+    int h = id * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+}
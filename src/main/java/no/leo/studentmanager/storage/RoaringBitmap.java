@@ -0,0 +1,677 @@
+package no.leo.studentmanager.storage;
+
+import com.fasterxml.jackson.annotation.JsonValue;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.function.IntConsumer;
+
+/**
+ * A compressed set of ints in the style of Roaring bitmaps.
+ * <p>
+ * Values are split into their high and low 16 bits. Each distinct high half owns a
+ * container holding the low halves: a sorted {@code char[]} while it holds at most 4096
+ * values, and a 65536-bit bitmap once it holds more. Sparse sets therefore cost two bytes
+ * per value and dense sets one bit per possible value, and {@link #and}, {@link #or} and
+ * {@link #andNot} work container by container with word-wide operations where both sides
+ * are dense.
+ * <p>
+ * Values are treated as unsigned, so iteration is in ascending order for non-negative
+ * values such as record IDs. This class is not thread-safe.
+ */
+public class RoaringBitmap {
+  private static final int ARRAY_MAX = 4096;
+
+  private char[] keys = new char[4];
+  private Container[] containers = new Container[4];
+  private int size;
+
+  /**
+   * Creates a bitmap holding the given values.
+   *
+   * @param values the values
+   * @return a new bitmap
+   */
+  public static RoaringBitmap of(int... values) {
+    RoaringBitmap bitmap = new RoaringBitmap();
+    for (int value : values) {
+      bitmap.add(value);
+    }
+    return bitmap;
+  }
+
+  /**
+   * Adds a value.
+   *
+   * @param value the value
+   * @return true if the value was not in the set before
+   */
+  public boolean add(int value) {
+    char high = (char) (value >>> 16);
+    int i = this.find(high);
+    if (i < 0) {
+      i = -i - 1;
+      this.insert(i, high, new ArrayContainer());
+    }
+    Container container = this.containers[i];
+    int before = container.cardinality();
+    this.containers[i] = container.add((char) value);
+    return this.containers[i].cardinality() > before;
+  }
+
+  /**
+   * Removes a value.
+   *
+   * @param value the value
+   * @return true if the value was in the set
+   */
+  public boolean remove(int value) {
+    int i = this.find((char) (value >>> 16));
+    if (i < 0) {
+      return false;
+    }
+    Container container = this.containers[i];
+    int before = container.cardinality();
+    Container after = container.remove((char) value);
+    if (after.cardinality() == 0) {
+      this.delete(i);
+    } else {
+      this.containers[i] = after;
+    }
+    return after.cardinality() < before;
+  }
+
+  /**
+   * Checks whether a value is in the set.
+   *
+   * @param value the value
+   * @return true if the set contains the value
+   */
+  public boolean contains(int value) {
+    int i = this.find((char) (value >>> 16));
+    return i >= 0 && this.containers[i].contains((char) value);
+  }
+
+  /**
+   * Returns the number of values in the set.
+   *
+   * @return the cardinality
+   */
+  public int cardinality() {
+    int cardinality = 0;
+    for (int i = 0; i < this.size; i++) {
+      cardinality += this.containers[i].cardinality();
+    }
+    return cardinality;
+  }
+
+  public boolean isEmpty() {
+    return this.size == 0;
+  }
+
+  /**
+   * Returns the intersection of this set and another.
+   *
+   * @param other the other set
+   * @return a new bitmap with the values in both sets
+   */
+  public RoaringBitmap and(RoaringBitmap other) {
+    RoaringBitmap result = new RoaringBitmap();
+    int i = 0;
+    int j = 0;
+    while (i < this.size && j < other.size) {
+      if (this.keys[i] < other.keys[j]) {
+        i++;
+      } else if (this.keys[i] > other.keys[j]) {
+        j++;
+      } else {
+        Container container = this.containers[i].and(other.containers[j]);
+        if (container.cardinality() > 0) {
+          result.append(this.keys[i], container);
+        }
+        i++;
+        j++;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns the union of this set and another.
+   *
+   * @param other the other set
+   * @return a new bitmap with the values in either set
+   */
+  public RoaringBitmap or(RoaringBitmap other) {
+    RoaringBitmap result = new RoaringBitmap();
+    int i = 0;
+    int j = 0;
+    while (i < this.size || j < other.size) {
+      if (j == other.size || (i < this.size && this.keys[i] < other.keys[j])) {
+        result.append(this.keys[i], this.containers[i].copy());
+        i++;
+      } else if (i == this.size || this.keys[i] > other.keys[j]) {
+        result.append(other.keys[j], other.containers[j].copy());
+        j++;
+      } else {
+        result.append(this.keys[i], this.containers[i].or(other.containers[j]));
+        i++;
+        j++;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns the values of this set that are not in another.
+   *
+   * @param other the set of values to leave out
+   * @return a new bitmap with the difference
+   */
+  public RoaringBitmap andNot(RoaringBitmap other) {
+    RoaringBitmap result = new RoaringBitmap();
+    int j = 0;
+    for (int i = 0; i < this.size; i++) {
+      while (j < other.size && other.keys[j] < this.keys[i]) {
+        j++;
+      }
+      Container container = j < other.size && other.keys[j] == this.keys[i]
+          ? this.containers[i].andNot(other.containers[j])
+          : this.containers[i].copy();
+      if (container.cardinality() > 0) {
+        result.append(this.keys[i], container);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns the values of a universe that are not in this set, e.g. every record ID of a
+   * table that does not match a filter.
+   *
+   * @param universe all values that could be in the set
+   * @return a new bitmap with the complement within the universe
+   */
+  public RoaringBitmap not(RoaringBitmap universe) {
+    return universe.andNot(this);
+  }
+
+  /**
+   * Returns a copy that can be modified independently.
+   *
+   * @return a new bitmap with the same values
+   */
+  public RoaringBitmap copy() {
+    RoaringBitmap copy = new RoaringBitmap();
+    for (int i = 0; i < this.size; i++) {
+      copy.append(this.keys[i], this.containers[i].copy());
+    }
+    return copy;
+  }
+
+  /**
+   * Calls the consumer for every value, in ascending unsigned order.
+   *
+   * @param consumer the consumer
+   */
+  public void forEach(IntConsumer consumer) {
+    for (int i = 0; i < this.size; i++) {
+      this.containers[i].forEach(this.keys[i] << 16, consumer);
+    }
+  }
+
+  /**
+   * Returns an iterator over the values, in ascending unsigned order. The values of one
+   * container are decoded at a time.
+   *
+   * @return a new iterator
+   */
+  public PrimitiveIterator.OfInt iterator() {
+    return this.iterator(0);
+  }
+
+  /**
+   * Returns an iterator over the values from the given one upwards, in ascending unsigned
+   * order. Containers below the starting value are skipped without being decoded, so resuming
+   * an iteration costs a binary search rather than a walk from the start.
+   *
+   * @param from the lowest value to return
+   * @return a new iterator
+   */
+  public PrimitiveIterator.OfInt iterator(int from) {
+    int found = this.find((char) (from >>> 16));
+    int first = found >= 0 ? found : -found - 1;
+    return new PrimitiveIterator.OfInt() {
+      private int container = first;
+      private int next;
+      private int[] buffer = new int[0];
+      private int buffered;
+
+      @Override
+      public boolean hasNext() {
+        while (this.next == this.buffered) {
+          if (this.container == RoaringBitmap.this.size) {
+            return false;
+          }
+          Container current = RoaringBitmap.this.containers[this.container];
+          if (this.buffer.length < current.cardinality()) {
+            this.buffer = new int[current.cardinality()];
+          }
+          this.buffered =
+              current.toArray(RoaringBitmap.this.keys[this.container] << 16, this.buffer, 0);
+          this.next = 0;
+          if (this.container == found) {
+            // Values within one container share their high bits, so they compare as signed
+            while (this.next < this.buffered && this.buffer[this.next] < from) {
+              this.next++;
+            }
+          }
+          this.container++;
+        }
+        return true;
+      }
+
+      @Override
+      public int nextInt() {
+        if (!this.hasNext()) {
+          throw new NoSuchElementException();
+        }
+        return this.buffer[this.next++];
+      }
+    };
+  }
+
+  /**
+   * Returns the values as a sorted array. This is also how bitmaps are written to JSON.
+   *
+   * @return a new array with every value
+   */
+  @JsonValue
+  public int[] toArray() {
+    int[] values = new int[this.cardinality()];
+    int position = 0;
+    for (int i = 0; i < this.size; i++) {
+      position = this.containers[i].toArray(this.keys[i] << 16, values, position);
+    }
+    return values;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    return this == o || (o instanceof RoaringBitmap other
+        && Arrays.equals(this.toArray(), other.toArray()));
+  }
+
+  @Override
+  public int hashCode() {
+    return Arrays.hashCode(this.toArray());
+  }
+
+  @Override
+  public String toString() {
+    return "RoaringBitmap{cardinality=" + this.cardinality() + ", containers=" + this.size + '}';
+  }
+
+  private int find(char high) {
+    return Arrays.binarySearch(this.keys, 0, this.size, high);
+  }
+
+  private void insert(int i, char high, Container container) {
+    if (this.size == this.keys.length) {
+      this.keys = Arrays.copyOf(this.keys, this.size * 2);
+      this.containers = Arrays.copyOf(this.containers, this.size * 2);
+    }
+    System.arraycopy(this.keys, i, this.keys, i + 1, this.size - i);
+    System.arraycopy(this.containers, i, this.containers, i + 1, this.size - i);
+    this.keys[i] = high;
+    this.containers[i] = container;
+    this.size++;
+  }
+
+  private void append(char high, Container container) {
+    this.insert(this.size, high, container);
+  }
+
+  private void delete(int i) {
+    System.arraycopy(this.keys, i + 1, this.keys, i, this.size - i - 1);
+    System.arraycopy(this.containers, i + 1, this.containers, i, this.size - i - 1);
+    this.containers[--this.size] = null;
+  }
+
+  /**
+   * The low 16 bits of the values sharing one high half. Operations that change the
+   * cardinality return the container to use from then on, which may be of the other kind.
+   */
+  private abstract static class Container {
+    abstract Container add(char value);
+
+    abstract Container remove(char value);
+
+    abstract boolean contains(char value);
+
+    abstract int cardinality();
+
+    abstract Container and(Container other);
+
+    abstract Container or(Container other);
+
+    abstract Container andNot(Container other);
+
+    abstract Container copy();
+
+    abstract void forEach(int high, IntConsumer consumer);
+
+    abstract int toArray(int high, int[] out, int position);
+  }
+
+  /**
+   * A sparse container: the values in a sorted array.
+   */
+  private static final class ArrayContainer extends Container {
+    private char[] values;
+    private int cardinality;
+
+    ArrayContainer() {
+      this(new char[4], 0);
+    }
+
+    ArrayContainer(char[] values, int cardinality) {
+      this.values = values;
+      this.cardinality = cardinality;
+    }
+
+    @Override
+    Container add(char value) {
+      int i = Arrays.binarySearch(this.values, 0, this.cardinality, value);
+      if (i >= 0) {
+        return this;
+      }
+      if (this.cardinality == ARRAY_MAX) {
+        return this.toBitmap().add(value);
+      }
+      i = -i - 1;
+      if (this.cardinality == this.values.length) {
+        this.values = Arrays.copyOf(this.values, Math.min(ARRAY_MAX, this.cardinality * 2));
+      }
+      System.arraycopy(this.values, i, this.values, i + 1, this.cardinality - i);
+      this.values[i] = value;
+      this.cardinality++;
+      return this;
+    }
+
+    @Override
+    Container remove(char value) {
+      int i = Arrays.binarySearch(this.values, 0, this.cardinality, value);
+      if (i >= 0) {
+        System.arraycopy(this.values, i + 1, this.values, i, this.cardinality - i - 1);
+        this.cardinality--;
+      }
+      return this;
+    }
+
+    @Override
+    boolean contains(char value) {
+      return Arrays.binarySearch(this.values, 0, this.cardinality, value) >= 0;
+    }
+
+    @Override
+    int cardinality() {
+      return this.cardinality;
+    }
+
+    @Override
+    Container and(Container other) {
+      char[] result = new char[this.cardinality];
+      int count = 0;
+      if (other instanceof ArrayContainer array) {
+        int i = 0;
+        int j = 0;
+        while (i < this.cardinality && j < array.cardinality) {
+          if (this.values[i] < array.values[j]) {
+            i++;
+          } else if (this.values[i] > array.values[j]) {
+            j++;
+          } else {
+            result[count++] = this.values[i];
+            i++;
+            j++;
+          }
+        }
+      } else {
+        for (int i = 0; i < this.cardinality; i++) {
+          if (other.contains(this.values[i])) {
+            result[count++] = this.values[i];
+          }
+        }
+      }
+      return new ArrayContainer(result, count);
+    }
+
+    @Override
+    Container or(Container other) {
+      if (other instanceof BitmapContainer) {
+        return other.or(this);
+      }
+      ArrayContainer array = (ArrayContainer) other;
+      if (this.cardinality + array.cardinality > ARRAY_MAX) {
+        BitmapContainer bitmap = this.toBitmap();
+        for (int j = 0; j < array.cardinality; j++) {
+          bitmap.set(array.values[j]);
+        }
+        return bitmap.cardinality() <= ARRAY_MAX ? bitmap.toArrayContainer() : bitmap;
+      }
+      char[] result = new char[this.cardinality + array.cardinality];
+      int count = 0;
+      int i = 0;
+      int j = 0;
+      while (i < this.cardinality || j < array.cardinality) {
+        if (j == array.cardinality
+            || (i < this.cardinality && this.values[i] < array.values[j])) {
+          result[count++] = this.values[i++];
+        } else if (i == this.cardinality || this.values[i] > array.values[j]) {
+          result[count++] = array.values[j++];
+        } else {
+          result[count++] = this.values[i];
+          i++;
+          j++;
+        }
+      }
+      return new ArrayContainer(result, count);
+    }
+
+    @Override
+    Container andNot(Container other) {
+      char[] result = new char[this.cardinality];
+      int count = 0;
+      for (int i = 0; i < this.cardinality; i++) {
+        if (!other.contains(this.values[i])) {
+          result[count++] = this.values[i];
+        }
+      }
+      return new ArrayContainer(result, count);
+    }
+
+    @Override
+    Container copy() {
+      return new ArrayContainer(Arrays.copyOf(this.values, Math.max(this.cardinality, 4)),
+          this.cardinality);
+    }
+
+    @Override
+    void forEach(int high, IntConsumer consumer) {
+      for (int i = 0; i < this.cardinality; i++) {
+        consumer.accept(high | this.values[i]);
+      }
+    }
+
+    @Override
+    int toArray(int high, int[] out, int position) {
+      for (int i = 0; i < this.cardinality; i++) {
+        out[position++] = high | this.values[i];
+      }
+      return position;
+    }
+
+    private BitmapContainer toBitmap() {
+      BitmapContainer bitmap = new BitmapContainer();
+      for (int i = 0; i < this.cardinality; i++) {
+        bitmap.set(this.values[i]);
+      }
+      return bitmap;
+    }
+  }
+
+  /**
+   * A dense container: one bit for each of the 65536 possible low halves.
+   */
+  private static final class BitmapContainer extends Container {
+    private final long[] words;
+    private int cardinality;
+
+    BitmapContainer() {
+      this(new long[1024], 0);
+    }
+
+    BitmapContainer(long[] words, int cardinality) {
+      this.words = words;
+      this.cardinality = cardinality;
+    }
+
+    void set(char value) {
+      long bit = 1L << value;
+      int word = value >>> 6;
+      if ((this.words[word] & bit) == 0) {
+        this.words[word] |= bit;
+        this.cardinality++;
+      }
+    }
+
+    @Override
+    Container add(char value) {
+      this.set(value);
+      return this;
+    }
+
+    @Override
+    Container remove(char value) {
+      long bit = 1L << value;
+      int word = value >>> 6;
+      if ((this.words[word] & bit) != 0) {
+        this.words[word] &= ~bit;
+        this.cardinality--;
+      }
+      return this.cardinality <= ARRAY_MAX ? this.toArrayContainer() : this;
+    }
+
+    @Override
+    boolean contains(char value) {
+      return (this.words[value >>> 6] & (1L << value)) != 0;
+    }
+
+    @Override
+    int cardinality() {
+      return this.cardinality;
+    }
+
+    @Override
+    Container and(Container other) {
+      if (other instanceof ArrayContainer) {
+        return other.and(this);
+      }
+      long[] otherWords = ((BitmapContainer) other).words;
+      long[] result = new long[1024];
+      int cardinality = 0;
+      for (int i = 0; i < result.length; i++) {
+        result[i] = this.words[i] & otherWords[i];
+        cardinality += Long.bitCount(result[i]);
+      }
+      BitmapContainer bitmap = new BitmapContainer(result, cardinality);
+      return cardinality <= ARRAY_MAX ? bitmap.toArrayContainer() : bitmap;
+    }
+
+    @Override
+    Container or(Container other) {
+      if (other instanceof ArrayContainer array) {
+        BitmapContainer result = (BitmapContainer) this.copy();
+        for (int j = 0; j < array.cardinality; j++) {
+          result.set(array.values[j]);
+        }
+        return result;
+      }
+      long[] otherWords = ((BitmapContainer) other).words;
+      long[] result = new long[1024];
+      int cardinality = 0;
+      for (int i = 0; i < result.length; i++) {
+        result[i] = this.words[i] | otherWords[i];
+        cardinality += Long.bitCount(result[i]);
+      }
+      return new BitmapContainer(result, cardinality);
+    }
+
+    @Override
+    Container andNot(Container other) {
+      long[] result = this.words.clone();
+      int cardinality = this.cardinality;
+      if (other instanceof ArrayContainer array) {
+        for (int j = 0; j < array.cardinality; j++) {
+          char value = array.values[j];
+          long bit = 1L << value;
+          if ((result[value >>> 6] & bit) != 0) {
+            result[value >>> 6] &= ~bit;
+            cardinality--;
+          }
+        }
+      } else {
+        long[] otherWords = ((BitmapContainer) other).words;
+        cardinality = 0;
+        for (int i = 0; i < result.length; i++) {
+          result[i] &= ~otherWords[i];
+          cardinality += Long.bitCount(result[i]);
+        }
+      }
+      BitmapContainer bitmap = new BitmapContainer(result, cardinality);
+      return cardinality <= ARRAY_MAX ? bitmap.toArrayContainer() : bitmap;
+    }
+
+    @Override
+    Container copy() {
+      return new BitmapContainer(this.words.clone(), this.cardinality);
+    }
+
+    @Override
+    void forEach(int high, IntConsumer consumer) {
+      for (int i = 0; i < this.words.length; i++) {
+        long word = this.words[i];
+        while (word != 0) {
+          consumer.accept(high | (i << 6) | Long.numberOfTrailingZeros(word));
+          word &= word - 1;
+        }
+      }
+    }
+
+    @Override
+    int toArray(int high, int[] out, int position) {
+      for (int i = 0; i < this.words.length; i++) {
+        long word = this.words[i];
+        while (word != 0) {
+          out[position++] = high | (i << 6) | Long.numberOfTrailingZeros(word);
+          word &= word - 1;
+        }
+      }
+      return position;
+    }
+
+    private ArrayContainer toArrayContainer() {
+      char[] values = new char[Math.max(this.cardinality, 4)];
+      int count = 0;
+      for (int i = 0; i < this.words.length; i++) {
+        long word = this.words[i];
+        while (word != 0) {
+          values[count++] = (char) ((i << 6) | Long.numberOfTrailingZeros(word));
+          word &= word - 1;
+        }
+      }
+      return new ArrayContainer(values, count);
+    }
+  }
+}
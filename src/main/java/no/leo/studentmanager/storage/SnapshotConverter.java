@@ -0,0 +1,99 @@
+package no.leo.studentmanager.storage;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Converts table snapshots between formats, e.g. from JSON to the compact binary encoding.
+ * <p>
+ * Only the snapshot is rewritten; log segments are format-independent and stay in place.
+ * Run it while no service has the database open:
+ * <pre>
+ * java no.leo.studentmanager.storage.SnapshotConverter &lt;db-dir&gt; &lt;json|bin&gt;
+ * </pre>
+ */
+public final class SnapshotConverter {
+  private SnapshotConverter() {
+  }
+
+  /**
+   * Rewrites a table's snapshot in the target format, replacing the existing snapshot.
+   *
+   * @param directory  the database directory
+   * @param definition the table definition from {@code table_definitions.json}
+   * @param target     the format to convert to
+   * @return true if a snapshot was converted, false if the table has no snapshot or is
+   * already in the target format
+   * @throws IOException if the snapshot could not be read or written
+   */
+  public static boolean convert(Path directory, Map<String, Object> definition,
+                                SnapshotFormat target) throws IOException {
+    String tableName = (String) definition.get("name");
+    SnapshotFormat source = SnapshotFiles.find(directory, tableName, target);
+    if (source == null || source.getExtension().equals(target.getExtension())) {
+      return false;
+    }
+
+    Map<String, Object> records = new LinkedHashMap<>();
+    Map<String, Object> snapshot = new HashMap<>();
+    snapshot.put("data", records);
+    String pk = (String) definition.getOrDefault("pk", "id");
+    try (InputStream in = Files.newInputStream(SnapshotFiles.path(directory, tableName, source))) {
+      source.read(in, definition, new SnapshotVisitor() {
+        @Override
+        public void lsn(long lsn) {
+          snapshot.put("lsn", lsn);
+        }
+
+        @Override
+        public void nextId(int nextId) {
+          snapshot.put("next_id", nextId);
+        }
+
+        @Override
+        public void record(Map<String, Object> record) {
+          records.put(String.valueOf(record.get(pk)), record);
+        }
+      });
+    }
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    target.write(out, snapshot, definition);
+    SnapshotFiles.write(directory, tableName, target, out.toByteArray());
+    return true;
+  }
+
+  /**
+   * Converts every table listed in {@code table_definitions.json}.
+   *
+   * @param args the database directory and the target format, {@code json} or {@code bin}
+   * @throws IOException if a snapshot could not be converted
+   */
+  @SuppressWarnings("unchecked")
+  public static void main(String[] args) throws IOException {
+    if (args.length != 2) {
+      System.out.println("Usage: SnapshotConverter <db-dir> <json|bin>");
+      return;
+    }
+    SnapshotFormat target = switch (args[1]) {
+      case "json" -> new JsonSnapshotFormat();
+      case "bin" -> new BinarySnapshotFormat();
+      default -> throw new IllegalArgumentException("Unknown format: " + args[1]);
+    };
+
+    Map<String, Object> root = new ObjectMapper()
+        .readValue(Paths.get("table_definitions.json").toFile(), Map.class);
+    for (Map<String, Object> table : (List<Map<String, Object>>) root.get("tables")) {
+      boolean converted = convert(Paths.get(args[0]), table, target);
+      System.out.println(table.get("name") + (converted ? ": converted" : ": unchanged"));
+    }
+  }
+}
@@ -0,0 +1,116 @@
+package no.leo.studentmanager.storage;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Locates and writes the snapshot files of a table, whatever format they are in.
+ * Snapshots are named {@code <table>.<extension>} inside the database directory.
+ */
+public final class SnapshotFiles {
+  private static final List<SnapshotFormat> KNOWN_FORMATS =
+      List.of(new JsonSnapshotFormat(), new BinarySnapshotFormat());
+
+  private SnapshotFiles() {
+  }
+
+  /**
+   * Returns the snapshot path of a table in the given format.
+   *
+   * @param directory the database directory
+   * @param tableName the table name
+   * @param format    the snapshot format
+   * @return the snapshot path
+   */
+  public static Path path(Path directory, String tableName, SnapshotFormat format) {
+    return directory.resolve(tableName + "." + format.getExtension());
+  }
+
+  /**
+   * Finds the format of the table's existing snapshot, looking for the preferred format first.
+   *
+   * @param directory the database directory
+   * @param tableName the table name
+   * @param preferred the format to look for first
+   * @return the format of the existing snapshot, or null if the table has none
+   */
+  public static SnapshotFormat find(Path directory, String tableName, SnapshotFormat preferred) {
+    List<SnapshotFormat> candidates = new ArrayList<>();
+    candidates.add(preferred);
+    candidates.addAll(KNOWN_FORMATS);
+    for (SnapshotFormat format : candidates) {
+      if (Files.exists(path(directory, tableName, format))) {
+        return format;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Writes a snapshot durably and atomically: the bytes go to a temporary file that is forced
+   * to disk and then moved over the target. Snapshots of the same table in other formats are
+   * removed afterwards, so a stale one can never be loaded in place of this one.
+   *
+   * @param directory the database directory
+   * @param tableName the table name
+   * @param format    the format the bytes are encoded in
+   * @param bytes     the encoded snapshot
+   * @throws IOException if the snapshot could not be written
+   */
+  public static void write(Path directory, String tableName, SnapshotFormat format, byte[] bytes)
+      throws IOException {
+    write(directory, tableName, format, out -> out.write(bytes));
+  }
+
+  /**
+   * Encodes a snapshot straight into its temporary file, without buffering it in memory,
+   * and then moves it into place like {@link #write(Path, String, SnapshotFormat, byte[])}.
+   *
+   * @param directory  the database directory
+   * @param tableName  the table name
+   * @param format     the format to encode the snapshot in
+   * @param snapshot   the table's data map
+   * @param definition the table definition from {@code table_definitions.json}
+   * @throws IOException if the snapshot could not be encoded or written
+   */
+  public static void write(Path directory, String tableName, SnapshotFormat format,
+                           Map<String, Object> snapshot, Map<String, Object> definition)
+      throws IOException {
+    write(directory, tableName, format, out -> format.write(out, snapshot, definition));
+  }
+
+  private static void write(Path directory, String tableName, SnapshotFormat format,
+                            Encoder encoder) throws IOException {
+    Path target = path(directory, tableName, format);
+    Path tmp = directory.resolve(target.getFileName() + ".tmp");
+    try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      OutputStream out = new BufferedOutputStream(Channels.newOutputStream(ch), 1 << 16);
+      encoder.encode(out);
+      out.flush();
+      ch.force(true);
+    }
+    Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+    for (SnapshotFormat other : KNOWN_FORMATS) {
+      if (!other.getExtension().equals(format.getExtension())) {
+        Files.deleteIfExists(path(directory, tableName, other));
+      }
+    }
+  }
+
+  @FunctionalInterface
+  private interface Encoder {
+    void encode(OutputStream out) throws IOException;
+  }
+}
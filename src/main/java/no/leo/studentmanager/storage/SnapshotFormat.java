@@ -0,0 +1,45 @@
+package no.leo.studentmanager.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+
+/**
+ * An on-disk encoding for table snapshots.
+ * <p>
+ * A snapshot is written from the table's data map: the records under {@code "data"} and
+ * the LSN of the last log entry it covers under {@code "lsn"}. Snapshots are read back
+ * record by record through a {@link SnapshotVisitor}; indices are rebuilt from the records
+ * as they arrive, so formats need not read them even if they store them.
+ */
+public interface SnapshotFormat {
+  /**
+   * Returns the file extension of snapshots in this format, without the dot.
+   *
+   * @return the file extension
+   */
+  String getExtension();
+
+  /**
+   * Encodes a snapshot.
+   *
+   * @param out        the stream to write to; not closed by this method
+   * @param snapshot   the table's data map
+   * @param definition the table definition from {@code table_definitions.json}
+   * @throws IOException if the snapshot could not be written
+   */
+  void write(OutputStream out, Map<String, Object> snapshot, Map<String, Object> definition)
+      throws IOException;
+
+  /**
+   * Decodes a snapshot, handing each record to the visitor as soon as it has been read.
+   *
+   * @param in         the stream to read from; not closed by this method
+   * @param definition the table definition from {@code table_definitions.json}
+   * @param visitor    receives the snapshot LSN, each record and progress updates
+   * @throws IOException if the snapshot could not be read or is malformed
+   */
+  void read(InputStream in, Map<String, Object> definition, SnapshotVisitor visitor)
+      throws IOException;
+}
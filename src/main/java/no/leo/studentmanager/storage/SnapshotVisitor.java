@@ -0,0 +1,41 @@
+package no.leo.studentmanager.storage;
+
+import java.util.Map;
+
+/**
+ * Receives the contents of a snapshot while it is being read, one record at a time, so the
+ * whole snapshot never has to be held in memory in an intermediate form.
+ */
+public interface SnapshotVisitor {
+  /**
+   * Called with the LSN of the last log entry the snapshot covers.
+   *
+   * @param lsn the snapshot LSN
+   */
+  void lsn(long lsn);
+
+  /**
+   * Called with the next free record ID stored in the snapshot. Not called for snapshots
+   * written before the ID sequence was persisted.
+   *
+   * @param nextId the next ID the table's sequence may hand out
+   */
+  default void nextId(int nextId) {
+  }
+
+  /**
+   * Called once for every record in the snapshot.
+   *
+   * @param record the record, keyed by column name
+   */
+  void record(Map<String, Object> record);
+
+  /**
+   * Called periodically while reading, and once more when the snapshot has been read.
+   *
+   * @param recordsRead the number of records read so far
+   * @param bytesRead   the number of bytes consumed so far
+   */
+  default void progress(long recordsRead, long bytesRead) {
+  }
+}
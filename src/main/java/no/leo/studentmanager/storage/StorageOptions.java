@@ -0,0 +1,202 @@
+package no.leo.studentmanager.storage;
+
+import java.time.Duration;
+
+/**
+ * Tunable settings for how a table is persisted.
+ * <p>
+ * Instances are mutable and meant to be configured once, before being handed to a service.
+ * The setters return {@code this} so options can be chained:
+ * <pre>{@code
+ * StorageOptions options = StorageOptions.defaults()
+ *     .setMaxLogBytes(16 * 1024 * 1024)
+ *     .setMaxLogAge(Duration.ofMinutes(1));
+ * }</pre>
+ */
+public class StorageOptions {
+  private long maxLogBytes = 4L * 1024 * 1024;
+  private Duration maxLogAge = Duration.ofMinutes(5);
+  private Duration checkpointInterval = Duration.ofSeconds(1);
+  private DurabilityMode durabilityMode = DurabilityMode.SYNC;
+  private Duration flushInterval = Duration.ofMillis(5);
+  private SnapshotFormat snapshotFormat = new JsonSnapshotFormat();
+  private LoadProgressListener loadProgressListener;
+  private Duration slowQueryThreshold = Duration.ofMillis(100);
+
+  /**
+   * Creates a new set of options with the default values.
+   *
+   * @return a fresh options instance
+   */
+  public static StorageOptions defaults() {
+    return new StorageOptions();
+  }
+
+  /**
+   * Returns the log size after which a checkpoint is taken.
+   *
+   * @return the threshold in bytes
+   */
+  public long getMaxLogBytes() {
+    return maxLogBytes;
+  }
+
+  /**
+   * Sets the log size after which a checkpoint is taken.
+   *
+   * @param maxLogBytes the threshold in bytes
+   * @return these options
+   */
+  public StorageOptions setMaxLogBytes(long maxLogBytes) {
+    this.maxLogBytes = maxLogBytes;
+    return this;
+  }
+
+  /**
+   * Returns how long the oldest un-checkpointed log entry may wait before a checkpoint is taken.
+   *
+   * @return the maximum log age
+   */
+  public Duration getMaxLogAge() {
+    return maxLogAge;
+  }
+
+  /**
+   * Sets how long the oldest un-checkpointed log entry may wait before a checkpoint is taken.
+   *
+   * @param maxLogAge the maximum log age
+   * @return these options
+   */
+  public StorageOptions setMaxLogAge(Duration maxLogAge) {
+    this.maxLogAge = maxLogAge;
+    return this;
+  }
+
+  /**
+   * Returns how often the background checkpointer checks the thresholds.
+   *
+   * @return the check interval
+   */
+  public Duration getCheckpointInterval() {
+    return checkpointInterval;
+  }
+
+  /**
+   * Sets how often the background checkpointer checks the thresholds.
+   *
+   * @param checkpointInterval the check interval
+   * @return these options
+   */
+  public StorageOptions setCheckpointInterval(Duration checkpointInterval) {
+    this.checkpointInterval = checkpointInterval;
+    return this;
+  }
+
+  /**
+   * Returns when log appends are forced to stable storage.
+   *
+   * @return the durability mode
+   */
+  public DurabilityMode getDurabilityMode() {
+    return durabilityMode;
+  }
+
+  /**
+   * Sets when log appends are forced to stable storage. Use the same options for every
+   * service to apply one mode to the whole database.
+   *
+   * @param durabilityMode the durability mode
+   * @return these options
+   */
+  public StorageOptions setDurabilityMode(DurabilityMode durabilityMode) {
+    this.durabilityMode = durabilityMode;
+    return this;
+  }
+
+  /**
+   * Returns how often the background flusher forces the log in {@code GROUP_COMMIT}
+   * and {@code ASYNC} mode.
+   *
+   * @return the flush interval
+   */
+  public Duration getFlushInterval() {
+    return flushInterval;
+  }
+
+  /**
+   * Sets how often the background flusher forces the log in {@code GROUP_COMMIT}
+   * and {@code ASYNC} mode. In {@code ASYNC} mode this bounds how much acknowledged
+   * data a crash can lose.
+   *
+   * @param flushInterval the flush interval
+   * @return these options
+   */
+  public StorageOptions setFlushInterval(Duration flushInterval) {
+    this.flushInterval = flushInterval;
+    return this;
+  }
+
+  /**
+   * Returns the format checkpoints write snapshots in.
+   *
+   * @return the snapshot format
+   */
+  public SnapshotFormat getSnapshotFormat() {
+    return snapshotFormat;
+  }
+
+  /**
+   * Sets the format checkpoints write snapshots in. A table whose only snapshot is in
+   * another format still loads from it, and is rewritten in this format on its next
+   * checkpoint.
+   *
+   * @param snapshotFormat the snapshot format
+   * @return these options
+   */
+  public StorageOptions setSnapshotFormat(SnapshotFormat snapshotFormat) {
+    this.snapshotFormat = snapshotFormat;
+    return this;
+  }
+
+  /**
+   * Returns the listener notified while snapshots are loaded.
+   *
+   * @return the listener, or null if progress is not reported
+   */
+  public LoadProgressListener getLoadProgressListener() {
+    return loadProgressListener;
+  }
+
+  /**
+   * Sets a listener to be notified while snapshots are loaded at startup.
+   *
+   * @param loadProgressListener the listener, or null to not report progress
+   * @return these options
+   */
+  public StorageOptions setLoadProgressListener(LoadProgressListener loadProgressListener) {
+    this.loadProgressListener = loadProgressListener;
+    return this;
+  }
+
+  /**
+   * Returns how long a query may take before it is written to the slow-query log.
+   *
+   * @return the threshold, or null if slow queries are not logged
+   */
+  public Duration getSlowQueryThreshold() {
+    return slowQueryThreshold;
+  }
+
+  /**
+   * Sets how long a query may take before it is written to the slow-query log, together
+   * with its plan. The log is the {@code java.util.logging} logger named after
+   * {@code no.leo.studentmanager.service.Query}, at level {@code WARNING}.
+   *
+   * @param slowQueryThreshold the threshold, or null to not log slow queries
+   * @return these options
+   */
+  public StorageOptions setSlowQueryThreshold(Duration slowQueryThreshold) {
+    this.slowQueryThreshold = slowQueryThreshold;
+    return this;
+  }
+}
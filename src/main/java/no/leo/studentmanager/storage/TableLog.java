@@ -0,0 +1,464 @@
+package no.leo.studentmanager.storage;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Append-only write-ahead log for a single table.
+ * <p>
+ * Each mutation is written as one line of compact JSON, so the cost of a write is
+ * proportional to the size of the record rather than the size of the table. When the
+ * entry reaches stable storage depends on the {@link DurabilityMode}: in {@code SYNC} mode
+ * every append is forced before it returns, while {@code GROUP_COMMIT} and {@code ASYNC}
+ * leave the fsync to a background flusher that runs once per flush interval. On startup the
+ * log is replayed on top of the last snapshot; a torn line at the end of the file (from a
+ * crash mid-write) is discarded.
+ * <p>
+ * The log is split into numbered segments named {@code <table>.<segment>.log}. Appends
+ * always go to the newest segment. A checkpoint calls {@link #rollover()} to seal the
+ * current segment, writes a snapshot covering everything up to that point and then removes
+ * the sealed segments with {@link #deleteSegmentsUpTo(long)}.
+ */
+public class TableLog implements AutoCloseable {
+  private static final String SUFFIX = ".log";
+
+  private final Path directory;
+  private final String tableName;
+  private final ObjectMapper objectMapper;
+  private final DurabilityMode mode;
+  private final Duration flushInterval;
+  private final ScheduledExecutorService flusher;
+  private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+  private final Object syncMonitor = new Object();
+  private long activeSegment;
+  private FileChannel channel;
+  private long bytesSinceRollover;
+  private long firstAppendMillis;
+  private long appendedEntries;
+  private long appendedBytes;
+  private long syncedEntries;
+  private long syncedBytes;
+  private IOException flushFailure;
+
+  /**
+   * Creates a log for the given table that forces every append to disk.
+   *
+   * @param directory    the database directory holding the segments
+   * @param tableName    the table the log belongs to
+   * @param objectMapper the mapper used to encode and decode entries
+   * @throws IOException if the directory could not be listed
+   */
+  public TableLog(Path directory, String tableName, ObjectMapper objectMapper) throws IOException {
+    this(directory, tableName, objectMapper, DurabilityMode.SYNC, Duration.ZERO);
+  }
+
+  /**
+   * Creates a log for the given table. Existing segments in the directory are picked up,
+   * and new entries are appended to the newest of them.
+   *
+   * @param directory     the database directory holding the segments
+   * @param tableName     the table the log belongs to
+   * @param objectMapper  the mapper used to encode and decode entries
+   * @param mode          when appended entries are forced to disk
+   * @param flushInterval how often the background flusher runs; ignored in {@code SYNC} mode
+   * @throws IOException if the directory could not be listed
+   */
+  public TableLog(Path directory, String tableName, ObjectMapper objectMapper,
+                  DurabilityMode mode, Duration flushInterval) throws IOException {
+    this.directory = directory;
+    this.tableName = tableName;
+    this.objectMapper = objectMapper;
+    this.mode = mode;
+    this.flushInterval = flushInterval;
+    List<Long> segments = this.listSegments();
+    this.activeSegment = segments.isEmpty() ? 1 : segments.getLast();
+    Path active = this.segmentPath(this.activeSegment);
+    this.bytesSinceRollover = Files.exists(active) ? Files.size(active) : 0;
+
+    if (mode == DurabilityMode.SYNC) {
+      this.flusher = null;
+    } else {
+      this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "log-flusher-" + tableName);
+        thread.setDaemon(true);
+        return thread;
+      });
+      long interval = Math.max(1, flushInterval.toMillis());
+      this.flusher.scheduleWithFixedDelay(this::backgroundFlush, interval, interval,
+          TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /**
+   * Appends an entry to the log. Depending on the durability mode the call returns once the
+   * entry is forced to disk ({@code SYNC}), once a group fsync covering it has completed
+   * ({@code GROUP_COMMIT}), or immediately after buffering it ({@code ASYNC}).
+   *
+   * @param entry the entry to append
+   * @throws IOException if the entry could not be written or forced
+   */
+  public void append(LogEntry entry) throws IOException {
+    this.awaitDurable(this.write(entry));
+  }
+
+  /**
+   * Writes an entry to the log without waiting for it to become durable. Callers that hold
+   * a lock while writing should release it before calling {@link #awaitDurable(long)}, so
+   * that other writers can join the same group commit.
+   *
+   * @param entry the entry to write
+   * @return a sequence number to pass to {@link #awaitDurable(long)}
+   * @throws IOException if the entry could not be written
+   */
+  public long write(LogEntry entry) throws IOException {
+    return this.writeAll(List.of(entry));
+  }
+
+  /**
+   * Writes several entries to the log with a single write call, without waiting for them to
+   * become durable. Used to commit batches, which then cost one write and one fsync.
+   *
+   * @param entries the entries to write, in LSN order
+   * @return a sequence number covering all entries, to pass to {@link #awaitDurable(long)}
+   * @throws IOException if the entries could not be written
+   */
+  public long writeAll(List<LogEntry> entries) throws IOException {
+    ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+    for (LogEntry entry : entries) {
+      encoded.writeBytes(this.objectMapper.writeValueAsBytes(entry));
+      encoded.write('\n');
+    }
+    byte[] bytes = encoded.toByteArray();
+
+    synchronized (this) {
+      if (this.mode == DurabilityMode.ASYNC) {
+        this.pending.writeBytes(bytes);
+      } else {
+        this.writeFully(bytes);
+      }
+      if (this.bytesSinceRollover == 0) {
+        this.firstAppendMillis = System.currentTimeMillis();
+      }
+      this.bytesSinceRollover += bytes.length;
+      this.appendedBytes += bytes.length;
+      this.appendedEntries += entries.size();
+      return this.appendedEntries;
+    }
+  }
+
+  /**
+   * Waits until the entry with the given sequence number is as durable as the mode promises:
+   * forced by this call in {@code SYNC} mode, forced by the background flusher in
+   * {@code GROUP_COMMIT} mode, and not at all in {@code ASYNC} mode.
+   *
+   * @param sequence the sequence number returned by {@link #write(LogEntry)}
+   * @throws IOException if the log could not be forced
+   */
+  public void awaitDurable(long sequence) throws IOException {
+    switch (this.mode) {
+      case SYNC -> {
+        synchronized (this.syncMonitor) {
+          if (this.syncedEntries >= sequence) {
+            return;
+          }
+        }
+        this.flush();
+      }
+      case GROUP_COMMIT -> this.awaitSynced(sequence);
+      case ASYNC -> {
+        // The background flusher will pick it up
+      }
+    }
+  }
+
+  private void writeFully(byte[] bytes) throws IOException {
+    ByteBuffer buffer = ByteBuffer.wrap(bytes);
+    FileChannel ch = this.channel();
+    long start = ch.size();
+    try {
+      while (buffer.hasRemaining()) {
+        ch.write(buffer);
+      }
+    } catch (IOException e) {
+      // Cut off a partial write, so the entries appended next do not follow a torn line
+      try {
+        ch.truncate(start);
+      } catch (IOException suppressed) {
+        e.addSuppressed(suppressed);
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * Writes out any buffered entries and forces the active segment to disk. Writers are not
+   * blocked while the fsync is in progress. If the calling thread is interrupted, nothing is
+   * counted as forced, the interrupt flag stays set and the next append reopens the segment.
+   *
+   * @throws IOException if the log could not be written or forced
+   */
+  public void flush() throws IOException {
+    long entries;
+    long bytes;
+    FileChannel ch;
+    synchronized (this) {
+      this.writePending();
+      entries = this.appendedEntries;
+      bytes = this.appendedBytes;
+      ch = this.channel;
+    }
+    if (ch != null) {
+      try {
+        ch.force(false);
+      } catch (ClosedByInterruptException e) {
+        // The interrupt closed the channel before anything was forced
+        Thread.currentThread().interrupt();
+        throw e;
+      } catch (ClosedChannelException e) {
+        // Only a rollover, which forces the segment before closing it, counts as synced
+        synchronized (this) {
+          if (this.channel == ch) {
+            throw e;
+          }
+        }
+      }
+    }
+    this.markSynced(entries, bytes);
+  }
+
+  private void writePending() throws IOException {
+    if (this.pending.size() == 0) {
+      return;
+    }
+    ByteBuffer buffer = ByteBuffer.wrap(this.pending.toByteArray());
+    FileChannel ch = this.channel();
+    while (buffer.hasRemaining()) {
+      ch.write(buffer);
+    }
+    this.pending.reset();
+  }
+
+  private void markSynced(long entries, long bytes) {
+    synchronized (this.syncMonitor) {
+      this.syncedEntries = Math.max(this.syncedEntries, entries);
+      this.syncedBytes = Math.max(this.syncedBytes, bytes);
+      this.syncMonitor.notifyAll();
+    }
+  }
+
+  private void awaitSynced(long sequence) throws IOException {
+    synchronized (this.syncMonitor) {
+      while (this.syncedEntries < sequence) {
+        if (this.flushFailure != null) {
+          throw new IOException("Log flush failed", this.flushFailure);
+        }
+        try {
+          this.syncMonitor.wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException("Interrupted while waiting for group commit");
+        }
+      }
+    }
+  }
+
+  private void backgroundFlush() {
+    synchronized (this.syncMonitor) {
+      if (this.syncedEntries >= this.appendedEntriesSnapshot()) {
+        return;
+      }
+    }
+    try {
+      this.flush();
+    } catch (IOException e) {
+      synchronized (this.syncMonitor) {
+        this.flushFailure = e;
+        this.syncMonitor.notifyAll();
+      }
+    }
+  }
+
+  private synchronized long appendedEntriesSnapshot() {
+    return this.appendedEntries;
+  }
+
+  /**
+   * Reports how much of the log is not yet on stable storage.
+   *
+   * @return the current durability status
+   */
+  public DurabilityStatus getStatus() {
+    long entries;
+    long bytes;
+    synchronized (this) {
+      entries = this.appendedEntries;
+      bytes = this.appendedBytes;
+    }
+    synchronized (this.syncMonitor) {
+      entries -= this.syncedEntries;
+      bytes -= this.syncedBytes;
+    }
+    Duration window = this.mode == DurabilityMode.ASYNC ? this.flushInterval : Duration.ZERO;
+    return new DurabilityStatus(this.mode, Math.max(0, entries), Math.max(0, bytes), window);
+  }
+
+  /**
+   * Replays every entry with an LSN greater than {@code afterLsn}, in log order across all
+   * segments. If the last line of a segment is incomplete or unreadable it is treated as a
+   * torn write and cut off, so later appends start on a clean line.
+   *
+   * @param afterLsn the LSN already covered by the snapshot
+   * @param consumer receives each entry that needs to be applied
+   * @return the highest LSN found in the log, or {@code afterLsn} if there was none
+   * @throws IOException if the log could not be read
+   */
+  public synchronized long replay(long afterLsn, Consumer<LogEntry> consumer) throws IOException {
+    long lastLsn = afterLsn;
+    for (long segment : this.listSegments()) {
+      lastLsn = Math.max(lastLsn, this.replaySegment(this.segmentPath(segment), afterLsn, consumer));
+    }
+    return lastLsn;
+  }
+
+  private long replaySegment(Path path, long afterLsn, Consumer<LogEntry> consumer)
+      throws IOException {
+    long[] lastLsn = {afterLsn};
+    JsonLines.read(path, this.objectMapper, LogEntry.class, entry -> {
+      if (entry.getLsn() > afterLsn) {
+        consumer.accept(entry);
+      }
+      lastLsn[0] = Math.max(lastLsn[0], entry.getLsn());
+    });
+    return lastLsn[0];
+  }
+
+  /**
+   * Seals the current segment and directs further appends to a new one.
+   *
+   * @return the number of the segment that was sealed
+   * @throws IOException if the current segment could not be closed
+   */
+  public synchronized long rollover() throws IOException {
+    long sealed = this.activeSegment;
+    this.writePending();
+    if (this.channel != null) {
+      this.channel().force(false);
+    }
+    this.markSynced(this.appendedEntries, this.appendedBytes);
+    this.closeChannel();
+    this.activeSegment++;
+    this.bytesSinceRollover = 0;
+    this.firstAppendMillis = 0;
+    return sealed;
+  }
+
+  /**
+   * Deletes every segment up to and including the given one. Only call this once a
+   * snapshot covering those segments has been durably written.
+   *
+   * @param segment the newest segment to delete
+   * @throws IOException if a segment could not be deleted
+   */
+  public synchronized void deleteSegmentsUpTo(long segment) throws IOException {
+    for (long existing : this.listSegments()) {
+      if (existing <= segment && existing != this.activeSegment) {
+        Files.deleteIfExists(this.segmentPath(existing));
+      }
+    }
+  }
+
+  /**
+   * Returns the number of bytes appended since the last rollover.
+   *
+   * @return the size of the active segment in bytes
+   */
+  public synchronized long getBytesSinceRollover() {
+    return this.bytesSinceRollover;
+  }
+
+  /**
+   * Returns when the first entry after the last rollover was appended.
+   *
+   * @return the wall-clock time in milliseconds, or 0 if nothing was appended since
+   */
+  public synchronized long getFirstAppendMillis() {
+    return this.firstAppendMillis;
+  }
+
+  private List<Long> listSegments() throws IOException {
+    List<Long> segments = new ArrayList<>();
+    if (!Files.isDirectory(this.directory)) {
+      return segments;
+    }
+    String prefix = this.tableName + ".";
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(this.directory,
+        this.tableName + ".*" + SUFFIX)) {
+      for (Path path : stream) {
+        String name = path.getFileName().toString();
+        String number = name.substring(prefix.length(), name.length() - SUFFIX.length());
+        try {
+          segments.add(Long.parseLong(number));
+        } catch (NumberFormatException e) {
+          // Not one of our segments, e.g. a table whose name shares our prefix
+        }
+      }
+    }
+    Collections.sort(segments);
+    return segments;
+  }
+
+  private Path segmentPath(long segment) {
+    return this.directory.resolve(String.format("%s.%06d%s", this.tableName, segment, SUFFIX));
+  }
+
+  private FileChannel channel() throws IOException {
+    // An interrupted write or force closes the channel; reopen the segment rather than
+    // failing every later append
+    if (this.channel == null || !this.channel.isOpen()) {
+      this.channel = FileChannel.open(this.segmentPath(this.activeSegment),
+          StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+    return this.channel;
+  }
+
+  private void closeChannel() throws IOException {
+    if (this.channel != null) {
+      this.channel.close();
+      this.channel = null;
+    }
+  }
+
+  /**
+   * Flushes anything still buffered, stops the background flusher and closes the log.
+   *
+   * @throws IOException if buffered entries could not be written
+   */
+  @Override
+  public void close() throws IOException {
+    if (this.flusher != null) {
+      this.flusher.shutdown();
+    }
+    this.flush();
+    synchronized (this) {
+      this.closeChannel();
+    }
+  }
+}
@@ -0,0 +1,163 @@
+package no.leo.studentmanager.storage;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Database-wide commit log for transactions that span several tables.
+ * <p>
+ * A transaction is committed by appending one {@link TransactionRecord}, holding the log
+ * entries of every table it touched, and forcing it to disk. That single record is what makes
+ * the transaction atomic and durable: a torn record is discarded on replay, and a complete one
+ * is replayed into every table whose own log is missing its entries. The tables' own logs
+ * receive the same entries afterwards without an fsync of their own.
+ * <p>
+ * The file lives at {@value #FILE_NAME} in the database directory and is shared by all tables.
+ */
+public class TransactionLog implements AutoCloseable {
+  /**
+   * The name of the transaction log file inside the database directory.
+   */
+  public static final String FILE_NAME = "transactions.log";
+
+  private final Path path;
+  private final ObjectMapper objectMapper;
+  private FileChannel channel;
+  private long lastTxn;
+  private IOException failure;
+
+  /**
+   * Opens the transaction log in the given database directory.
+   *
+   * @param directory    the database directory
+   * @param objectMapper the mapper used to encode and decode records
+   * @throws IOException if the existing log could not be read
+   */
+  public TransactionLog(Path directory, ObjectMapper objectMapper) throws IOException {
+    this.path = directory.resolve(FILE_NAME);
+    this.objectMapper = objectMapper;
+    JsonLines.read(this.path, objectMapper, TransactionRecord.class,
+        record -> this.lastTxn = Math.max(this.lastTxn, record.txn()));
+  }
+
+  /**
+   * Appends a committed transaction and forces it to disk. If the record cannot be written
+   * or forced, whatever part of it reached the file is cut off again, so a failed commit is
+   * never replayed and never leaves a torn line in front of the next record. If even that
+   * fails, the log refuses every further commit.
+   *
+   * @param tables the log entries of the transaction, grouped by table name
+   * @return the number assigned to the transaction
+   * @throws IOException if the record could not be written or forced, or an earlier failed
+   *                     commit could not be cut off
+   */
+  public synchronized long commit(Map<String, List<LogEntry>> tables) throws IOException {
+    if (this.failure != null) {
+      throw new IOException("Transaction log is unusable after a failed commit", this.failure);
+    }
+    long txn = this.lastTxn + 1;
+    ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+    encoded.writeBytes(this.objectMapper.writeValueAsBytes(new TransactionRecord(txn, tables)));
+    encoded.write('\n');
+
+    FileChannel ch = this.channel();
+    long start = ch.size();
+    try {
+      this.writeAndForce(ch, ByteBuffer.wrap(encoded.toByteArray()));
+    } catch (IOException e) {
+      try {
+        ch.truncate(start);
+        ch.force(false);
+      } catch (IOException suppressed) {
+        e.addSuppressed(suppressed);
+        this.failure = e;
+      }
+      throw e;
+    }
+    this.lastTxn = txn;
+    return txn;
+  }
+
+  /**
+   * Writes an encoded record at the end of the log and forces it to disk.
+   *
+   * @param ch     the log's channel
+   * @param buffer the encoded record
+   * @throws IOException if the record could not be written or forced
+   */
+  protected void writeAndForce(FileChannel ch, ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      ch.write(buffer);
+    }
+    ch.force(false);
+  }
+
+  /**
+   * Replays the entries a table received through committed transactions.
+   *
+   * @param directory    the database directory
+   * @param objectMapper the mapper used to decode records
+   * @param tableName    the table whose entries are wanted
+   * @param consumer     receives each entry, in commit order
+   * @throws IOException if the log could not be read
+   */
+  public static void replay(Path directory, ObjectMapper objectMapper, String tableName,
+                            Consumer<LogEntry> consumer) throws IOException {
+    JsonLines.read(directory.resolve(FILE_NAME), objectMapper, TransactionRecord.class, record -> {
+      List<LogEntry> entries = record.tables().get(tableName);
+      if (entries != null) {
+        entries.forEach(consumer);
+      }
+    });
+  }
+
+  /**
+   * Returns the current size of the log.
+   *
+   * @return the size in bytes
+   * @throws IOException if the size could not be determined
+   */
+  public synchronized long size() throws IOException {
+    return Files.exists(this.path) ? Files.size(this.path) : 0;
+  }
+
+  /**
+   * Discards every record. Only call this once every table log holding the same entries
+   * has been forced to disk.
+   *
+   * @throws IOException if the log could not be truncated
+   */
+  public synchronized void truncate() throws IOException {
+    if (this.channel == null && !Files.exists(this.path)) {
+      return;
+    }
+    FileChannel ch = this.channel();
+    ch.truncate(0);
+    ch.force(true);
+  }
+
+  private FileChannel channel() throws IOException {
+    if (this.channel == null) {
+      this.channel = FileChannel.open(this.path,
+          StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+    return this.channel;
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    if (this.channel != null) {
+      this.channel.close();
+      this.channel = null;
+    }
+  }
+}
@@ -0,0 +1,16 @@
+package no.leo.studentmanager.storage;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One committed cross-table transaction, as stored in the {@link TransactionLog}.
+ *
+ * @param txn    the transaction number
+ * @param tables the log entries written by the transaction, grouped by table name
+ */
+public record TransactionRecord(
+    @JsonProperty("txn") long txn,
+    @JsonProperty("tables") Map<String, List<LogEntry>> tables) {
+}
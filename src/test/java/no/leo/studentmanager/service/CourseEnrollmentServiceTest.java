@@ -2,17 +2,34 @@ package no.leo.studentmanager.service;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+import no.leo.studentmanager.commands.Command;
+import no.leo.studentmanager.commands.GetEnrollmentCommand;
+import no.leo.studentmanager.commands.ListEnrollmentsCommand;
 import no.leo.studentmanager.exception.DatabaseException;
+import no.leo.studentmanager.exception.UniqueConstraintViolation;
 import no.leo.studentmanager.model.Course;
 import no.leo.studentmanager.model.CourseEnrollment;
 import no.leo.studentmanager.model.Student;
+import no.leo.studentmanager.storage.RoaringBitmap;
+import no.leo.studentmanager.storage.StorageOptions;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -104,4 +121,352 @@ class CourseEnrollmentServiceTest {
     assertEquals(2, enrollments.size());
     assertTrue(enrollments.stream().allMatch(e -> e.getCourseId() == course.getId()));
   }
-}
\ No newline at end of file
+
+  @Test
+  void testForeignKeyIndicesAfterSnapshotReload() throws DatabaseException {
+    Student student = studentService.create(new Student(0, "Student 1", "test1@test.com", "12345678"));
+    Course course1 = courseService.create(new Course(0, "Course 1"));
+    Course course2 = courseService.create(new Course(0, "Course 2"));
+    enrollmentService.enrollStudent(student.getId(), course1.getId());
+    enrollmentService.enrollStudent(student.getId(), course2.getId());
+    enrollmentService.checkpoint();
+
+    CourseEnrollmentService reloaded = new CourseEnrollmentService(TEST_DB_PATH);
+    assertTrue(reloaded.getIndicesMap().get("student_id_id_idx").containsKey(student.getId()));
+    assertTrue(reloaded.getIndicesMap().get("course_id_id_idx").containsKey(course1.getId()));
+    assertEquals(2, reloaded.getByStudent(student.getId()).size());
+    assertEquals(1, reloaded.getByCourse(course2.getId()).size());
+    assertEquals(2, reloaded.getByField("student_id", String.valueOf(student.getId())).size());
+    assertEquals(1, reloaded.getByField("course_id", (long) course1.getId()).size());
+  }
+
+  @Test
+  void testUniqueTogetherStudentAndCourse() throws DatabaseException {
+    Student student = studentService.create(new Student(0, "Student 1", "test1@test.com", "12345678"));
+    Course course1 = courseService.create(new Course(0, "Course 1"));
+    Course course2 = courseService.create(new Course(0, "Course 2"));
+    enrollmentService.enrollStudent(student.getId(), course1.getId());
+    CourseEnrollment second = enrollmentService.create(
+        new CourseEnrollment(0, student.getId(), course2.getId(), 3));
+
+    DatabaseException e = assertThrows(DatabaseException.class,
+        () -> enrollmentService.enrollStudent(student.getId(), course1.getId()));
+    assertEquals("Student is already enrolled in this course", e.getMessage());
+    assertThrows(UniqueConstraintViolation.class, () -> enrollmentService.update(
+        CourseEnrollment.create(second.getId(), student.getId(), course1.getId(), 3)));
+
+    assertEquals(second, enrollmentService.getByStudentAndCourse(student.getId(), course2.getId()));
+    enrollmentService.delete(second.getId());
+    assertNull(enrollmentService.getByStudentAndCourse(student.getId(), course2.getId()));
+    enrollmentService.enrollStudent(student.getId(), course2.getId());
+
+    CourseEnrollmentService reloaded = new CourseEnrollmentService(TEST_DB_PATH);
+    assertNotNull(reloaded.getByStudentAndCourse(student.getId(), course1.getId()));
+    assertThrows(DatabaseException.class,
+        () -> reloaded.enrollStudent(student.getId(), course2.getId()));
+  }
+
+  @Test
+  void testGradeRange() throws DatabaseException {
+    Course course = courseService.create(new Course(0, "Test Course"));
+    for (int grade = 0; grade <= 5; grade++) {
+      Student student = studentService.create(
+          new Student(0, "Student " + grade, grade + "@test.com", "1234567" + grade));
+      enrollmentService.create(new CourseEnrollment(0, student.getId(), course.getId(), grade));
+    }
+
+    List<CourseEnrollment> passed = enrollmentService.getRange("grade", 3, 5);
+    assertEquals(List.of(3, 4, 5), passed.stream().map(CourseEnrollment::getGrade).toList());
+    enrollmentService.setGrade(passed.getFirst().getStudentId(), course.getId(), 1);
+    assertEquals(List.of(4, 5),
+        enrollmentService.getRange("grade", 3, null).stream().map(CourseEnrollment::getGrade).toList());
+  }
+
+  @Test
+  void testBitmapFiltersByCourseAndGrade() throws DatabaseException {
+    Course math = courseService.create(new Course(0, "Math"));
+    Course physics = courseService.create(new Course(0, "Physics"));
+    for (int i = 0; i < 6; i++) {
+      Student student = studentService.create(
+          new Student(0, "Student " + i, i + "@test.com", "1234567" + i));
+      enrollmentService.create(new CourseEnrollment(0, student.getId(), math.getId(), i % 3));
+      enrollmentService.create(new CourseEnrollment(0, student.getId(), physics.getId(), i));
+    }
+
+    List<CourseEnrollment> failing = enrollmentService.getByCourseAndGrade(math.getId(), 0, 0);
+    assertEquals(2, failing.size());
+    assertTrue(failing.stream().allMatch(e -> e.getCourseId() == math.getId() && e.getGrade() == 0));
+
+    RoaringBitmap notFailing = enrollmentService.getIds("grade", 0).not(enrollmentService.getAllIds());
+    assertEquals(9, notFailing.cardinality());
+
+    enrollmentService.checkpoint();
+    CourseEnrollmentService reloaded = new CourseEnrollmentService(TEST_DB_PATH);
+    assertEquals(failing, reloaded.getByCourseAndGrade(math.getId(), 0, 0));
+    assertEquals(List.of(4, 5), reloaded.getByCourseAndGrade(physics.getId(), 4, 5).stream()
+        .map(CourseEnrollment::getGrade).toList());
+  }
+
+  @Test
+  void testQueryCombinesPredicates() throws DatabaseException {
+    Course math = courseService.create(new Course(0, "Math"));
+    Course physics = courseService.create(new Course(0, "Physics"));
+    Course art = courseService.create(new Course(0, "Art"));
+    List<Integer> studentIds = new ArrayList<>();
+    for (int i = 0; i < 6; i++) {
+      Student student = studentService.create(
+          new Student(0, "Student " + i, i + "@test.com", "1234567" + i));
+      studentIds.add(student.getId());
+      enrollmentService.create(new CourseEnrollment(0, student.getId(), math.getId(), i));
+      enrollmentService.create(new CourseEnrollment(0, student.getId(), physics.getId(), 5 - i));
+    }
+    enrollmentService.create(new CourseEnrollment(0, studentIds.getFirst(), art.getId(), 3));
+
+    assertEquals(12, enrollmentService.query()
+        .where("course_id").eq(math.getId()).or("course_id").eq(physics.getId()).count());
+    assertEquals(List.of(5, 4), enrollmentService.query()
+        .where("student_id").in(studentIds.subList(0, 2))
+        .and("grade").between(3, 5)
+        .orderByDescending("grade")
+        .limit(2)
+        .list().stream().map(CourseEnrollment::getGrade).toList());
+    // A grade that is not an int cannot use the grade index, so this is answered by a scan
+    assertEquals(1, enrollmentService.query()
+        .where("grade").eq("none").or("course_id").eq(art.getId()).count());
+    assertEquals(List.of(0, 0, 1), enrollmentService.query()
+        .where(Condition.or(Condition.eq("course_id", math.getId()),
+            Condition.eq("course_id", physics.getId())))
+        .orderBy("grade")
+        .limit(3)
+        .list().stream().map(CourseEnrollment::getGrade).toList());
+    assertThrows(IllegalArgumentException.class,
+        () -> enrollmentService.query().where("no_such_field").eq(1).list());
+  }
+
+  @Test
+  void testExplainAndSlowQueryLog() throws DatabaseException {
+    Course course = courseService.create(new Course(0, "Math"));
+    for (int i = 0; i < 4; i++) {
+      Student student = studentService.create(
+          new Student(0, "Student " + i, i + "@test.com", "1234567" + i));
+      enrollmentService.create(new CourseEnrollment(0, student.getId(), course.getId(), i));
+    }
+
+    QueryPlan lookup = enrollmentService.explain("course_id", course.getId());
+    assertEquals(QueryPlan.Operation.INDEX_LOOKUP, lookup.getOperation());
+    assertEquals(4, lookup.getEstimatedRows());
+    assertEquals(4, lookup.getActualRows());
+    assertTrue(enrollmentService.explain("grade", "none").hasFullScan());
+
+    QueryPlan plan = enrollmentService.query()
+        .where("course_id").eq(course.getId()).and("grade").eq(3).explain();
+    assertEquals(QueryPlan.Operation.INTERSECT, plan.getOperation());
+    assertEquals(1, plan.getActualRows());
+    assertTrue(plan.toString().contains("Index lookup grade_id_idx grade = 3"));
+
+    List<LogRecord> logged = new ArrayList<>();
+    Handler handler = new Handler() {
+      @Override
+      public void publish(LogRecord record) {
+        logged.add(record);
+      }
+
+      @Override
+      public void flush() {
+      }
+
+      @Override
+      public void close() {
+      }
+    };
+    // Capture the warnings instead of printing them to the test output
+    Logger logger = Logger.getLogger(Query.class.getName());
+    boolean useParentHandlers = logger.getUseParentHandlers();
+    logger.setUseParentHandlers(false);
+    logger.addHandler(handler);
+    try (CourseEnrollmentService logging = new CourseEnrollmentService(TEST_DB_PATH,
+        StorageOptions.defaults().setSlowQueryThreshold(Duration.ZERO))) {
+      logging.getByField("grade", "none");
+      assertEquals(1, logged.size());
+      assertTrue(logged.getFirst().getMessage().contains("Full scan course_enrollments"));
+    } finally {
+      logger.removeHandler(handler);
+      logger.setUseParentHandlers(useParentHandlers);
+    }
+  }
+
+  @Test
+  void testJoinDecodesEachKeyOnce() throws DatabaseException {
+    Course math = courseService.create(new Course(0, "Math"));
+    Course physics = courseService.create(new Course(0, "Physics"));
+    for (int i = 0; i < 3; i++) {
+      Student student = studentService.create(
+          new Student(0, "Student " + i, i + "@test.com", "1234567" + i));
+      enrollmentService.enrollStudent(student.getId(), math.getId());
+      enrollmentService.enrollStudent(student.getId(), physics.getId());
+    }
+
+    EnrollmentJoin join = new EnrollmentJoin(studentService, courseService);
+    List<EnrollmentDetails> details = join.join(enrollmentService.stream()).toList();
+    assertEquals(6, details.size());
+    for (EnrollmentDetails detail : details) {
+      assertEquals(detail.enrollment().getStudentId(), detail.student().getId());
+      assertEquals(detail.enrollment().getCourseId(), detail.course().getId());
+    }
+    List<EnrollmentDetails> inMath = details.stream()
+        .filter(detail -> detail.course().getId() == math.getId()).toList();
+    assertEquals(3, inMath.size());
+    // Repeated keys share one decoded model
+    assertSame(inMath.get(0).course(), inMath.get(2).course());
+
+    assertNull(join.join(new CourseEnrollment(0, 999, math.getId(), 0)).student());
+  }
+
+  @Test
+  void testCommandsReportDeletedCourse() throws Exception {
+    Student student = studentService.create(
+        new Student(0, "Test Student", "test@test.com", "12345678"));
+    Course course = courseService.create(new Course(0, "Test Course"));
+    enrollmentService.enrollStudent(student.getId(), course.getId());
+    CourseEnrollment enrollment = enrollmentService.getByStudentAndCourse(
+        student.getId(), course.getId());
+    courseService.delete(course.getId());
+
+    String listed = captureOutput(new ListEnrollmentsCommand(
+        studentService, courseService, enrollmentService, null));
+    assertTrue(listed.contains("Student: Test Student (ID: " + student.getId() + ")"), listed);
+    assertTrue(listed.contains("Course: (deleted course ID " + course.getId() + ")"), listed);
+
+    String got = captureOutput(new GetEnrollmentCommand(
+        studentService, courseService, enrollmentService, null),
+        String.valueOf(enrollment.getId()));
+    assertTrue(got.contains("Course ID: " + course.getId()), got);
+    assertTrue(got.contains("Course Name: (deleted course)"), got);
+  }
+
+  private static String captureOutput(Command command, String... args) throws Exception {
+    PrintStream out = System.out;
+    ByteArrayOutputStream captured = new ByteArrayOutputStream();
+    System.setOut(new PrintStream(captured, true, StandardCharsets.UTF_8));
+    try {
+      command.execute(args);
+    } finally {
+      System.setOut(out);
+    }
+    return captured.toString(StandardCharsets.UTF_8);
+  }
+
+  @Test
+  void testAggregatesFollowChanges() throws DatabaseException {
+    Student student = studentService.create(new Student(0, "Test Student", "test@test.com", "12345678"));
+    Course math = courseService.create(new Course(0, "Math"));
+    Course physics = courseService.create(new Course(0, "Physics"));
+    enrollmentService.create(new CourseEnrollment(0, student.getId(), math.getId(), 4));
+    CourseEnrollment physicsEnrollment = enrollmentService.create(
+        new CourseEnrollment(0, student.getId(), physics.getId(), 2));
+    assertEquals(3.0, enrollmentService.getAverageGrade(student.getId()));
+    assertEquals(1, enrollmentService.countByCourse(math.getId()));
+
+    enrollmentService.setGrade(student.getId(), physics.getId(), 5);
+    assertEquals(4.5, enrollmentService.getAverageGrade(student.getId()));
+    enrollmentService.delete(physicsEnrollment.getId());
+    assertEquals(4.0, enrollmentService.getAverageGrade(student.getId()));
+    assertEquals(0, enrollmentService.countByCourse(physics.getId()));
+
+    TransactionCoordinator coordinator =
+        new TransactionCoordinator(studentService, courseService, enrollmentService);
+    assertThrows(DatabaseException.class, () -> coordinator.inTransaction(() -> {
+      enrollmentService.enrollStudent(student.getId(), physics.getId());
+      enrollmentService.enrollStudent(student.getId(), math.getId());
+    }));
+    assertEquals(1, enrollmentService.countByStudent(student.getId()));
+    assertEquals(0, enrollmentService.countByCourse(physics.getId()));
+
+    CourseEnrollmentService reloaded = new CourseEnrollmentService(TEST_DB_PATH);
+    assertEquals(4.0, reloaded.getAverageGrade(student.getId()));
+    assertEquals(1, reloaded.countByCourse(math.getId()));
+    assertEquals(0.0, reloaded.getAverageGrade(999));
+  }
+
+  @Test
+  void testSetGradeSurvivesReload() throws DatabaseException {
+    Student student = studentService.create(new Student(0, "Test Student", "test@test.com", "12345678"));
+    Course course = courseService.create(new Course(0, "Test Course"));
+    enrollmentService.enrollStudent(student.getId(), course.getId());
+    enrollmentService.setGrade(student.getId(), course.getId(), 5);
+
+    CourseEnrollmentService reloaded = new CourseEnrollmentService(TEST_DB_PATH);
+    List<CourseEnrollment> enrollments = reloaded.getByStudent(student.getId());
+
+    assertEquals(1, enrollments.size());
+    assertEquals(5, enrollments.getFirst().getGrade());
+  }
+
+  @Test
+  void testTransactionAcrossServices() throws Exception {
+    Course course1 = courseService.create(new Course(0, "Course 1"));
+    Course course2 = courseService.create(new Course(0, "Course 2"));
+    TransactionCoordinator coordinator =
+        new TransactionCoordinator(studentService, courseService, enrollmentService);
+
+    coordinator.inTransaction(() -> {
+      Student student = studentService.create(
+          new Student(0, "Test Student", "test@test.com", "12345678"));
+      enrollmentService.enrollStudent(student.getId(), course1.getId());
+      enrollmentService.enrollStudent(student.getId(), course2.getId());
+    });
+
+    // Losing the table log must not lose the transaction, which is durable in the shared log
+    enrollmentService.close();
+    Files.delete(Paths.get(TEST_DB_PATH, "course_enrollments.000001.log"));
+
+    Student student = new StudentService(TEST_DB_PATH).getByEmail("test@test.com");
+    assertNotNull(student);
+    assertEquals(2, new CourseEnrollmentService(TEST_DB_PATH).getByStudent(student.getId()).size());
+  }
+
+  @Test
+  void testRecoveredTransactionSurvivesLogTruncationAfterRestart() throws Exception {
+    Course course = courseService.create(new Course(0, "Test Course"));
+    new TransactionCoordinator(studentService, courseService, enrollmentService)
+        .inTransaction(() -> {
+          Student student = studentService.create(
+              new Student(0, "Test Student", "test@test.com", "12345678"));
+          enrollmentService.enrollStudent(student.getId(), course.getId());
+        });
+    Student student = studentService.getByEmail("test@test.com");
+
+    // The enrollment only reached the transaction log before the restart
+    enrollmentService.close();
+    Files.delete(Paths.get(TEST_DB_PATH, "course_enrollments.000001.log"));
+    CourseEnrollmentService restarted = new CourseEnrollmentService(TEST_DB_PATH);
+    assertEquals(1, restarted.getByStudent(student.getId()).size());
+
+    // A new coordinator truncates the transaction log on its first commit
+    TransactionCoordinator coordinator = new TransactionCoordinator(
+        StorageOptions.defaults().setMaxLogBytes(1), studentService, courseService, restarted);
+    coordinator.inTransaction(() -> courseService.create(new Course(0, "Other Course")));
+    assertEquals(0, Files.size(Paths.get(TEST_DB_PATH, "transactions.log")));
+
+    assertEquals(1,
+        new CourseEnrollmentService(TEST_DB_PATH).getByStudent(student.getId()).size());
+  }
+
+  @Test
+  void testTransactionRollsBackAllServices() throws DatabaseException {
+    Course course = courseService.create(new Course(0, "Test Course"));
+    TransactionCoordinator coordinator =
+        new TransactionCoordinator(studentService, courseService, enrollmentService);
+
+    assertThrows(DatabaseException.class, () -> coordinator.inTransaction(() -> {
+      Student student = studentService.create(
+          new Student(0, "Test Student", "test@test.com", "12345678"));
+      enrollmentService.enrollStudent(student.getId(), course.getId());
+      enrollmentService.enrollStudent(student.getId(), course.getId());
+    }));
+
+    assertNull(studentService.getByEmail("test@test.com"));
+    assertTrue(enrollmentService.getAll().isEmpty());
+    assertNull(new StudentService(TEST_DB_PATH).getByEmail("test@test.com"));
+  }
+}
@@ -2,14 +2,21 @@ package no.leo.studentmanager.service;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.File;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import no.leo.studentmanager.exception.DatabaseException;
+import no.leo.studentmanager.exception.RecordNotFoundException;
 import no.leo.studentmanager.model.Course;
+import no.leo.studentmanager.storage.DurabilityMode;
+import no.leo.studentmanager.storage.StorageOptions;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -67,4 +74,71 @@ class CourseServiceTest {
     assertNotNull(found);
     assertEquals(course.getName(), found.getName());
   }
-}
\ No newline at end of file
+
+  @Test
+  void testGroupCommitWithConcurrentWriters() throws Exception {
+    StorageOptions options = StorageOptions.defaults()
+        .setDurabilityMode(DurabilityMode.GROUP_COMMIT)
+        .setFlushInterval(Duration.ofMillis(2));
+    try (CourseService service = new CourseService(TEST_DB_PATH, options)) {
+      List<Thread> writers = new ArrayList<>();
+      for (int t = 0; t < 4; t++) {
+        int writer = t;
+        writers.add(Thread.ofPlatform().start(() -> {
+          for (int i = 0; i < 25; i++) {
+            try {
+              service.create(new Course(0, "Course " + writer + "-" + i));
+            } catch (DatabaseException e) {
+              throw new RuntimeException(e);
+            }
+          }
+        }));
+      }
+      for (Thread writer : writers) {
+        writer.join();
+      }
+
+      assertEquals(0, service.getDurabilityStatus().unsyncedEntries());
+    }
+    assertEquals(100, new CourseService(TEST_DB_PATH).getAll().size());
+  }
+
+  @Test
+  void testAsyncFlushesOnClose() throws DatabaseException {
+    StorageOptions options = StorageOptions.defaults()
+        .setDurabilityMode(DurabilityMode.ASYNC)
+        .setFlushInterval(Duration.ofHours(1));
+    try (CourseService service = new CourseService(TEST_DB_PATH, options)) {
+      service.create(new Course(0, "Test Course"));
+      assertEquals(1, service.getDurabilityStatus().unsyncedEntries());
+      assertEquals(Duration.ofHours(1), service.getDurabilityStatus().maxLossWindow());
+    }
+    assertNotNull(new CourseService(TEST_DB_PATH).getByName("Test Course"));
+  }
+
+  @Test
+  void testManyInsertsAndDeletes() throws DatabaseException {
+    List<Course> created = new ArrayList<>();
+    courseService.inBatch(() -> {
+      for (int i = 0; i < 500; i++) {
+        created.add(courseService.create(new Course(0, "Course " + i)));
+      }
+    });
+    for (int i = 0; i < created.size(); i += 2) {
+      courseService.delete(created.get(i).getId());
+    }
+    courseService.checkpoint();
+
+    CourseService reloaded = new CourseService(TEST_DB_PATH);
+    assertEquals(250, reloaded.getAll().size());
+    for (int i = 0; i < created.size(); i++) {
+      Course course = created.get(i);
+      if (i % 2 == 0) {
+        assertThrows(RecordNotFoundException.class, () -> reloaded.getById(course.getId()));
+      } else {
+        assertEquals(course.getName(), reloaded.getById(course.getId()).getName());
+        assertEquals(course.getId(), reloaded.getByName(course.getName()).getId());
+      }
+    }
+  }
+}
@@ -1,14 +1,23 @@
 package no.leo.studentmanager.service;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
 
 import java.io.File;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 import no.leo.studentmanager.exception.DatabaseException;
 import no.leo.studentmanager.model.Course;
 import no.leo.studentmanager.model.CourseEnrollment;
@@ -56,6 +65,7 @@ class StudentAnalyticsTest {
 
   @AfterEach
   void tearDown() throws Exception {
+    analytics.close();
     deleteDirectory(new File(TEST_DB_PATH));
   }
 
@@ -99,6 +109,166 @@ class StudentAnalyticsTest {
     assertEquals(2, result.get().getValue());
   }
 
+  @Test
+  void testGetTopCoursesByEnrollmentBreaksTies() throws DatabaseException {
+    Student student = studentService.getByEmail("jane@test.com");
+    Course chemistry = courseService.create(new Course(0, "Chemistry"));
+    courseService.create(new Course(0, "Biology"));
+    enrollmentService.enrollStudent(student.getId(), chemistry.getId());
+
+    // Physics and Chemistry both have one student; the lower course ID ranks first
+    assertEquals(List.of("Mathematics", "Physics", "Chemistry"),
+        analytics.getTopCoursesByEnrollment(5).stream().map(e -> e.getKey().getName()).toList());
+    assertEquals(List.of(2, 1), analytics.getTopCoursesByEnrollment(2).stream()
+        .map(Map.Entry::getValue).toList());
+    assertTrue(analytics.getTopCoursesByEnrollment(0).isEmpty());
+  }
+
+  @Test
+  void testGetTopCoursesByEnrollmentSkipsDeletedCourses() throws DatabaseException {
+    Student student = studentService.getByEmail("jane@test.com");
+    Course chemistry = courseService.create(new Course(0, "Chemistry"));
+    enrollmentService.enrollStudent(student.getId(), chemistry.getId());
+    courseService.delete(courseService.getByName("Mathematics").getId());
+
+    assertEquals(List.of("Physics", "Chemistry"),
+        analytics.getTopCoursesByEnrollment(2).stream().map(e -> e.getKey().getName()).toList());
+    assertEquals("Physics", analytics.getCourseWithMostStudents().orElseThrow().getKey().getName());
+  }
+
+  @Test
+  void testGradeSummaryScansColumns() throws DatabaseException {
+    assertEquals(new GradeSummary(3, 12, 3, 5), analytics.getGradeSummary());
+    assertEquals(new GradeSummary(2, 7, 3, 4),
+        analytics.getCourseGradeSummary("Mathematics").orElseThrow().getValue());
+
+    Student student = studentService.getByEmail("jane@test.com");
+    Course physics = courseService.getByName("Physics");
+    enrollmentService.enrollStudent(student.getId(), physics.getId());
+    enrollmentService.setGrade(student.getId(), physics.getId(), 1);
+    enrollmentService.delete(enrollmentService.getByStudentAndCourse(
+        student.getId(), courseService.getByName("Mathematics").getId()).getId());
+    assertEquals(new GradeSummary(3, 10, 1, 5), analytics.getGradeSummary());
+    assertEquals(new GradeSummary(2, 6, 1, 5),
+        analytics.getCourseGradeSummary(physics.getId()).orElseThrow().getValue());
+    assertEquals(analytics.getGradeSummary(), new StudentAnalytics(studentService, courseService,
+        new CourseEnrollmentService(TEST_DB_PATH)).getGradeSummary());
+  }
+
+  @Test
+  void testVectorKernelsMatchScalar() throws DatabaseException {
+    // Needs the jdk.incubator.vector module, which the surefire configuration adds
+    assumeTrue(GradeKernels.isVectorized(), "Vector API kernels are not enabled");
+    Random random = new Random(42);
+    int[] grades = new int[1000];
+    int[] courses = new int[grades.length];
+    for (int i = 0; i < grades.length; i++) {
+      // Extreme values check that the vector sums do not overflow
+      grades[i] = i % 10 == 0 ? random.nextInt() : random.nextInt(6);
+      courses[i] = random.nextInt(3);
+    }
+    for (int[] range : new int[][] {{0, 1000}, {3, 997}, {5, 9}, {7, 7}}) {
+      assertEquals(GradeKernels.summarizeScalar(grades, range[0], range[1]),
+          VectorGradeKernels.summarize(grades, range[0], range[1]));
+      assertEquals(GradeKernels.summarizeCourseScalar(grades, courses, 1, range[0], range[1]),
+          VectorGradeKernels.summarizeCourse(grades, courses, 1, range[0], range[1]));
+      long[] scalar = new long[6];
+      long[] vector = new long[6];
+      GradeKernels.histogramCourseScalar(grades, courses, 2, range[0], range[1], scalar);
+      VectorGradeKernels.histogramCourse(grades, courses, 2, range[0], range[1], vector);
+      assertArrayEquals(scalar, vector);
+    }
+
+    assertArrayEquals(new long[] {0, 0, 0, 1, 1, 0},
+        analytics.getCourseGradeHistogram("Mathematics").orElseThrow().getValue());
+  }
+
+  @Test
+  void testEnrollmentReportMatchesAcrossParallelism() throws DatabaseException {
+    List<Student> students = new ArrayList<>();
+    for (int i = 0; i < 50; i++) {
+      students.add(studentService.create(
+          new Student(0, "Student " + i, i + "@bulk.com", String.valueOf(10_000_000 + i))));
+    }
+    Course math = courseService.getByName("Mathematics");
+    Course physics = courseService.getByName("Physics");
+    enrollmentService.inBatch(() -> {
+      for (int i = 0; i < students.size(); i++) {
+        enrollmentService.create(
+            new CourseEnrollment(0, students.get(i).getId(), math.getId(), i % 6));
+        enrollmentService.create(
+            new CourseEnrollment(0, students.get(i).getId(), physics.getId(), 5 - i % 6));
+      }
+    });
+
+    EnrollmentReport report = analytics.getEnrollmentReport();
+    Student john = studentService.getByEmail("john@test.com");
+    assertEquals(4.5, report.studentAverages().get(john.getId()));
+    assertEquals(2.5, report.studentAverages().get(students.getFirst().getId()));
+    assertEquals(52, report.courseCounts().get(math.getId()));
+    assertArrayEquals(new long[] {9, 9, 8, 9, 9, 8},
+        report.gradeDistributions().get(math.getId()));
+    assertEquals(enrollmentService.countByCourse(physics.getId()),
+        analytics.getAllCourseEnrollmentCounts().get(physics.getId()));
+
+    analytics.setParallelism(1);
+    EnrollmentReport serial = analytics.getEnrollmentReport();
+    assertEquals(report.studentAverages(), serial.studentAverages());
+    assertEquals(report.courseCounts(), serial.courseCounts());
+    assertArrayEquals(report.gradeDistributions().get(physics.getId()),
+        serial.gradeDistributions().get(physics.getId()));
+
+    // Split the snapshot into ranges of a few enrollments, some of them deleted, so the
+    // partial totals of many ranges are merged
+    for (int i = 0; i < students.size(); i += 7) {
+      enrollmentService.delete(enrollmentService.getByStudentAndCourse(
+          students.get(i).getId(), math.getId()).getId());
+    }
+    serial = analytics.getEnrollmentReport();
+    ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      EnrollmentReport split =
+          pool.invoke(new BulkAggregation(enrollmentService.columns(), 4, 1)).toReport();
+      assertEquals(serial.studentAverages(), split.studentAverages());
+      assertEquals(serial.courseCounts(), split.courseCounts());
+      for (Course course : List.of(math, physics)) {
+        assertArrayEquals(serial.gradeDistributions().get(course.getId()),
+            split.gradeDistributions().get(course.getId()));
+      }
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  void testReportsRunWhileParallelismChanges() throws Exception {
+    EnrollmentReport expected = analytics.getEnrollmentReport();
+    AtomicBoolean done = new AtomicBoolean();
+    ExecutorService readers = Executors.newFixedThreadPool(2);
+    try {
+      List<Future<?>> reports = new ArrayList<>();
+      for (int i = 0; i < 2; i++) {
+        reports.add(readers.submit(() -> {
+          while (!done.get()) {
+            assertEquals(expected.courseCounts(), analytics.getEnrollmentReport().courseCounts());
+          }
+          return null;
+        }));
+      }
+      // Each change shuts down the previous pool while the readers keep using it
+      for (int i = 0; i < 1000; i++) {
+        analytics.setParallelism(1 + i % 3);
+      }
+      done.set(true);
+      for (Future<?> report : reports) {
+        report.get();
+      }
+    } finally {
+      done.set(true);
+      readers.shutdown();
+    }
+  }
+
   @Test
   void testGetStudentsInCourse() throws DatabaseException {
     Course course = courseService.getByName("Mathematics");
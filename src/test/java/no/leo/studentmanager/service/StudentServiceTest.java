@@ -6,8 +6,22 @@ import java.io.File;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import no.leo.studentmanager.exception.DatabaseException;
 import no.leo.studentmanager.model.Student;
+import no.leo.studentmanager.storage.BinarySnapshotFormat;
+import no.leo.studentmanager.storage.LogEntry;
+import no.leo.studentmanager.storage.StorageOptions;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -81,4 +95,327 @@ class StudentServiceTest {
     assertDoesNotThrow(() -> studentService.create(student1));
     assertThrows(DatabaseException.class, () -> studentService.create(student2));
   }
-}
\ No newline at end of file
+
+  @Test
+  void testReloadReplaysLog() throws DatabaseException {
+    Student created = studentService.create(
+        new Student(0, "Test Student", "test@test.com", "12345678"));
+    Student other = studentService.create(
+        new Student(0, "Other Student", "other@test.com", "87654321"));
+    studentService.delete(other.getId());
+
+    StudentService reloaded = new StudentService(TEST_DB_PATH);
+    assertEquals(created, reloaded.getById(created.getId()));
+    assertEquals(created.getId(), reloaded.getByEmail("test@test.com").getId());
+    assertThrows(DatabaseException.class, () -> reloaded.getById(other.getId()));
+  }
+
+  @Test
+  void testReloadCutsOffTornLastLine() throws Exception {
+    Student created = studentService.create(
+        new Student(0, "Test Student", "test@test.com", "12345678"));
+    studentService.close();
+
+    Path log = Paths.get(TEST_DB_PATH, "students.000001.log");
+    byte[] intact = Files.readAllBytes(log);
+    Files.write(log, "{\"lsn\":99,\"op\":\"CRE".getBytes(), StandardOpenOption.APPEND);
+
+    StudentService reloaded = new StudentService(TEST_DB_PATH);
+    assertEquals(created, reloaded.getById(created.getId()));
+    assertArrayEquals(intact, Files.readAllBytes(log));
+  }
+
+  @Test
+  void testReloadRejectsCorruptMiddleLine() throws Exception {
+    studentService.create(new Student(0, "Test Student", "test@test.com", "12345678"));
+    studentService.create(new Student(0, "Other Student", "other@test.com", "87654321"));
+    studentService.close();
+
+    Path log = Paths.get(TEST_DB_PATH, "students.000001.log");
+    List<String> lines = new ArrayList<>(Files.readAllLines(log));
+    lines.set(0, "{not json");
+    Files.write(log, lines);
+    byte[] corrupt = Files.readAllBytes(log);
+
+    assertThrows(RuntimeException.class, () -> new StudentService(TEST_DB_PATH));
+    assertArrayEquals(corrupt, Files.readAllBytes(log));
+  }
+
+  @Test
+  void testFailedLogWriteLeavesRecordsUnchanged() throws DatabaseException {
+    Student existing = studentService.create(
+        new Student(0, "Existing", "existing@test.com", "00000000"));
+    studentService.close();
+
+    boolean[] failWrites = {true};
+    StudentService failing = new StudentService(TEST_DB_PATH) {
+      @Override
+      protected long appendLog(LogEntry.Op op, int id, Object[] row) {
+        if (failWrites[0]) {
+          throw new RuntimeException("Could not write to log");
+        }
+        return super.appendLog(op, id, row);
+      }
+    };
+
+    assertThrows(RuntimeException.class,
+        () -> failing.create(new Student(0, "New", "new@test.com", "11111111")));
+    assertThrows(RuntimeException.class, () -> failing.update(
+        new Student(existing.getId(), "Renamed", "renamed@test.com", "00000000")));
+    assertThrows(RuntimeException.class, () -> failing.delete(existing.getId()));
+
+    assertEquals(List.of(existing), failing.getAll());
+    assertNull(failing.getByEmail("new@test.com"));
+    assertNull(failing.getByEmail("renamed@test.com"));
+    assertEquals(existing, failing.getByEmail("existing@test.com"));
+
+    failWrites[0] = false;
+    Student created = failing.create(new Student(0, "New", "new@test.com", "11111111"));
+    assertEquals(created, new StudentService(TEST_DB_PATH).getByEmail("new@test.com"));
+  }
+
+  @Test
+  void testCheckpointThenReload() throws Exception {
+    Student created = studentService.create(
+        new Student(0, "Test Student", "test@test.com", "12345678"));
+    studentService.checkpoint();
+    studentService.create(new Student(0, "Other Student", "other@test.com", "87654321"));
+    assertFalse(Files.readString(Paths.get(TEST_DB_PATH, "students.json")).contains("indices"));
+
+    StudentService reloaded = new StudentService(TEST_DB_PATH);
+    assertEquals(2, reloaded.getAll().size());
+    assertEquals(created, reloaded.getById(created.getId()));
+  }
+
+  @Test
+  void testBackgroundCheckpointCompactsLog() throws Exception {
+    StorageOptions options = StorageOptions.defaults()
+        .setMaxLogBytes(1)
+        .setCheckpointInterval(Duration.ofMillis(20));
+    try (StudentService service = new StudentService(TEST_DB_PATH, options)) {
+      Student created = service.create(new Student(0, "Test Student", "test@test.com", "12345678"));
+
+      Path snapshot = Paths.get(TEST_DB_PATH, "students.json");
+      Path firstSegment = Paths.get(TEST_DB_PATH, "students.000001.log");
+      long deadline = System.currentTimeMillis() + 5000;
+      while (Files.exists(firstSegment) && System.currentTimeMillis() < deadline) {
+        Thread.sleep(20);
+      }
+
+      assertTrue(Files.exists(snapshot));
+      assertFalse(Files.exists(firstSegment));
+      assertEquals(created, new StudentService(TEST_DB_PATH).getById(created.getId()));
+    }
+  }
+
+  @Test
+  void testBatchCommit() throws DatabaseException {
+    studentService.inBatch(() -> {
+      studentService.create(new Student(0, "Student 1", "one@test.com", "11111111"));
+      studentService.create(new Student(0, "Student 2", "two@test.com", "22222222"));
+    });
+
+    StudentService reloaded = new StudentService(TEST_DB_PATH);
+    assertEquals(2, reloaded.getAll().size());
+    assertNotNull(reloaded.getByEmail("two@test.com"));
+  }
+
+  @Test
+  void testBatchRollback() throws DatabaseException {
+    Student existing = studentService.create(
+        new Student(0, "Existing", "existing@test.com", "00000000"));
+
+    assertThrows(DatabaseException.class, () -> studentService.inBatch(() -> {
+      studentService.create(new Student(0, "Student 1", "one@test.com", "11111111"));
+      studentService.delete(existing.getId());
+      studentService.create(new Student(0, "Student 2", "one@test.com", "22222222"));
+    }));
+
+    assertEquals(1, studentService.getAll().size());
+    assertNull(studentService.getByEmail("one@test.com"));
+    assertEquals(existing, studentService.getByEmail("existing@test.com"));
+    assertEquals(1, new StudentService(TEST_DB_PATH).getAll().size());
+  }
+
+  @Test
+  void testReadsWaitForBatchOnAnotherThread() throws Exception {
+    ExecutorService reader = Executors.newSingleThreadExecutor();
+    try {
+      studentService.beginBatch();
+      studentService.create(new Student(0, "Student 1", "one@test.com", "11111111"));
+      Future<List<Student>> all = reader.submit(() -> studentService.getAll());
+      Future<Student> byEmail = reader.submit(() -> studentService.getByEmail("one@test.com"));
+
+      assertThrows(TimeoutException.class, () -> all.get(100, TimeUnit.MILLISECONDS));
+      studentService.rollback();
+
+      assertTrue(all.get(5, TimeUnit.SECONDS).isEmpty());
+      assertNull(byEmail.get(5, TimeUnit.SECONDS));
+    } finally {
+      reader.shutdownNow();
+    }
+  }
+
+  @Test
+  void testConcurrentReadsSeeEveryCreatedRecord() throws Exception {
+    AtomicInteger lastCreated = new AtomicInteger();
+    ExecutorService reader = Executors.newSingleThreadExecutor();
+    try {
+      Future<Integer> reads = reader.submit(() -> {
+        int count = 0;
+        while (lastCreated.get() >= 0) {
+          int id = lastCreated.get();
+          if (id > 0) {
+            assertEquals(id, studentService.getById(id).getId());
+            count++;
+          }
+        }
+        return count;
+      });
+
+      for (int i = 0; i < 2000; i++) {
+        lastCreated.set(studentService.create(
+            new Student(0, "Student " + i, i + "@test.com", String.format("%08d", i))).getId());
+      }
+      lastCreated.set(-1);
+      assertTrue(reads.get(10, TimeUnit.SECONDS) > 0);
+    } finally {
+      reader.shutdownNow();
+    }
+  }
+
+  @Test
+  void testUpdateKeepsOwnUniqueValues() throws DatabaseException {
+    Student created = studentService.create(
+        new Student(0, "Test Student", "test@test.com", "12345678"));
+    studentService.create(new Student(0, "Other Student", "other@test.com", "87654321"));
+
+    Student renamed = new Student(created.getId(), "Renamed", "test@test.com", "12345678");
+    studentService.update(renamed);
+    assertEquals(renamed, studentService.getByEmail("test@test.com"));
+
+    DatabaseException e = assertThrows(DatabaseException.class, () -> studentService.update(
+        new Student(created.getId(), "Renamed", "other@test.com", "12345678")));
+    assertEquals("email other@test.com already exists", e.getMessage());
+    e = assertThrows(DatabaseException.class, () -> studentService.update(
+        new Student(created.getId(), "Renamed", "test@test.com", "123")));
+    assertEquals("phone must be exactly 8 characters long", e.getMessage());
+  }
+
+  @Test
+  void testOrderedByName() throws DatabaseException {
+    studentService.create(new Student(0, "Charlie", "c@test.com", "33333333"));
+    studentService.create(new Student(0, "Alice", "a@test.com", "11111111"));
+    studentService.create(new Student(0, "Bob", "b@test.com", "22222222"));
+    studentService.create(new Student(0, "Dave", "d@test.com", "44444444"));
+
+    assertEquals(List.of("Alice", "Bob", "Charlie", "Dave"),
+        studentService.getOrdered("name", 0, 10).stream().map(Student::getName).toList());
+    assertEquals(List.of("Bob", "Charlie"),
+        studentService.getOrdered("name", 1, 2).stream().map(Student::getName).toList());
+    assertEquals(List.of("Bob", "Charlie"),
+        studentService.getRange("name", "B", "Cz").stream().map(Student::getName).toList());
+    assertTrue(studentService.getRange("name", "E", "A").isEmpty());
+    assertThrows(IllegalArgumentException.class,
+        () -> studentService.getRange("email", "a", "b"));
+  }
+
+  @Test
+  void testIdsAreNotReusedAfterDelete() throws DatabaseException {
+    studentService.create(new Student(0, "First", "first@test.com", "11111111"));
+    Student last = studentService.create(new Student(0, "Last", "last@test.com", "22222222"));
+    studentService.delete(last.getId());
+    studentService.checkpoint();
+
+    StudentService reloaded = new StudentService(TEST_DB_PATH);
+    Student next = reloaded.create(new Student(0, "Next", "next@test.com", "33333333"));
+    assertEquals(last.getId() + 1, next.getId());
+
+    reloaded.inBatch(() -> {
+      assertEquals(next.getId() + 1,
+          reloaded.create(new Student(0, "Batch", "batch@test.com", "44444444")).getId());
+    });
+    assertEquals(next.getId() + 2,
+        reloaded.create(new Student(0, "After", "after@test.com", "55555555")).getId());
+  }
+
+  @Test
+  void testBinarySnapshotRoundTrip() throws DatabaseException {
+    Student created = studentService.create(
+        new Student(0, "Test Student", "test@test.com", "12345678"));
+    studentService.checkpoint();
+
+    StorageOptions binary = StorageOptions.defaults().setSnapshotFormat(new BinarySnapshotFormat());
+    StudentService converted = new StudentService(TEST_DB_PATH, binary);
+    converted.checkpoint();
+    assertTrue(Files.exists(Paths.get(TEST_DB_PATH, "students.bin")));
+    assertFalse(Files.exists(Paths.get(TEST_DB_PATH, "students.json")));
+
+    StudentService reloaded = new StudentService(TEST_DB_PATH, binary);
+    assertEquals(created, reloaded.getById(created.getId()));
+    assertEquals(created, reloaded.getByEmail("test@test.com"));
+    assertThrows(DatabaseException.class, () -> reloaded.create(
+        new Student(0, "Duplicate", "test@test.com", "87654321")));
+  }
+
+  @Test
+  void testLoadReportsProgress() throws DatabaseException {
+    studentService.create(new Student(0, "First Student", "first@test.com", "12345678"));
+    studentService.create(new Student(0, "Second Student", "second@test.com", "87654321"));
+    studentService.checkpoint();
+
+    List<long[]> updates = new ArrayList<>();
+    StorageOptions options = StorageOptions.defaults().setLoadProgressListener(
+        (table, records, bytes, total) -> updates.add(new long[] {records, bytes, total}));
+    StudentService reloaded = new StudentService(TEST_DB_PATH, options);
+
+    assertEquals(2, reloaded.getAll().size());
+    assertFalse(updates.isEmpty());
+    long[] last = updates.getLast();
+    assertEquals(2, last[0]);
+    assertTrue(last[1] > 0 && last[1] <= last[2]);
+  }
+
+  @Test
+  void testScanPagesInIdOrder() throws DatabaseException {
+    List<Integer> ids = new ArrayList<>();
+    for (int i = 0; i < 7; i++) {
+      ids.add(studentService.create(
+          new Student(0, "Student " + i, i + "@test.com", "1234567" + i)).getId());
+    }
+    studentService.delete(ids.remove(2));
+
+    Page<Student> first = studentService.scan(null, 4);
+    assertEquals(ids.subList(0, 4), first.items().stream().map(Student::getId).toList());
+    assertTrue(first.hasNext());
+
+    // Records added behind the cursor show up on a later page; none is returned twice
+    ids.add(studentService.create(new Student(0, "Late", "late@test.com", "87654321")).getId());
+    Page<Student> second = studentService.scan(first.nextCursor(), 4);
+    assertEquals(ids.subList(4, 7), second.items().stream().map(Student::getId).toList());
+    assertFalse(second.hasNext());
+
+    assertEquals(ids, studentService.stream().map(Student::getId).toList());
+    assertEquals(List.of(ids.getFirst()),
+        studentService.stream().limit(1).map(Student::getId).toList());
+    assertThrows(IllegalArgumentException.class, () -> studentService.scan("not-a-cursor", 4));
+    assertThrows(IllegalArgumentException.class, () -> studentService.scan(null, 0));
+  }
+
+  @Test
+  void testGetByIdsReportsMissing() throws DatabaseException {
+    Student anna = studentService.create(new Student(0, "Anna", "anna@test.com", "12345678"));
+    Student bob = studentService.create(new Student(0, "Bob", "bob@test.com", "87654321"));
+
+    MultiGetResult<Student> result =
+        studentService.getByIds(new int[] {bob.getId(), 999, anna.getId(), bob.getId()});
+    assertEquals(List.of(bob, anna), result.found());
+    assertEquals(List.of(999), result.missingIds());
+    assertFalse(result.isComplete());
+
+    MultiGetResult<Student> sorted = studentService.getByIds(
+        List.of(bob.getId(), anna.getId()), Comparator.comparing(Student::getName));
+    assertEquals(List.of(anna, bob), sorted.found());
+    assertTrue(sorted.isComplete());
+  }
+}
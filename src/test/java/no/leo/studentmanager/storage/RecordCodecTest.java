@@ -0,0 +1,107 @@
+package no.leo.studentmanager.storage;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+import no.leo.studentmanager.model.Course;
+import no.leo.studentmanager.model.CourseEnrollment;
+import no.leo.studentmanager.model.Student;
+import org.junit.jupiter.api.Test;
+
+class RecordCodecTest {
+  private final ObjectMapper objectMapper = new ObjectMapper();
+
+  @Test
+  void testStudentCodec() throws IOException {
+    RecordLayout layout = this.layoutOf("students");
+    assertRoundTrips(Student.class, layout,
+        new Student(1, "Test Student", "test@test.com", "12345678"),
+        new Student(2, null, null, null));
+    assertDecodesLikeJackson(Student.class, layout,
+        row(layout, "id", null, "name", null, "email", null, "phone", null),
+        row(layout, "id", 5L, "name", 7, "email", true, "phone", 2.5),
+        row(layout, "id", "5", "name", "Test", "email", "test@test.com", "phone", 12345678),
+        row(layout, "id", 4.7, "name", "Test", "email", "test@test.com", "phone", "12345678"));
+  }
+
+  @Test
+  void testCourseCodec() throws IOException {
+    RecordLayout layout = this.layoutOf("courses");
+    assertRoundTrips(Course.class, layout, new Course(1, "Test Course"), new Course(2, null));
+    assertDecodesLikeJackson(Course.class, layout,
+        row(layout, "id", null, "name", null),
+        row(layout, "id", 3L, "name", 101),
+        row(layout, "id", " 3 ", "name", false));
+  }
+
+  @Test
+  void testCourseEnrollmentCodec() throws IOException {
+    RecordLayout layout = this.layoutOf("course_enrollments");
+    assertRoundTrips(CourseEnrollment.class, layout,
+        new CourseEnrollment(1, 2, 3, 4), new CourseEnrollment(2, 0, 0, 0));
+    assertDecodesLikeJackson(CourseEnrollment.class, layout,
+        row(layout, "id", null, "student_id", null, "course_id", null, "grade", null),
+        row(layout, "id", 1L, "student_id", 2.0, "course_id", "3", "grade", 4.9),
+        row(layout, "id", 1, "student_id", 2, "course_id", 3, "grade", " 5"));
+  }
+
+  @Test
+  void testForModelPrefersMethodHandles() throws IOException {
+    assertInstanceOf(MethodHandleRecordCodec.class,
+        RecordCodec.forModel(Student.class, this.layoutOf("students"), this.objectMapper));
+  }
+
+  @SafeVarargs
+  private <T> void assertRoundTrips(Class<T> modelClass, RecordLayout layout,
+                                    T... records) {
+    for (RecordCodec<T> codec : this.codecs(modelClass, layout)) {
+      for (T record : records) {
+        Object[] row = codec.toRow(record);
+        assertArrayEquals(layout.toRow(this.objectMapper.convertValue(record, Map.class)), row,
+            codec.getClass().getSimpleName());
+        assertEquals(record, codec.fromRow(row), codec.getClass().getSimpleName());
+      }
+    }
+  }
+
+  private <T> void assertDecodesLikeJackson(Class<T> modelClass, RecordLayout layout,
+                                            Object[]... rows) {
+    for (RecordCodec<T> codec : this.codecs(modelClass, layout)) {
+      for (Object[] row : rows) {
+        assertEquals(this.objectMapper.convertValue(layout.toMap(row), modelClass),
+            codec.fromRow(row), codec.getClass().getSimpleName() + " " + layout.toMap(row));
+      }
+    }
+  }
+
+  private <T> List<RecordCodec<T>> codecs(Class<T> modelClass, RecordLayout layout) {
+    return List.of(new MethodHandleRecordCodec<>(modelClass, layout),
+        new JacksonRecordCodec<>(modelClass, layout, this.objectMapper));
+  }
+
+  private static Object[] row(RecordLayout layout, Object... columnsAndValues) {
+    Object[] row = new Object[layout.size()];
+    for (int i = 0; i < columnsAndValues.length; i += 2) {
+      row[layout.indexOf((String) columnsAndValues[i])] = columnsAndValues[i + 1];
+    }
+    return row;
+  }
+
+  @SuppressWarnings("unchecked")
+  private RecordLayout layoutOf(String tableName) throws IOException {
+    Map<String, Object> definitions =
+        this.objectMapper.readValue(Paths.get("table_definitions.json").toFile(), Map.class);
+    for (Map<String, Object> table : (List<Map<String, Object>>) definitions.get("tables")) {
+      if (tableName.equals(table.get("name"))) {
+        return new RecordLayout(table);
+      }
+    }
+    throw new IllegalArgumentException("No table " + tableName);
+  }
+}
@@ -0,0 +1,178 @@
+package no.leo.studentmanager.storage;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PrimitiveIterator;
+import java.util.Random;
+import java.util.TreeSet;
+import org.junit.jupiter.api.Test;
+
+class RoaringBitmapTest {
+  // A container holds at most this many values as a sorted array before it becomes a bitmap
+  private static final int ARRAY_MAX = 4096;
+
+  @Test
+  void testContainerSwitchesOnAddAndRemove() {
+    RoaringBitmap bitmap = new RoaringBitmap();
+    TreeSet<Integer> expected = new TreeSet<>();
+    // Every other value, so the container passes the array limit half way through
+    for (int value = 0; value < 4 * ARRAY_MAX; value += 2) {
+      assertTrue(bitmap.add(value));
+      expected.add(value);
+      if (expected.size() == ARRAY_MAX || expected.size() == ARRAY_MAX + 1) {
+        assertMatches(expected, bitmap);
+      }
+    }
+    assertFalse(bitmap.add(0));
+    assertMatches(expected, bitmap);
+
+    // Removing back below the limit turns the container into an array again
+    for (int value = 0; expected.size() > ARRAY_MAX - 2; value += 2) {
+      assertTrue(bitmap.remove(value));
+      expected.remove(value);
+      if (Math.abs(expected.size() - ARRAY_MAX) <= 1) {
+        assertMatches(expected, bitmap);
+      }
+    }
+    assertFalse(bitmap.remove(1));
+    assertTrue(bitmap.add(1));
+    expected.add(1);
+    assertMatches(expected, bitmap);
+
+    for (int value : new ArrayList<>(expected)) {
+      assertTrue(bitmap.remove(value));
+    }
+    assertTrue(bitmap.isEmpty());
+    assertMatches(new TreeSet<>(), bitmap);
+  }
+
+  @Test
+  void testIteratorFromAcrossContainers() {
+    TreeSet<Integer> expected = new TreeSet<>();
+    // A sparse container, a dense one, a gap of two empty high keys, then another sparse one
+    for (int value = 5; value < 1 << 16; value += 1000) {
+      expected.add(value);
+    }
+    for (int value = 1 << 16; value < (1 << 16) + 3 * ARRAY_MAX; value++) {
+      expected.add(value);
+    }
+    expected.add((4 << 16) + 7);
+    expected.add((4 << 16) + 65_535);
+    RoaringBitmap bitmap = of(expected);
+    assertMatches(expected, bitmap);
+
+    int[] starts = {0, 5, 6, 64_005, 64_006, (1 << 16) - 1, 1 << 16, (1 << 16) + 1,
+        (1 << 16) + 3 * ARRAY_MAX - 1, (1 << 16) + 3 * ARRAY_MAX, 2 << 16, (4 << 16) + 7,
+        (4 << 16) + 8, (4 << 16) + 65_535, 5 << 16, Integer.MAX_VALUE};
+    for (int from : starts) {
+      assertEquals(new ArrayList<>(expected.tailSet(from)), toList(bitmap.iterator(from)),
+          "from " + from);
+    }
+  }
+
+  @Test
+  void testCopyIsIndependent() {
+    TreeSet<Integer> expected = new TreeSet<>();
+    for (int value = 0; value < 2 * ARRAY_MAX; value++) {
+      expected.add(value);
+    }
+    expected.add(3 << 16);
+    RoaringBitmap bitmap = of(expected);
+    RoaringBitmap copy = bitmap.copy();
+    assertEquals(bitmap, copy);
+    assertEquals(bitmap.hashCode(), copy.hashCode());
+
+    // Change both the dense and the sparse container of each side
+    bitmap.remove(10);
+    bitmap.add((3 << 16) + 1);
+    copy.remove(20);
+    copy.remove(3 << 16);
+    assertNotEquals(bitmap, copy);
+
+    TreeSet<Integer> original = new TreeSet<>(expected);
+    original.remove(10);
+    original.add((3 << 16) + 1);
+    assertMatches(original, bitmap);
+    expected.remove(20);
+    expected.remove(3 << 16);
+    assertMatches(expected, copy);
+  }
+
+  @Test
+  void testSetOperationsMatchTreeSet() {
+    Random random = new Random(42);
+    for (int round = 0; round < 8; round++) {
+      TreeSet<Integer> left = randomSet(random);
+      TreeSet<Integer> right = randomSet(random);
+      RoaringBitmap leftBitmap = of(left);
+      RoaringBitmap rightBitmap = of(right);
+
+      TreeSet<Integer> and = new TreeSet<>(left);
+      and.retainAll(right);
+      assertMatches(and, leftBitmap.and(rightBitmap));
+      TreeSet<Integer> or = new TreeSet<>(left);
+      or.addAll(right);
+      assertMatches(or, leftBitmap.or(rightBitmap));
+      TreeSet<Integer> andNot = new TreeSet<>(left);
+      andNot.removeAll(right);
+      assertMatches(andNot, leftBitmap.andNot(rightBitmap));
+      TreeSet<Integer> not = new TreeSet<>(or);
+      not.removeAll(left);
+      assertMatches(not, leftBitmap.not(leftBitmap.or(rightBitmap)));
+
+      // The operations leave their inputs alone
+      assertMatches(left, leftBitmap);
+      assertMatches(right, rightBitmap);
+    }
+  }
+
+  /**
+   * Builds a set over a few high keys, each left empty, sparse, just around the array
+   * limit or dense, so the operations meet every pair of container kinds.
+   */
+  private static TreeSet<Integer> randomSet(Random random) {
+    TreeSet<Integer> set = new TreeSet<>();
+    for (int high = 0; high < 4; high++) {
+      int count = switch (random.nextInt(4)) {
+        case 0 -> 0;
+        case 1 -> random.nextInt(100);
+        case 2 -> ARRAY_MAX - 50 + random.nextInt(100);
+        default -> 10_000 + random.nextInt(10_000);
+      };
+      for (int i = 0; i < count; i++) {
+        set.add((high << 16) | random.nextInt(1 << 16));
+      }
+    }
+    return set;
+  }
+
+  private static RoaringBitmap of(TreeSet<Integer> values) {
+    return RoaringBitmap.of(values.stream().mapToInt(Integer::intValue).toArray());
+  }
+
+  private static List<Integer> toList(PrimitiveIterator.OfInt iterator) {
+    List<Integer> values = new ArrayList<>();
+    iterator.forEachRemaining((int value) -> values.add(value));
+    return values;
+  }
+
+  private static void assertMatches(TreeSet<Integer> expected, RoaringBitmap actual) {
+    assertEquals(expected.size(), actual.cardinality());
+    assertEquals(expected.isEmpty(), actual.isEmpty());
+    assertArrayEquals(expected.stream().mapToInt(Integer::intValue).toArray(), actual.toArray());
+    assertEquals(new ArrayList<>(expected), toList(actual.iterator()));
+    List<Integer> visited = new ArrayList<>();
+    actual.forEach(visited::add);
+    assertEquals(new ArrayList<>(expected), visited);
+    for (int value : expected) {
+      assertTrue(actual.contains(value));
+      assertEquals(expected.contains(value + 1), actual.contains(value + 1));
+    }
+  }
+}
@@ -0,0 +1,78 @@
+package no.leo.studentmanager.storage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.File;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class TableLogTest {
+  private static final String TEST_DB_PATH = "test_db";
+  private final ObjectMapper objectMapper = new ObjectMapper();
+  private final Path directory = Paths.get(TEST_DB_PATH);
+
+  @BeforeEach
+  void setUp() throws Exception {
+    Files.createDirectories(this.directory);
+  }
+
+  @AfterEach
+  void tearDown() throws Exception {
+    deleteDirectory(new File(TEST_DB_PATH));
+  }
+
+  private void deleteDirectory(File directory) {
+    File[] files = directory.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        if (file.isDirectory()) {
+          deleteDirectory(file);
+        } else {
+          file.delete();
+        }
+      }
+    }
+    directory.delete();
+  }
+
+  @Test
+  void testInterruptedFlushIsNotCountedAsSynced() throws Exception {
+    TableLog log = new TableLog(this.directory, "students", this.objectMapper);
+    log.write(entry(1));
+
+    Thread.currentThread().interrupt();
+    try {
+      assertThrows(ClosedByInterruptException.class, log::flush);
+      assertTrue(Thread.currentThread().isInterrupted());
+    } finally {
+      Thread.interrupted();
+    }
+    assertEquals(1, log.getStatus().unsyncedEntries());
+
+    // The interrupt closed the channel; later appends and flushes reopen the segment
+    log.write(entry(2));
+    log.flush();
+    assertEquals(0, log.getStatus().unsyncedEntries());
+    log.close();
+
+    List<Long> replayed = new ArrayList<>();
+    new TableLog(this.directory, "students", this.objectMapper)
+        .replay(0, entry -> replayed.add(entry.getLsn()));
+    assertEquals(List.of(1L, 2L), replayed);
+  }
+
+  private static LogEntry entry(int id) {
+    return new LogEntry(id, LogEntry.Op.INSERT, id, Map.of("id", id, "name", "Student"));
+  }
+}
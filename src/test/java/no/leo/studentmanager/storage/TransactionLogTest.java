@@ -0,0 +1,116 @@
+package no.leo.studentmanager.storage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class TransactionLogTest {
+  private static final String TEST_DB_PATH = "test_db";
+  private final ObjectMapper objectMapper = new ObjectMapper();
+  private final Path directory = Paths.get(TEST_DB_PATH);
+
+  @BeforeEach
+  void setUp() throws Exception {
+    Files.createDirectories(this.directory);
+  }
+
+  @AfterEach
+  void tearDown() throws Exception {
+    deleteDirectory(new File(TEST_DB_PATH));
+  }
+
+  private void deleteDirectory(File directory) {
+    File[] files = directory.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        if (file.isDirectory()) {
+          deleteDirectory(file);
+        } else {
+          file.delete();
+        }
+      }
+    }
+    directory.delete();
+  }
+
+  @Test
+  void testFailedCommitsAreCutOffBeforeRestart() throws IOException {
+    String[] failure = {null};
+    TransactionLog log = new TransactionLog(this.directory, this.objectMapper) {
+      @Override
+      protected void writeAndForce(FileChannel ch, ByteBuffer buffer) throws IOException {
+        if ("torn".equals(failure[0])) {
+          buffer.limit(buffer.limit() / 2);
+          super.writeAndForce(ch, buffer);
+          throw new IOException("No space left on device");
+        }
+        super.writeAndForce(ch, buffer);
+        if ("force".equals(failure[0])) {
+          throw new IOException("Could not force");
+        }
+      }
+    };
+
+    assertEquals(1, log.commit(tables(1)));
+    failure[0] = "torn";
+    assertThrows(IOException.class, () -> log.commit(tables(2)));
+    failure[0] = "force";
+    assertThrows(IOException.class, () -> log.commit(tables(3)));
+    failure[0] = null;
+    assertEquals(2, log.commit(tables(4)));
+    log.close();
+
+    // A torn record left in the middle would make the log unreadable on restart
+    assertEquals(List.of(1, 4), this.replayedIds());
+    new TransactionLog(this.directory, this.objectMapper).close();
+  }
+
+  @Test
+  void testLogRefusesCommitsWhenFailedCommitCannotBeCutOff() throws IOException {
+    boolean[] fail = {false};
+    TransactionLog log = new TransactionLog(this.directory, this.objectMapper) {
+      @Override
+      protected void writeAndForce(FileChannel ch, ByteBuffer buffer) throws IOException {
+        super.writeAndForce(ch, buffer);
+        if (fail[0]) {
+          // Closing the channel makes the truncate fail too
+          ch.close();
+          throw new IOException("Could not force");
+        }
+      }
+    };
+
+    log.commit(tables(1));
+    fail[0] = true;
+    assertThrows(IOException.class, () -> log.commit(tables(2)));
+    fail[0] = false;
+    assertThrows(IOException.class, () -> log.commit(tables(3)));
+    assertEquals(List.of(1, 2), this.replayedIds());
+  }
+
+  private List<Integer> replayedIds() throws IOException {
+    List<Integer> ids = new ArrayList<>();
+    TransactionLog.replay(this.directory, this.objectMapper, "students",
+        entry -> ids.add(entry.getId()));
+    return ids;
+  }
+
+  private static Map<String, List<LogEntry>> tables(int id) {
+    return Map.of("students",
+        List.of(new LogEntry(id, LogEntry.Op.INSERT, id, Map.of("id", id, "name", "Student"))));
+  }
+}